@@ -34,7 +34,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
 	private static final String TAG = "DatabaseHelper";
 
-	public static final int DATABASE_VERSION = 9;
+	public static final int DATABASE_VERSION = 11;
 
 	private Context mContext;
 
@@ -54,7 +54,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 				+ SudokuColumns.LAST_PLAYED + " INTEGER,"
 				+ SudokuColumns.DATA + " Text,"
 				+ SudokuColumns.PUZZLE_NOTE + " Text,"
-				+ SudokuColumns.COMMAND_STACK + " Text"
+				+ SudokuColumns.COMMAND_STACK + " Text,"
+				+ SudokuColumns.DIFFICULTY + " INTEGER"
 				+ ");");
 
 		db.execSQL("CREATE TABLE " + SudokuDatabase.FOLDER_TABLE_NAME + " ("
@@ -158,6 +159,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		insertSudoku(db, 3, 90, "Hard30", "000030065460950200000086004003070006004090100500010300200140000007065028630020000");
 
 		createIndexes(db);
+		createDifficultyIndex(db);
+		createUnratedIndex(db);
+		createPoolTable(db);
 	}
 
 	private void insertFolder(SQLiteDatabase db, long folderID, String folderName) {
@@ -167,7 +171,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
 	// TODO: sudokuName is not used
 	private void insertSudoku(SQLiteDatabase db, long folderID, long sudokuID, String sudokuName, String data) {
-		String sql = "INSERT INTO " + SudokuDatabase.SUDOKU_TABLE_NAME + " VALUES (" + sudokuID + ", " + folderID + ", 0, " + SudokuGame.GAME_STATE_NOT_STARTED + ", 0, null, '" + data + "', null, null);";
+		String sql = "INSERT INTO " + SudokuDatabase.SUDOKU_TABLE_NAME + " VALUES (" + sudokuID + ", " + folderID + ", 0, " + SudokuGame.GAME_STATE_NOT_STARTED + ", 0, null, '" + data + "', null, null, null);";
 		db.execSQL(sql);
 	}
 
@@ -182,6 +186,17 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		if (oldVersion <= 8) {
 			db.execSQL("ALTER TABLE " + SudokuDatabase.SUDOKU_TABLE_NAME + " ADD COLUMN " + SudokuColumns.COMMAND_STACK + " TEXT");
 		}
+
+		if (oldVersion <= 9) {
+			// existing puzzles are rated later by DifficultyRatingJob
+			db.execSQL("ALTER TABLE " + SudokuDatabase.SUDOKU_TABLE_NAME + " ADD COLUMN " + SudokuColumns.DIFFICULTY + " INTEGER");
+			createDifficultyIndex(db);
+			createUnratedIndex(db);
+		}
+
+		if (oldVersion <= 10) {
+			createPoolTable(db);
+		}
 	}
 
 	private void createIndexes(SQLiteDatabase db) {
@@ -189,4 +204,35 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 				"_idx1 on " +
 				SudokuDatabase.SUDOKU_TABLE_NAME + " (" + SudokuColumns.FOLDER_ID + ");");
 	}
+
+	private void createDifficultyIndex(SQLiteDatabase db) {
+		db.execSQL("create index " + SudokuDatabase.SUDOKU_TABLE_NAME +
+				"_idx2 on " +
+				SudokuDatabase.SUDOKU_TABLE_NAME + " (" + SudokuColumns.FOLDER_ID + ", " + SudokuColumns.DIFFICULTY + ");");
+	}
+
+	/**
+	 * Creates index used by {@link DifficultyRatingJob} to find unrated puzzles in all folders,
+	 * which cannot use the index on folder and difficulty.
+	 */
+	private void createUnratedIndex(SQLiteDatabase db) {
+		db.execSQL("create index " + SudokuDatabase.SUDOKU_TABLE_NAME +
+				"_idx3 on " +
+				SudokuDatabase.SUDOKU_TABLE_NAME + " (" + SudokuColumns.DIFFICULTY + ");");
+	}
+
+	/**
+	 * Creates table of puzzles generated in advance (see {@link PuzzlePool}). Pool is kept
+	 * out of the sudoku table, so that it does not show up in folders, exports and counts.
+	 */
+	private void createPoolTable(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + SudokuDatabase.POOL_TABLE_NAME + " ("
+				+ SudokuColumns._ID + " INTEGER PRIMARY KEY,"
+				+ SudokuColumns.DATA + " Text,"
+				+ SudokuColumns.DIFFICULTY + " INTEGER"
+				+ ");");
+		db.execSQL("create index " + SudokuDatabase.POOL_TABLE_NAME +
+				"_idx1 on " +
+				SudokuDatabase.POOL_TABLE_NAME + " (" + SudokuColumns.DIFFICULTY + ");");
+	}
 }
@@ -0,0 +1,186 @@
+package org.moire.opensudoku.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import org.moire.opensudoku.game.solver.DifficultyRater;
+
+/**
+ * Rates difficulty of all puzzles in the database, which have not been rated yet (new,
+ * imported or edited puzzles), and stores ratings in {@link SudokuColumns#DIFFICULTY}.
+ * <p/>
+ * Puzzles are read in batches, each batch is split among worker threads (one per CPU core)
+ * and ratings of the batch are written in one transaction. Only one job runs at a time,
+ * {@link #start(Context)} does nothing while the job is running.
+ * <p/>
+ * Listeners are registered separately from starting the job, so that activity created while
+ * the job is running (e.g. after configuration change) is notified too. Activities should
+ * unregister their listeners when they are paused.
+ */
+public class DifficultyRatingJob {
+
+	private static final String TAG = "DifficultyRatingJob";
+
+	private static final int BATCH_SIZE = 256;
+
+	private static final AtomicBoolean sRunning = new AtomicBoolean();
+	private static final List<OnFinishedListener> sListeners = new CopyOnWriteArrayList<OnFinishedListener>();
+
+	/**
+	 * Registers listener called on the main thread each time the job finishes.
+	 *
+	 * @param listener
+	 */
+	public static void addOnFinishedListener(OnFinishedListener listener) {
+		if (!sListeners.contains(listener)) {
+			sListeners.add(listener);
+		}
+	}
+
+	public static void removeOnFinishedListener(OnFinishedListener listener) {
+		sListeners.remove(listener);
+	}
+
+	/**
+	 * Starts rating of unrated puzzles on background threads.
+	 *
+	 * @param context
+	 * @return False, if the job has been already running.
+	 */
+	public static boolean start(Context context) {
+		if (!sRunning.compareAndSet(false, true)) {
+			return false;
+		}
+
+		final Context appContext = context.getApplicationContext();
+		final Handler handler = new Handler(Looper.getMainLooper());
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				int ratedCount = 0;
+				try {
+					ratedCount = rateAll(appContext);
+				} catch (Exception e) {
+					Log.e(TAG, "Exception occurred during rating of puzzles.", e);
+				} finally {
+					sRunning.set(false);
+				}
+
+				final int count = ratedCount;
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						for (OnFinishedListener listener : sListeners) {
+							listener.onFinished(count);
+						}
+					}
+				});
+			}
+		}, TAG);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return true;
+	}
+
+	private static int rateAll(Context context) throws InterruptedException, ExecutionException {
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		SudokuDatabase database = new SudokuDatabase(context);
+		int ratedCount = 0;
+		try {
+			List<Long> ids = new ArrayList<Long>(BATCH_SIZE);
+			List<String> data = new ArrayList<String>(BATCH_SIZE);
+			List<Future<int[]>> results = new ArrayList<Future<int[]>>(threadCount);
+			while (true) {
+				ids.clear();
+				data.clear();
+				Cursor c = database.getUnratedSudokus(BATCH_SIZE);
+				try {
+					while (c.moveToNext()) {
+						ids.add(c.getLong(0));
+						data.add(c.getString(1));
+					}
+				} finally {
+					c.close();
+				}
+				if (ids.isEmpty()) {
+					break;
+				}
+
+				results.clear();
+				int chunkSize = (data.size() + threadCount - 1) / threadCount;
+				for (int start = 0; start < data.size(); start += chunkSize) {
+					results.add(executor.submit(new RateTask(data.subList(start, Math.min(start + chunkSize, data.size())))));
+				}
+
+				database.beginTransaction();
+				try {
+					int index = 0;
+					for (Future<int[]> result : results) {
+						for (int rating : result.get()) {
+							database.updateDifficulty(ids.get(index), data.get(index), rating);
+							index++;
+						}
+					}
+					database.setTransactionSuccessful();
+				} finally {
+					database.endTransaction();
+				}
+				ratedCount += ids.size();
+			}
+		} finally {
+			executor.shutdownNow();
+			database.close();
+		}
+
+		Log.i(TAG, String.format("Rated %d puzzles.", ratedCount));
+		return ratedCount;
+	}
+
+	private static class RateTask implements Callable<int[]> {
+		private final List<String> mData;
+
+		RateTask(List<String> data) {
+			mData = data;
+		}
+
+		@Override
+		public int[] call() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			DifficultyRater rater = new DifficultyRater();
+			int[] ratings = new int[mData.size()];
+			for (int i = 0; i < ratings.length; i++) {
+				try {
+					ratings[i] = rater.rate(mData.get(i));
+				} catch (Exception e) {
+					// corrupted puzzle is marked as invalid, so that it is not rated again
+					Log.e(TAG, "Cannot rate puzzle.", e);
+					ratings[i] = DifficultyRater.RATING_INVALID;
+				}
+			}
+			return ratings;
+		}
+	}
+
+	public interface OnFinishedListener {
+		/**
+		 * Called on the main thread after all puzzles have been rated.
+		 *
+		 * @param ratedCount Number of puzzles rated by the job.
+		 */
+		void onFinished(int ratedCount);
+	}
+}
@@ -0,0 +1,120 @@
+package org.moire.opensudoku.db;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Process;
+import android.util.Log;
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+import org.moire.opensudoku.game.solver.DifficultyRater;
+import org.moire.opensudoku.game.solver.PuzzleGenerator;
+
+/**
+ * Pool of puzzles generated in advance, so that new game of any level can be started
+ * without waiting (see {@link SudokuDatabase#takePooledSudoku(long, int)}).
+ * <p/>
+ * Pool holds up to {@link #POOL_SIZE} puzzles of each level. Producer thread, started by
+ * {@link #startProducer(Context)}, refills levels which dropped below {@link #LOW_WATERMARK}.
+ * It runs at the lowest priority on a single core, stops while a game is being played (see
+ * {@link #stopProducer()}) and backs off when the device is busy, i.e. when the producer
+ * gets only small share of the CPU time.
+ */
+public class PuzzlePool {
+
+	private static final String TAG = "PuzzlePool";
+
+	public static final int POOL_SIZE = 10;
+	public static final int LOW_WATERMARK = 5;
+
+	// producer backs off, when it got less than this share of the CPU during the last attempt
+	private static final float MIN_CPU_SHARE = 0.5f;
+	private static final int BUSY_DELAY = 2000;
+
+	private static final AtomicBoolean sRunning = new AtomicBoolean();
+	private static volatile boolean sStopped;
+	// set by each start, so the producer can find out it has been started again while finishing
+	private static volatile boolean sStartRequested;
+
+	/**
+	 * Starts refilling of the pool in background, if it is not running already.
+	 *
+	 * @param context
+	 */
+	public static void startProducer(Context context) {
+		sStopped = false;
+		sStartRequested = true;
+		if (!sRunning.compareAndSet(false, true)) {
+			return;
+		}
+
+		final Context appContext = context.getApplicationContext();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+				do {
+					sStartRequested = false;
+					try {
+						refill(appContext);
+					} catch (Exception e) {
+						Log.e(TAG, "Exception occurred during refill of the pool.", e);
+					} finally {
+						sRunning.set(false);
+					}
+					// start which came after refill had seen the stop, but before sRunning was
+					// cleared, did not start new producer, so this one continues instead
+				} while (sStartRequested && !sStopped && sRunning.compareAndSet(false, true));
+			}
+		}, TAG);
+		thread.start();
+	}
+
+	/**
+	 * Stops the producer after its current attempt, e.g. while a game is being played.
+	 */
+	public static void stopProducer() {
+		sStopped = true;
+	}
+
+	private static void refill(Context context) throws InterruptedException {
+		SudokuDatabase database = new SudokuDatabase(context);
+		int generatedCount = 0;
+		try {
+			PuzzleGenerator generator = null;
+			for (int level = DifficultyRater.LEVEL_EASY; level <= DifficultyRater.LEVEL_EXTREME; level++) {
+				int size = database.getPoolSize(level);
+				if (size >= LOW_WATERMARK) {
+					continue;
+				}
+				if (generator == null) {
+					generator = new PuzzleGenerator(BoardLayout.CLASSIC);
+				}
+
+				while (size < POOL_SIZE) {
+					if (sStopped) {
+						return;
+					}
+
+					long cpuStart = Debug.threadCpuTimeNanos();
+					long start = System.nanoTime();
+					CellCollection cells = generator.generate(level);
+					if (cells != null) {
+						database.insertPooledSudoku(cells.serialize(), generator.getRating());
+						size++;
+						generatedCount++;
+					}
+
+					long cpuTime = Debug.threadCpuTimeNanos() - cpuStart;
+					if (cpuStart >= 0 && cpuTime < (System.nanoTime() - start) * MIN_CPU_SHARE) {
+						Thread.sleep(BUSY_DELAY);
+					}
+				}
+			}
+		} finally {
+			database.close();
+			Log.i(TAG, String.format("Added %d puzzles to the pool.", generatedCount));
+		}
+	}
+}
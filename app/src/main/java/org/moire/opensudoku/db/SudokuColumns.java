@@ -31,4 +31,9 @@ public abstract class SudokuColumns implements BaseColumns {
 	public static final String DATA = "data";
 	public static final String PUZZLE_NOTE = "puzzle_note";
 	public static final String COMMAND_STACK = "command_stack";
+	/**
+	 * Difficulty rating of the puzzle (see {@link org.moire.opensudoku.game.solver.DifficultyRater}),
+	 * null if the puzzle has not been rated yet.
+	 */
+	public static final String DIFFICULTY = "difficulty";
 }
@@ -27,10 +27,16 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.moire.opensudoku.game.CellCollection;
 import org.moire.opensudoku.game.FolderInfo;
 import org.moire.opensudoku.game.SudokuGame;
 import org.moire.opensudoku.game.command.CommandStack;
+import org.moire.opensudoku.game.solver.DifficultyRater;
+import org.moire.opensudoku.game.solver.SolutionCounter;
 import org.moire.opensudoku.gui.SudokuListFilter;
 
 /**
@@ -53,6 +59,7 @@ public class SudokuDatabase {
 
 	public static final String SUDOKU_TABLE_NAME = "sudoku";
 	public static final String FOLDER_TABLE_NAME = "folder";
+	public static final String POOL_TABLE_NAME = "pool";
 
 	//private static final String TAG = "SudokuDatabase";
 
@@ -264,6 +271,11 @@ public class SudokuDatabase {
 		db.delete(FOLDER_TABLE_NAME, FolderColumns._ID + "=" + folderID, null);
 	}
 
+	// SQLite sorts nulls first, so unrated and invalid puzzles are moved after the rated ones
+	private static final String DIFFICULTY_ORDER = SudokuColumns.DIFFICULTY + " is null, "
+			+ SudokuColumns.DIFFICULTY + " = " + DifficultyRater.RATING_INVALID + ", "
+			+ SudokuColumns.DIFFICULTY + " ASC";
+
 	/**
 	 * Returns list of puzzles in the given folder.
 	 *
@@ -271,6 +283,19 @@ public class SudokuDatabase {
 	 * @return
 	 */
 	public Cursor getSudokuList(long folderID, SudokuListFilter filter) {
+		return getSudokuList(folderID, filter, false);
+	}
+
+	/**
+	 * Returns list of puzzles in the given folder.
+	 *
+	 * @param folderID         Primary key of folder.
+	 * @param sortByDifficulty Puzzles are sorted from the easiest one, when true, and from
+	 *                         the newest one otherwise. Puzzles without unique solution
+	 *                         follow the rated ones, puzzles not rated yet are the last.
+	 * @return
+	 */
+	public Cursor getSudokuList(long folderID, SudokuListFilter filter, boolean sortByDifficulty) {
 		SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
 
 		qb.setTables(SUDOKU_TABLE_NAME);
@@ -287,10 +312,106 @@ public class SudokuDatabase {
 			if (!filter.showStatePlaying) {
 				qb.appendWhere(" and " + SudokuColumns.STATE + "!=" + SudokuGame.GAME_STATE_PLAYING);
 			}
+			if (filter.difficulty != SudokuListFilter.DIFFICULTY_ANY) {
+				qb.appendWhere(" and " + getDifficultyCondition(filter.difficulty));
+			}
 		}
 
 		SQLiteDatabase db = mOpenHelper.getReadableDatabase();
-		return qb.query(db, null, null, null, null, null, "created DESC");
+		return qb.query(db, null, null, null, null, null,
+				sortByDifficulty ? DIFFICULTY_ORDER : "created DESC");
+	}
+
+	/**
+	 * Returns puzzles, which have not been rated yet (columns _id and data only).
+	 *
+	 * @param limit Maximum number of returned puzzles.
+	 * @return
+	 */
+	public Cursor getUnratedSudokus(int limit) {
+		SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+		return db.query(SUDOKU_TABLE_NAME, new String[]{SudokuColumns._ID, SudokuColumns.DATA},
+				SudokuColumns.DIFFICULTY + " is null", null, null, null, null, String.valueOf(limit));
+	}
+
+	private SQLiteStatement mUpdateDifficultyStatement;
+
+	/**
+	 * Stores difficulty rating of the puzzle, only if the puzzle still has the rated data.
+	 * Puzzle changed while it was being rated stays unrated, so that it is rated again.
+	 *
+	 * @param sudokuID   Primary key of puzzle.
+	 * @param data       Data of the puzzle, which has been rated.
+	 * @param difficulty Rating computed by {@link DifficultyRater}.
+	 */
+	public void updateDifficulty(long sudokuID, String data, int difficulty) {
+		if (mUpdateDifficultyStatement == null) {
+			SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+			mUpdateDifficultyStatement = db.compileStatement(
+					"update sudoku set difficulty = ? where _id = ? and data is ?"
+			);
+		}
+		mUpdateDifficultyStatement.bindLong(1, difficulty);
+		mUpdateDifficultyStatement.bindLong(2, sudokuID);
+		if (data != null) {
+			mUpdateDifficultyStatement.bindString(3, data);
+		} else {
+			mUpdateDifficultyStatement.bindNull(3);
+		}
+		mUpdateDifficultyStatement.execute();
+	}
+
+	/**
+	 * Marks the puzzle as not rated (e.g. after the puzzle has been edited), so that it
+	 * is rated again.
+	 *
+	 * @param sudokuID Primary key of puzzle.
+	 */
+	public void resetDifficulty(long sudokuID) {
+		ContentValues values = new ContentValues();
+		values.putNull(SudokuColumns.DIFFICULTY);
+		SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		db.update(SUDOKU_TABLE_NAME, values, SudokuColumns._ID + "=" + sudokuID, null);
+	}
+
+	/**
+	 * Checks all puzzles in the given folder and returns those, which do not have exactly one
+	 * solution (puzzles too hard to be checked are not included).
+	 *
+	 * @param folderID Primary key of folder.
+	 * @return Primary keys of puzzles without unique solution.
+	 */
+	public long[] findSudokusWithoutUniqueSolution(long folderID) {
+		List<Long> ids = new ArrayList<Long>();
+		List<String> data = new ArrayList<String>();
+		Cursor c = null;
+		try {
+			SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+			c = db.query(SUDOKU_TABLE_NAME, new String[]{SudokuColumns._ID, SudokuColumns.DATA},
+					SudokuColumns.FOLDER_ID + "=" + folderID, null, null, null, null);
+			while (c.moveToNext()) {
+				ids.add(c.getLong(0));
+				data.add(c.getString(1));
+			}
+		} finally {
+			if (c != null) c.close();
+		}
+
+		int[] results = new SolutionCounter().checkAll(data);
+		int count = 0;
+		for (int result : results) {
+			if (result == SolutionCounter.NO_SOLUTION || result == SolutionCounter.MULTIPLE) {
+				count++;
+			}
+		}
+		long[] found = new long[count];
+		count = 0;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == SolutionCounter.NO_SOLUTION || results[i] == SolutionCounter.MULTIPLE) {
+				found[count++] = ids.get(i);
+			}
+		}
+		return found;
 	}
 
 	/**
@@ -379,8 +500,21 @@ public class SudokuDatabase {
 		throw new SQLException("Failed to insert sudoku.");
 	}
 
+	// Search nodes after which import check gives up and the puzzle is imported as it is.
+	private static final int IMPORT_CHECK_NODE_LIMIT = 100000;
+
 	private SQLiteStatement mInsertSudokuStatement;
+	private SolutionCounter mSolutionCounter;
 
+	/**
+	 * Imports puzzle into given folder. Puzzles which have no solution at all are not
+	 * imported, puzzles with more than one solution are imported as they are.
+	 *
+	 * @param folderID Primary key of folder.
+	 * @param pars
+	 * @return Primary key of imported puzzle, -1 if the puzzle has no solution.
+	 * @throws SudokuInvalidFormatException
+	 */
 	public long importSudoku(long folderID, SudokuImportParams pars) throws SudokuInvalidFormatException {
 		if (pars.data == null) {
 			throw new SudokuInvalidFormatException(pars.data);
@@ -390,6 +524,14 @@ public class SudokuDatabase {
 			throw new SudokuInvalidFormatException(pars.data);
 		}
 
+		if (mSolutionCounter == null) {
+			mSolutionCounter = new SolutionCounter();
+			mSolutionCounter.setNodeLimit(IMPORT_CHECK_NODE_LIMIT);
+		}
+		if (mSolutionCounter.check(pars.data) == SolutionCounter.NO_SOLUTION) {
+			return -1;
+		}
+
 		if (mInsertSudokuStatement == null) {
 			SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 			mInsertSudokuStatement = db.compileStatement(
@@ -423,6 +565,131 @@ public class SudokuDatabase {
 		throw new SQLException("Failed to insert sudoku.");
 	}
 
+	private SQLiteStatement mInsertGeneratedStatement;
+
+	/**
+	 * Inserts generated puzzle into given folder. Unlike {@link #importSudoku(long, SudokuImportParams)},
+	 * the puzzle is not checked, generator guarantees it has unique solution.
+	 *
+	 * @param folderID   Primary key of folder.
+	 * @param data       Puzzle serialized by {@link CellCollection#serialize()}.
+	 * @param difficulty Rating computed by {@link DifficultyRater}.
+	 * @return Primary key of inserted puzzle.
+	 */
+	public long insertGeneratedSudoku(long folderID, String data, int difficulty) {
+		if (mInsertGeneratedStatement == null) {
+			SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+			mInsertGeneratedStatement = db.compileStatement(
+					"insert into sudoku (folder_id, created, state, time, last_played, data, difficulty) values (?, ?, ?, 0, 0, ?, ?)"
+			);
+		}
+
+		mInsertGeneratedStatement.bindLong(1, folderID);
+		mInsertGeneratedStatement.bindLong(2, System.currentTimeMillis());
+		mInsertGeneratedStatement.bindLong(3, SudokuGame.GAME_STATE_NOT_STARTED);
+		mInsertGeneratedStatement.bindString(4, data);
+		mInsertGeneratedStatement.bindLong(5, difficulty);
+
+		long rowId = mInsertGeneratedStatement.executeInsert();
+		if (rowId > 0) {
+			return rowId;
+		}
+
+		throw new SQLException("Failed to insert sudoku.");
+	}
+
+	/**
+	 * Returns number of puzzles of given level in the pool (see {@link PuzzlePool}).
+	 *
+	 * @param level One of LEVEL_* constants of {@link DifficultyRater}.
+	 * @return
+	 */
+	public int getPoolSize(int level) {
+		SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+		Cursor c = db.rawQuery("select count(*) from " + POOL_TABLE_NAME + " where "
+				+ getDifficultyCondition(level), null);
+		try {
+			return c.moveToFirst() ? c.getInt(0) : 0;
+		} finally {
+			c.close();
+		}
+	}
+
+	private SQLiteStatement mInsertPooledStatement;
+
+	/**
+	 * Adds generated puzzle to the pool.
+	 *
+	 * @param data       Puzzle serialized by {@link CellCollection#serialize()}.
+	 * @param difficulty Rating computed by {@link DifficultyRater}.
+	 */
+	public void insertPooledSudoku(String data, int difficulty) {
+		if (mInsertPooledStatement == null) {
+			SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+			mInsertPooledStatement = db.compileStatement(
+					"insert into pool (data, difficulty) values (?, ?)"
+			);
+		}
+
+		mInsertPooledStatement.bindString(1, data);
+		mInsertPooledStatement.bindLong(2, difficulty);
+		mInsertPooledStatement.executeInsert();
+	}
+
+	/**
+	 * Moves one puzzle of given level from the pool into the folder.
+	 *
+	 * @param folderID Primary key of folder.
+	 * @param level    One of LEVEL_* constants of {@link DifficultyRater}.
+	 * @return Primary key of the puzzle in the folder, -1 if the pool has no puzzle of the level.
+	 */
+	public long takePooledSudoku(long folderID, int level) {
+		SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			Cursor c = db.query(POOL_TABLE_NAME, new String[]{SudokuColumns._ID},
+					getDifficultyCondition(level), null, null, null, null, "1");
+			long poolID;
+			try {
+				if (!c.moveToFirst()) {
+					return -1;
+				}
+				poolID = c.getLong(0);
+			} finally {
+				c.close();
+			}
+
+			SQLiteStatement move = db.compileStatement(
+					"insert into sudoku (folder_id, created, state, time, last_played, data, difficulty) "
+							+ "select ?, ?, ?, 0, 0, data, difficulty from pool where _id = ?");
+			long rowId;
+			try {
+				move.bindLong(1, folderID);
+				move.bindLong(2, System.currentTimeMillis());
+				move.bindLong(3, SudokuGame.GAME_STATE_NOT_STARTED);
+				move.bindLong(4, poolID);
+				rowId = move.executeInsert();
+			} finally {
+				move.close();
+			}
+			if (rowId <= 0) {
+				throw new SQLException("Failed to insert sudoku.");
+			}
+			db.delete(POOL_TABLE_NAME, SudokuColumns._ID + "=" + poolID, null);
+
+			db.setTransactionSuccessful();
+			return rowId;
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	// range of ratings of the level, so that index on difficulty can be used
+	private static String getDifficultyCondition(int level) {
+		return SudokuColumns.DIFFICULTY + " between " + DifficultyRater.getMinRating(level)
+				+ " and " + DifficultyRater.getMaxRating(level);
+	}
+
 	/**
 	 * Returns List of sudokus to export.
 	 *
@@ -487,6 +754,15 @@ public class SudokuDatabase {
 		if (mInsertSudokuStatement != null) {
 			mInsertSudokuStatement.close();
 		}
+		if (mUpdateDifficultyStatement != null) {
+			mUpdateDifficultyStatement.close();
+		}
+		if (mInsertGeneratedStatement != null) {
+			mInsertGeneratedStatement.close();
+		}
+		if (mInsertPooledStatement != null) {
+			mInsertPooledStatement.close();
+		}
 
 		mOpenHelper.close();
 	}
@@ -0,0 +1,280 @@
+package org.moire.opensudoku.game;
+
+/**
+ * Variant rule of sudoku, such as diagonals or anti-knight rule. Constraint is applied
+ * once, when {@link BoardLayout} is being built: it adds units (groups of cells which
+ * must contain unique values) and relations (pairs of cells which cannot contain the same
+ * value). These become part of layout's peer tables, so validation, candidates and notes
+ * respect the rule without any additional work per move.
+ * <p/>
+ * Constraints are identified by name in layout descriptor, see
+ * {@link BoardLayout#getDescriptor()}.
+ */
+public abstract class BoardConstraint {
+
+	/**
+	 * Both main diagonals must contain unique values.
+	 */
+	public static final BoardConstraint DIAGONAL = new BoardConstraint("diagonal", 0) {
+		@Override
+		boolean isApplicable(BoardLayout.Builder builder) {
+			return builder.mRowCount == builder.mSize && builder.mColumnCount == builder.mSize;
+		}
+
+		@Override
+		void apply(BoardLayout.Builder builder) {
+			int size = builder.mSize;
+			int[] diagonal = new int[size];
+			int[] antiDiagonal = new int[size];
+			for (int i = 0; i < size; i++) {
+				diagonal[i] = builder.getCell(i, i);
+				antiDiagonal[i] = builder.getCell(i, size - 1 - i);
+			}
+			builder.addUnit(BoardLayout.UNIT_EXTRA, diagonal);
+			builder.addUnit(BoardLayout.UNIT_EXTRA, antiDiagonal);
+		}
+	};
+
+	/**
+	 * Windows (box-sized regions placed one cell apart from each other and from the
+	 * edge of the board) must contain unique values. There are four of them on classic board.
+	 */
+	public static final BoardConstraint WINDOKU = new BoardConstraint("windoku", 1) {
+		@Override
+		boolean isApplicable(BoardLayout.Builder builder) {
+			return builder.mBoxRows == builder.mBoxColumns && builder.mBoxRows > 1
+					&& builder.mRowCount == builder.mSize && builder.mColumnCount == builder.mSize;
+		}
+
+		@Override
+		void apply(BoardLayout.Builder builder) {
+			int boxSize = builder.mBoxRows;
+			for (int wr = 1; wr + boxSize < builder.mSize; wr += boxSize + 1) {
+				for (int wc = 1; wc + boxSize < builder.mSize; wc += boxSize + 1) {
+					int[] window = new int[builder.mSize];
+					for (int i = 0; i < builder.mSize; i++) {
+						window[i] = builder.getCell(wr + i / boxSize, wc + i % boxSize);
+					}
+					builder.addUnit(BoardLayout.UNIT_EXTRA, window);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Cells a chess knight's move apart cannot contain the same value.
+	 */
+	public static final BoardConstraint ANTI_KNIGHT = new BoardConstraint("antiknight", 2) {
+		@Override
+		boolean isApplicable(BoardLayout.Builder builder) {
+			return true;
+		}
+
+		@Override
+		void apply(BoardLayout.Builder builder) {
+			addMoveRelations(builder, new int[][]{{1, -2}, {1, 2}, {2, -1}, {2, 1}});
+		}
+	};
+
+	/**
+	 * Cells a chess king's move apart (including diagonal neighbours) cannot contain
+	 * the same value.
+	 */
+	public static final BoardConstraint ANTI_KING = new BoardConstraint("antiking", 3) {
+		@Override
+		boolean isApplicable(BoardLayout.Builder builder) {
+			return true;
+		}
+
+		@Override
+		void apply(BoardLayout.Builder builder) {
+			addMoveRelations(builder, new int[][]{{0, 1}, {1, -1}, {1, 0}, {1, 1}});
+		}
+	};
+
+	private static final BoardConstraint[] CONSTRAINTS = {DIAGONAL, WINDOKU, ANTI_KNIGHT, ANTI_KING};
+
+	private static final String KILLER_PREFIX = "killer=";
+
+	private final String mName;
+	private final int mOrder;
+
+	private BoardConstraint(String name, int order) {
+		mName = name;
+		mOrder = order;
+	}
+
+	/**
+	 * Returns name of the constraint used in layout descriptor.
+	 *
+	 * @return
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Returns constraint with given name, or null if there is no such constraint.
+	 *
+	 * @param name
+	 * @return
+	 * @throws IllegalArgumentException if name describes killer cages, which are not valid.
+	 */
+	public static BoardConstraint forName(String name) {
+		if (name.startsWith(KILLER_PREFIX)) {
+			return KillerCages.parse(name);
+		}
+		for (BoardConstraint constraint : CONSTRAINTS) {
+			if (constraint.mName.equals(name)) {
+				return constraint;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns killer sudoku constraint: cells of each cage must contain unique values, which
+	 * add up to the cage's sum. Supported on boards up to 9x9.
+	 *
+	 * @param sums  Sum of each cage.
+	 * @param cages Indexes of cells of each cage (see {@link BoardLayout}).
+	 * @return
+	 */
+	public static BoardConstraint killerCages(int[] sums, int[][] cages) {
+		if (sums.length != cages.length) {
+			throw new IllegalArgumentException("Each cage must have a sum.");
+		}
+		return new KillerCages(sums, cages);
+	}
+
+	/**
+	 * Sorts constraints to canonical order, in which they are applied and described.
+	 */
+	static void sort(BoardConstraint[] constraints) {
+		for (int i = 1; i < constraints.length; i++) {
+			BoardConstraint constraint = constraints[i];
+			int j = i - 1;
+			while (j >= 0 && constraints[j].mOrder > constraint.mOrder) {
+				constraints[j + 1] = constraints[j];
+				j--;
+			}
+			constraints[j + 1] = constraint;
+		}
+	}
+
+	/**
+	 * Returns true, if constraint can be applied to the board being built.
+	 */
+	abstract boolean isApplicable(BoardLayout.Builder builder);
+
+	/**
+	 * Adds constraint's units and relations to the board being built.
+	 */
+	abstract void apply(BoardLayout.Builder builder);
+
+	/**
+	 * Relates each cell with cells at given offsets (rows, columns). Only one of each pair
+	 * of opposite offsets has to be given, relations are symmetric.
+	 */
+	private static void addMoveRelations(BoardLayout.Builder builder, int[][] offsets) {
+		for (int r = 0; r < builder.mRowCount; r++) {
+			for (int c = 0; c < builder.mColumnCount; c++) {
+				int cell = builder.getCell(r, c);
+				if (cell < 0) {
+					continue;
+				}
+				for (int[] offset : offsets) {
+					int other = builder.getCell(r + offset[0], c + offset[1]);
+					if (other >= 0) {
+						builder.addRelation(cell, other);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return mName;
+	}
+
+	/**
+	 * Killer sudoku cages. Unlike other constraints, cages differ for each puzzle, they are
+	 * described in the name as <code>killer=sum:cell.cell.cell,sum:cell.cell...</code>.
+	 */
+	private static final class KillerCages extends BoardConstraint {
+		private final int[] mSums;
+		private final int[][] mCages;
+
+		KillerCages(int[] sums, int[][] cages) {
+			super(describe(sums, cages), 4);
+			mSums = sums;
+			mCages = cages;
+		}
+
+		private static String describe(int[] sums, int[][] cages) {
+			StringBuilder name = new StringBuilder(KILLER_PREFIX);
+			for (int i = 0; i < cages.length; i++) {
+				if (i > 0) {
+					name.append(',');
+				}
+				name.append(sums[i]).append(':');
+				for (int j = 0; j < cages[i].length; j++) {
+					if (j > 0) {
+						name.append('.');
+					}
+					name.append(cages[i][j]);
+				}
+			}
+			return name.toString();
+		}
+
+		static KillerCages parse(String name) {
+			String[] cageStrings = name.substring(KILLER_PREFIX.length()).split(",");
+			int[] sums = new int[cageStrings.length];
+			int[][] cages = new int[cageStrings.length][];
+			try {
+				for (int i = 0; i < cageStrings.length; i++) {
+					String cage = cageStrings[i];
+					int colon = cage.indexOf(':');
+					sums[i] = Integer.parseInt(cage.substring(0, colon));
+					String[] cells = cage.substring(colon + 1).split("\\.");
+					cages[i] = new int[cells.length];
+					for (int j = 0; j < cells.length; j++) {
+						cages[i][j] = Integer.parseInt(cells[j]);
+					}
+				}
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Invalid killer cages: " + name, e);
+			}
+			return new KillerCages(sums, cages);
+		}
+
+		@Override
+		boolean isApplicable(BoardLayout.Builder builder) {
+			if (builder.mSize > KillerCombinations.MAX_SIZE) {
+				return false;
+			}
+			boolean[] caged = new boolean[builder.mCellCount];
+			for (int[] cage : mCages) {
+				if (cage.length == 0 || cage.length > builder.mSize) {
+					return false;
+				}
+				for (int cell : cage) {
+					if (cell < 0 || cell >= builder.mCellCount || caged[cell]) {
+						return false;
+					}
+					caged[cell] = true;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		void apply(BoardLayout.Builder builder) {
+			for (int i = 0; i < mCages.length; i++) {
+				builder.addCage(mSums[i], mCages[i].clone());
+			}
+		}
+	}
+}
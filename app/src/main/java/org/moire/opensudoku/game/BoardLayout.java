@@ -0,0 +1,811 @@
+package org.moire.opensudoku.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shape of the sudoku board: how many values can be entered in the cells, where the cells
+ * are placed and which groups of cells (units) must contain unique values.
+ * <p/>
+ * Cells are identified by index (0 to {@link #getCellCount()} - 1), rows and columns
+ * of the board are used only to place them on the screen. All lookup tables (units of each
+ * cell, peers of each cell) are computed once, when the layout is created. Layouts are
+ * immutable and shared by all boards of the same shape, use {@link #fromDescriptor(String)}
+ * or {@link #regular(int, int, int)} to get them.
+ * <p/>
+ * Variant rules (diagonals, anti-knight...) are added by {@link BoardConstraint}s, which
+ * add units and peers while the layout is being built. Once the layout is built, rules
+ * are just part of the unit and peer tables, so they cost nothing extra during the game.
+ */
+public final class BoardLayout {
+
+	/**
+	 * Largest supported number of values. Bit masks of values must fit in <code>int</code>.
+	 */
+	public static final int MAX_SIZE = 25;
+
+	public static final int UNIT_ROW = 0;
+	public static final int UNIT_COLUMN = 1;
+	public static final int UNIT_BOX = 2;
+	/**
+	 * Additional unit added by a {@link BoardConstraint} (diagonal, window...).
+	 */
+	public static final int UNIT_EXTRA = 3;
+	/**
+	 * Killer sudoku cage, see {@link BoardConstraint#killerCages(int[], int[][])}.
+	 */
+	public static final int UNIT_CAGE = 4;
+
+	static final int UNIT_KIND_COUNT = 3;
+
+	private static final String CONSTRAINT_SEPARATOR = ";";
+
+	private static final String SAMURAI_DESCRIPTOR = "9:3x3@21x21=0.0,0.12,6.6,12.0,12.12";
+
+	private static final Map<String, BoardLayout> sLayouts = new HashMap<String, BoardLayout>();
+
+	/**
+	 * Standard 9x9 board with 3x3 boxes.
+	 */
+	public static final BoardLayout CLASSIC = regular(9, 3, 3);
+
+	// Characters used to display values, values above 9 are shown as letters.
+	private static final String VALUE_CHARS = "0123456789ABCDEFGHIJKLMNOP";
+	private static final String[] VALUE_LABELS = new String[MAX_SIZE + 1];
+
+	static {
+		for (int value = 0; value <= MAX_SIZE; value++) {
+			VALUE_LABELS[value] = String.valueOf(VALUE_CHARS.charAt(value));
+		}
+	}
+
+	private final String mDescriptor;
+	private final int mSize;
+	private final int mBoxRows;
+	private final int mBoxColumns;
+	private final int mRowCount;
+	private final int mColumnCount;
+	private final int mCellCount;
+	private final int mBitSetWords;
+	private final BoardConstraint[] mConstraints;
+
+	// Position of each cell on the board and cell at each position (-1 if there is none).
+	private final int[] mCellRows;
+	private final int[] mCellColumns;
+	private final int[] mGridCells;
+
+	// Cell indexes of each unit, kind of each unit and units containing each cell.
+	private final int[][] mUnits;
+	private final byte[] mUnitKinds;
+	private final int[][] mCellUnits;
+	// First unit of each kind containing each cell (indexed by kind * cell count + cell).
+	private final int[] mCellUnitsByKind;
+	// Peers of each cell (cells which cannot contain the same value, because they share
+	// a unit or are related by some constraint), as a list of cell indexes and as a bit
+	// set (indexed by cell * bit set words + word).
+	private final int[][] mPeers;
+	private final long[] mPeerBits;
+
+	// Killer cages: sum and unit of each cage and cage containing each cell (-1 if none).
+	private final int[] mCageSums;
+	private final int[] mCageUnits;
+	private final int[] mCellCages;
+
+	private BoardLayout(Builder builder, String descriptor, BoardConstraint[] constraints) {
+		mDescriptor = descriptor;
+		mConstraints = constraints;
+		mSize = builder.mSize;
+		mBoxRows = builder.mBoxRows;
+		mBoxColumns = builder.mBoxColumns;
+		mRowCount = builder.mRowCount;
+		mColumnCount = builder.mColumnCount;
+		mGridCells = builder.mGridCells;
+		mCellCount = builder.mCellCount;
+		mBitSetWords = (mCellCount + 63) >>> 6;
+
+		int unitCount = builder.mUnits.size();
+		mUnits = builder.mUnits.toArray(new int[unitCount][]);
+		mUnitKinds = new byte[unitCount];
+		for (int u = 0; u < unitCount; u++) {
+			mUnitKinds[u] = builder.mUnitKinds.get(u).byteValue();
+		}
+
+		mCellRows = new int[mCellCount];
+		mCellColumns = new int[mCellCount];
+		for (int pos = 0; pos < mGridCells.length; pos++) {
+			int cell = mGridCells[pos];
+			if (cell >= 0) {
+				mCellRows[cell] = pos / mColumnCount;
+				mCellColumns[cell] = pos % mColumnCount;
+			}
+		}
+
+		int[] cellUnitCounts = new int[mCellCount];
+		for (int[] unit : mUnits) {
+			for (int cell : unit) {
+				cellUnitCounts[cell]++;
+			}
+		}
+		mCellUnits = new int[mCellCount][];
+		for (int i = 0; i < mCellCount; i++) {
+			mCellUnits[i] = new int[cellUnitCounts[i]];
+			cellUnitCounts[i] = 0;
+		}
+		mCellUnitsByKind = new int[UNIT_KIND_COUNT * mCellCount];
+		for (int i = 0; i < mCellUnitsByKind.length; i++) {
+			mCellUnitsByKind[i] = -1;
+		}
+		for (int u = 0; u < unitCount; u++) {
+			for (int cell : mUnits[u]) {
+				mCellUnits[cell][cellUnitCounts[cell]++] = u;
+				int kind = mUnitKinds[u];
+				if (kind < UNIT_KIND_COUNT && mCellUnitsByKind[kind * mCellCount + cell] < 0) {
+					mCellUnitsByKind[kind * mCellCount + cell] = u;
+				}
+			}
+		}
+
+		int cageCount = builder.mCageSums.size();
+		mCageSums = new int[cageCount];
+		mCageUnits = new int[cageCount];
+		mCellCages = new int[mCellCount];
+		for (int i = 0; i < mCellCount; i++) {
+			mCellCages[i] = -1;
+		}
+		for (int cage = 0; cage < cageCount; cage++) {
+			mCageSums[cage] = builder.mCageSums.get(cage);
+			mCageUnits[cage] = builder.mCageUnits.get(cage);
+			for (int cell : mUnits[mCageUnits[cage]]) {
+				mCellCages[cell] = cage;
+			}
+		}
+
+		// peers = cells sharing a unit + related cells
+		mPeerBits = builder.relations();
+		for (int[] unit : mUnits) {
+			for (int a : unit) {
+				for (int b : unit) {
+					mPeerBits[a * mBitSetWords + (b >>> 6)] |= 1L << b;
+				}
+			}
+		}
+		mPeers = new int[mCellCount][];
+		for (int i = 0; i < mCellCount; i++) {
+			// cell is not its own peer
+			mPeerBits[i * mBitSetWords + (i >>> 6)] &= ~(1L << i);
+
+			int count = 0;
+			for (int w = 0; w < mBitSetWords; w++) {
+				count += Long.bitCount(mPeerBits[i * mBitSetWords + w]);
+			}
+			mPeers[i] = new int[count];
+			count = 0;
+			for (int w = 0; w < mBitSetWords; w++) {
+				long bits = mPeerBits[i * mBitSetWords + w];
+				while (bits != 0) {
+					mPeers[i][count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns layout of square board with <code>size</code> rows and columns divided into
+	 * boxes of <code>boxRows</code> x <code>boxColumns</code> cells, for example 6x6 board
+	 * with 2x3 boxes or 16x16 board with 4x4 boxes.
+	 *
+	 * @param size       Number of values, rows and columns.
+	 * @param boxRows    Number of rows of each box.
+	 * @param boxColumns Number of columns of each box.
+	 * @return
+	 */
+	public static BoardLayout regular(int size, int boxRows, int boxColumns) {
+		return fromDescriptor(size + ":" + boxRows + "x" + boxColumns);
+	}
+
+	/**
+	 * Returns layout of square board with given variant rules, see
+	 * {@link #regular(int, int, int)}.
+	 *
+	 * @param size        Number of values, rows and columns.
+	 * @param boxRows     Number of rows of each box.
+	 * @param boxColumns  Number of columns of each box.
+	 * @param constraints Variant rules.
+	 * @return
+	 * @throws IllegalArgumentException if some constraint cannot be applied to the board.
+	 */
+	public static BoardLayout regular(int size, int boxRows, int boxColumns, BoardConstraint... constraints) {
+		StringBuilder descriptor = new StringBuilder();
+		descriptor.append(size).append(":").append(boxRows).append("x").append(boxColumns);
+		for (BoardConstraint constraint : constraints) {
+			descriptor.append(CONSTRAINT_SEPARATOR).append(constraint.getName());
+		}
+		return fromDescriptor(descriptor.toString());
+	}
+
+	/**
+	 * Returns layout described by given descriptor (see {@link #getDescriptor()}).
+	 *
+	 * @param descriptor
+	 * @return
+	 * @throws IllegalArgumentException if descriptor is not valid.
+	 */
+	public static BoardLayout fromDescriptor(String descriptor) {
+		synchronized (sLayouts) {
+			BoardLayout layout = sLayouts.get(descriptor);
+			if (layout == null) {
+				layout = parseDescriptor(descriptor);
+				if (layout.getCageCount() > 0) {
+					// killer cages are different for each puzzle, there is no point in caching
+					return layout;
+				}
+				// the same layout can be described in several ways (different order
+				// of constraints), make sure only one instance exists
+				BoardLayout existing = sLayouts.get(layout.getDescriptor());
+				if (existing != null) {
+					layout = existing;
+				} else {
+					sLayouts.put(layout.getDescriptor(), layout);
+				}
+				sLayouts.put(descriptor, layout);
+			}
+			return layout;
+		}
+	}
+
+	/**
+	 * Returns layout of samurai sudoku: five overlapping 9x9 grids (369 cells), one in each
+	 * corner of 21x21 board and one in the middle, which shares a corner box with each
+	 * of the others.
+	 *
+	 * @return
+	 */
+	public static BoardLayout samurai() {
+		return fromDescriptor(SAMURAI_DESCRIPTOR);
+	}
+
+	private static BoardLayout parseDescriptor(String descriptor) {
+		String[] parts = descriptor.split(CONSTRAINT_SEPARATOR);
+		int size, boxRows, boxColumns;
+		int rowCount, columnCount;
+		int[] gridOffsets;
+		try {
+			String shape = parts[0];
+			int at = shape.indexOf('@');
+			String gridShape = at < 0 ? shape : shape.substring(0, at);
+			int colon = gridShape.indexOf(':');
+			int x = gridShape.indexOf('x', colon);
+			size = Integer.parseInt(gridShape.substring(0, colon).trim());
+			boxRows = Integer.parseInt(gridShape.substring(colon + 1, x).trim());
+			boxColumns = Integer.parseInt(gridShape.substring(x + 1).trim());
+
+			if (at < 0) {
+				rowCount = size;
+				columnCount = size;
+				gridOffsets = new int[]{0, 0};
+			} else {
+				// multiple grids: @rowsxcolumns=row.col,row.col...
+				String boardShape = shape.substring(at + 1);
+				int eq = boardShape.indexOf('=');
+				x = boardShape.indexOf('x');
+				rowCount = Integer.parseInt(boardShape.substring(0, x).trim());
+				columnCount = Integer.parseInt(boardShape.substring(x + 1, eq).trim());
+				String[] grids = boardShape.substring(eq + 1).split(",");
+				gridOffsets = new int[2 * grids.length];
+				for (int i = 0; i < grids.length; i++) {
+					int dot = grids[i].indexOf('.');
+					gridOffsets[2 * i] = Integer.parseInt(grids[i].substring(0, dot).trim());
+					gridOffsets[2 * i + 1] = Integer.parseInt(grids[i].substring(dot + 1).trim());
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid board layout: " + descriptor, e);
+		}
+		if (size < 1 || size > MAX_SIZE || boxRows < 1 || boxColumns < 1 || boxRows * boxColumns != size) {
+			throw new IllegalArgumentException("Invalid board layout: " + descriptor);
+		}
+		for (int i = 0; i < gridOffsets.length; i += 2) {
+			if (gridOffsets[i] < 0 || gridOffsets[i] + size > rowCount
+					|| gridOffsets[i + 1] < 0 || gridOffsets[i + 1] + size > columnCount) {
+				throw new IllegalArgumentException("Grid is out of the board: " + descriptor);
+			}
+		}
+
+		Builder builder = new Builder(size, boxRows, boxColumns, rowCount, columnCount, gridOffsets);
+
+		// constraints are applied (and described) in canonical order
+		BoardConstraint[] constraints = new BoardConstraint[parts.length - 1];
+		for (int i = 1; i < parts.length; i++) {
+			BoardConstraint constraint = BoardConstraint.forName(parts[i].trim());
+			if (constraint == null) {
+				throw new IllegalArgumentException("Unknown constraint '" + parts[i] + "' in board layout: " + descriptor);
+			}
+			constraints[i - 1] = constraint;
+		}
+		BoardConstraint.sort(constraints);
+
+		StringBuilder canonical = new StringBuilder();
+		canonical.append(size).append(":").append(boxRows).append("x").append(boxColumns);
+		if (gridOffsets.length > 2 || rowCount != size || columnCount != size) {
+			canonical.append("@").append(rowCount).append("x").append(columnCount).append("=");
+			for (int i = 0; i < gridOffsets.length; i += 2) {
+				if (i > 0) {
+					canonical.append(",");
+				}
+				canonical.append(gridOffsets[i]).append(".").append(gridOffsets[i + 1]);
+			}
+		}
+		for (int i = 0; i < constraints.length; i++) {
+			if (i > 0 && constraints[i] == constraints[i - 1]) {
+				throw new IllegalArgumentException("Duplicate constraint in board layout: " + descriptor);
+			}
+			if (!constraints[i].isApplicable(builder)) {
+				throw new IllegalArgumentException("Constraint '" + constraints[i].getName() + "' cannot be applied to board layout: " + descriptor);
+			}
+			constraints[i].apply(builder);
+			canonical.append(CONSTRAINT_SEPARATOR).append(constraints[i].getName());
+		}
+
+		return new BoardLayout(builder, canonical.toString(), constraints);
+	}
+
+	/**
+	 * Returns string describing this layout, which can be stored together with the board
+	 * data. For regular boards, it is in format <code>size:boxRowsxboxColumns</code>,
+	 * followed by names of constraints separated by semicolons, for example
+	 * <code>9:3x3</code> or <code>9:3x3;diagonal;antiknight</code>.
+	 *
+	 * @return
+	 */
+	public String getDescriptor() {
+		return mDescriptor;
+	}
+
+	/**
+	 * Returns number of values, which can be entered in the cells (values are 1 to size).
+	 *
+	 * @return
+	 */
+	public int getSize() {
+		return mSize;
+	}
+
+	public int getBoxRows() {
+		return mBoxRows;
+	}
+
+	public int getBoxColumns() {
+		return mBoxColumns;
+	}
+
+	/**
+	 * Returns number of rows of the board.
+	 *
+	 * @return
+	 */
+	public int getRowCount() {
+		return mRowCount;
+	}
+
+	/**
+	 * Returns number of columns of the board.
+	 *
+	 * @return
+	 */
+	public int getColumnCount() {
+		return mColumnCount;
+	}
+
+	public int getCellCount() {
+		return mCellCount;
+	}
+
+	/**
+	 * Returns true, if some positions of the board do not contain any cell (there are
+	 * gaps between overlapping grids, like in samurai sudoku).
+	 *
+	 * @return
+	 */
+	public boolean isSparse() {
+		return mCellCount < mRowCount * mColumnCount;
+	}
+
+	/**
+	 * Returns index of the cell at given position, or -1 if there is no cell.
+	 *
+	 * @param rowIndex
+	 * @param colIndex
+	 * @return
+	 */
+	public int getCellIndex(int rowIndex, int colIndex) {
+		if (rowIndex < 0 || rowIndex >= mRowCount || colIndex < 0 || colIndex >= mColumnCount) {
+			return -1;
+		}
+		return mGridCells[rowIndex * mColumnCount + colIndex];
+	}
+
+	public int getCellRow(int index) {
+		return mCellRows[index];
+	}
+
+	public int getCellColumn(int index) {
+		return mCellColumns[index];
+	}
+
+	public int getUnitCount() {
+		return mUnits.length;
+	}
+
+	/**
+	 * Returns true, if given constraint applies to this board.
+	 *
+	 * @param constraint
+	 * @return
+	 */
+	public boolean hasConstraint(BoardConstraint constraint) {
+		for (BoardConstraint c : mConstraints) {
+			if (c == constraint) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true, if cells at given indexes cannot contain the same value.
+	 *
+	 * @param index1
+	 * @param index2
+	 * @return
+	 */
+	public boolean isPeer(int index1, int index2) {
+		return (mPeerBits[index1 * mBitSetWords + (index2 >>> 6)] & (1L << index2)) != 0;
+	}
+
+	/**
+	 * Returns number of peers of the cell (cells which cannot contain the same value).
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getPeerCount(int index) {
+		return mPeers[index].length;
+	}
+
+	/**
+	 * Returns index of i-th peer of the cell. Peers are always in the same order, so
+	 * position of peer can be used to refer to it.
+	 *
+	 * @param index
+	 * @param i
+	 * @return
+	 */
+	public int getPeer(int index, int i) {
+		return mPeers[index][i];
+	}
+
+	/**
+	 * Returns number of killer cages.
+	 *
+	 * @return
+	 */
+	public int getCageCount() {
+		return mCageSums.length;
+	}
+
+	/**
+	 * Returns sum of values in given killer cage.
+	 *
+	 * @param cage
+	 * @return
+	 */
+	public int getCageSum(int cage) {
+		return mCageSums[cage];
+	}
+
+	/**
+	 * Returns number of cells in given killer cage.
+	 *
+	 * @param cage
+	 * @return
+	 */
+	public int getCageSize(int cage) {
+		return mUnits[mCageUnits[cage]].length;
+	}
+
+	/**
+	 * Returns index of cell at given position in killer cage, cells are sorted by index.
+	 *
+	 * @param cage
+	 * @param position
+	 * @return
+	 */
+	public int getCageCell(int cage, int position) {
+		return mUnits[mCageUnits[cage]][position];
+	}
+
+	/**
+	 * Returns killer cage containing given cell, or -1 if cell is not in any cage.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getCellCage(int index) {
+		return mCellCages[index];
+	}
+
+	int getCageUnit(int cage) {
+		return mCageUnits[cage];
+	}
+
+	/**
+	 * Returns kind of given unit ({@link #UNIT_ROW}, {@link #UNIT_COLUMN}, {@link #UNIT_BOX},
+	 * {@link #UNIT_EXTRA} or {@link #UNIT_CAGE}).
+	 *
+	 * @param unit
+	 * @return
+	 */
+	public int getUnitKind(int unit) {
+		return mUnitKinds[unit];
+	}
+
+	/**
+	 * Returns first unit of given kind ({@link #UNIT_ROW}, {@link #UNIT_COLUMN} or
+	 * {@link #UNIT_BOX}) containing the cell, or -1 if there is no such unit.
+	 *
+	 * @param index
+	 * @param kind
+	 * @return
+	 */
+	public int getCellUnit(int index, int kind) {
+		return mCellUnitsByKind[kind * mCellCount + index];
+	}
+
+	/**
+	 * Returns number of cells in given unit.
+	 *
+	 * @param unit
+	 * @return
+	 */
+	public int getUnitSize(int unit) {
+		return mUnits[unit].length;
+	}
+
+	/**
+	 * Returns index of i-th cell of given unit.
+	 *
+	 * @param unit
+	 * @param i
+	 * @return
+	 */
+	public int getUnitCell(int unit, int i) {
+		return mUnits[unit][i];
+	}
+
+	/**
+	 * Returns number of units (of all kinds) containing the cell.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getCellUnitCount(int index) {
+		return mCellUnits[index].length;
+	}
+
+	/**
+	 * Returns i-th unit containing the cell.
+	 *
+	 * @param index
+	 * @param i
+	 * @return
+	 */
+	public int getCellUnitAt(int index, int i) {
+		return mCellUnits[index][i];
+	}
+
+	// Following methods return internal arrays, callers must not modify them.
+
+	int[] getUnitCells(int unit) {
+		return mUnits[unit];
+	}
+
+	int[] getCellUnits(int index) {
+		return mCellUnits[index];
+	}
+
+	int[] getPeers(int index) {
+		return mPeers[index];
+	}
+
+	/**
+	 * Returns bit mask with bits of all values set. Value <code>v</code> is represented
+	 * by bit <code>1 << (v - 1)</code>, same as in {@link CellNote}.
+	 *
+	 * @return
+	 */
+	public int getAllValuesMask() {
+		return (int) ((1L << mSize) - 1);
+	}
+
+	/**
+	 * Returns number of <code>long</code> words needed for bit set with bit for each cell.
+	 */
+	int getBitSetWords() {
+		return mBitSetWords;
+	}
+
+	/**
+	 * Returns text used to display given value, values above 9 are displayed as letters
+	 * (10 as A, 11 as B, ...). Returned strings are shared, so this does not allocate.
+	 *
+	 * @param value 0 to {@link #MAX_SIZE}.
+	 * @return
+	 */
+	public static String getValueLabel(int value) {
+		return VALUE_LABELS[value];
+	}
+
+	/**
+	 * Returns value represented by given character ('0'-'9' and letters for values above 9),
+	 * or -1 if character does not represent any value.
+	 *
+	 * @param c
+	 * @return
+	 */
+	public static int parseValue(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		int value = VALUE_CHARS.indexOf(Character.toUpperCase(c));
+		return value > 9 ? value : -1;
+	}
+
+	@Override
+	public String toString() {
+		return mDescriptor;
+	}
+
+	/**
+	 * Collects cells, units and relations between cells of the layout being created.
+	 */
+	static final class Builder {
+		final int mSize;
+		final int mBoxRows;
+		final int mBoxColumns;
+		final int mRowCount;
+		final int mColumnCount;
+		final int[] mGridCells;
+		int mCellCount;
+
+		private final List<int[]> mUnits = new ArrayList<int[]>();
+		private final List<Integer> mUnitKinds = new ArrayList<Integer>();
+		// pairs of related cells
+		private final List<int[]> mRelations = new ArrayList<int[]>();
+		private final List<Integer> mCageSums = new ArrayList<Integer>();
+		private final List<Integer> mCageUnits = new ArrayList<Integer>();
+
+		/**
+		 * Creates builder of the board consisting of size x size grids with top left corners
+		 * at given positions (pairs of row and column), which can overlap. Cells are numbered
+		 * row by row.
+		 */
+		Builder(int size, int boxRows, int boxColumns, int rowCount, int columnCount, int[] gridOffsets) {
+			mSize = size;
+			mBoxRows = boxRows;
+			mBoxColumns = boxColumns;
+			mRowCount = rowCount;
+			mColumnCount = columnCount;
+			mGridCells = new int[rowCount * columnCount];
+
+			// mark positions covered by any grid, then number them
+			for (int i = 0; i < mGridCells.length; i++) {
+				mGridCells[i] = -1;
+			}
+			for (int g = 0; g < gridOffsets.length; g += 2) {
+				for (int r = 0; r < size; r++) {
+					for (int c = 0; c < size; c++) {
+						mGridCells[(gridOffsets[g] + r) * columnCount + gridOffsets[g + 1] + c] = 0;
+					}
+				}
+			}
+			for (int i = 0; i < mGridCells.length; i++) {
+				if (mGridCells[i] == 0) {
+					mGridCells[i] = mCellCount++;
+				}
+			}
+
+			for (int g = 0; g < gridOffsets.length; g += 2) {
+				addGrid(gridOffsets[g], gridOffsets[g + 1]);
+			}
+		}
+
+		/**
+		 * Adds rows, columns and boxes of size x size grid with top left corner at given
+		 * position.
+		 */
+		private void addGrid(int rowOffset, int colOffset) {
+			int[][] rows = new int[mSize][mSize];
+			int[][] columns = new int[mSize][mSize];
+			int[][] boxes = new int[mSize][mSize];
+			for (int r = 0; r < mSize; r++) {
+				for (int c = 0; c < mSize; c++) {
+					int cell = getCell(rowOffset + r, colOffset + c);
+					int box = (r / mBoxRows) * mBoxRows + (c / mBoxColumns);
+					int boxPos = (r % mBoxRows) * mBoxColumns + (c % mBoxColumns);
+					rows[r][c] = cell;
+					columns[c][r] = cell;
+					boxes[box][boxPos] = cell;
+				}
+			}
+			for (int[] unit : rows) {
+				addUnit(UNIT_ROW, unit);
+			}
+			for (int[] unit : columns) {
+				addUnit(UNIT_COLUMN, unit);
+			}
+			for (int[] unit : boxes) {
+				addUnit(UNIT_BOX, unit);
+			}
+		}
+
+		/**
+		 * Returns index of cell at given position, -1 if there is no such cell.
+		 */
+		int getCell(int row, int col) {
+			if (row < 0 || row >= mRowCount || col < 0 || col >= mColumnCount) {
+				return -1;
+			}
+			return mGridCells[row * mColumnCount + col];
+		}
+
+		/**
+		 * Adds group of cells, which must contain unique values. Units shared by overlapping
+		 * grids are added only once.
+		 */
+		void addUnit(int kind, int[] cells) {
+			for (int u = 0; u < mUnits.size(); u++) {
+				if (mUnitKinds.get(u) == kind && Arrays.equals(mUnits.get(u), cells)) {
+					return;
+				}
+			}
+			mUnits.add(cells);
+			mUnitKinds.add(kind);
+		}
+
+		/**
+		 * Adds killer cage, cells of the cage are sorted.
+		 */
+		void addCage(int sum, int[] cells) {
+			Arrays.sort(cells);
+			mCageSums.add(sum);
+			mCageUnits.add(mUnits.size());
+			addUnit(UNIT_CAGE, cells);
+		}
+
+		/**
+		 * Adds relation between two cells, which cannot contain the same value.
+		 */
+		void addRelation(int cell1, int cell2) {
+			mRelations.add(new int[]{cell1, cell2});
+		}
+
+		/**
+		 * Returns bit set of related cells of each cell.
+		 */
+		private long[] relations() {
+			int words = (mCellCount + 63) >>> 6;
+			long[] bits = new long[mCellCount * words];
+			for (int[] relation : mRelations) {
+				int a = relation[0];
+				int b = relation[1];
+				bits[a * words + (b >>> 6)] |= 1L << b;
+				bits[b * words + (a >>> 6)] |= 1L << a;
+			}
+			return bits;
+		}
+	}
+}
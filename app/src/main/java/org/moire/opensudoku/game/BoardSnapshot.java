@@ -0,0 +1,112 @@
+package org.moire.opensudoku.game;
+
+/**
+ * Immutable state of {@link CellCollection} at some point in time. Snapshots are published
+ * by the collection's owner thread and can be safely read from any thread.
+ * <p/>
+ * Snapshot is cheap to create, it shares data with the collection until the collection
+ * changes. Use {@link CellCollection#fromSnapshot(BoardSnapshot)} to get mutable collection
+ * back.
+ */
+public final class BoardSnapshot {
+
+	// Accessed directly by CellCollection, which shares them with snapshot (copy on write).
+	final BoardLayout mLayout;
+	final byte[] mValues;
+	final long[] mNotes;
+	final long[] mEditable;
+	final long[] mValid;
+	final long mValuesHash;
+	final long mNotesHash;
+
+	/**
+	 * Wraps given arrays, caller must not modify them afterwards.
+	 */
+	BoardSnapshot(BoardLayout layout, byte[] values, long[] notes, long[] editable, long[] valid,
+				  long valuesHash, long notesHash) {
+		mLayout = layout;
+		mValues = values;
+		mNotes = notes;
+		mEditable = editable;
+		mValid = valid;
+		mValuesHash = valuesHash;
+		mNotesHash = notesHash;
+	}
+
+	public BoardLayout getLayout() {
+		return mLayout;
+	}
+
+	/**
+	 * Returns hash of the snapshot, see {@link CellCollection#getHash(boolean)}.
+	 *
+	 * @param includeNotes
+	 * @return
+	 */
+	public long getHash(boolean includeNotes) {
+		return includeNotes ? mValuesHash ^ mNotesHash : mValuesHash;
+	}
+
+	public int getValue(int rowIndex, int colIndex) {
+		return mValues[cellIndex(rowIndex, colIndex)];
+	}
+
+	public CellNote getNote(int rowIndex, int colIndex) {
+		return getNote(rowIndex, colIndex, CellNote.LAYER_CORNER);
+	}
+
+	public CellNote getNote(int rowIndex, int colIndex, int layer) {
+		return CellNote.valueOf(CellCollection.getNoteMask(mNotes[cellIndex(rowIndex, colIndex)], layer));
+	}
+
+	public boolean isEditable(int rowIndex, int colIndex) {
+		return CellCollection.getBit(mEditable, cellIndex(rowIndex, colIndex));
+	}
+
+	public boolean isValid(int rowIndex, int colIndex) {
+		return CellCollection.getBit(mValid, cellIndex(rowIndex, colIndex));
+	}
+
+	/**
+	 * Returns value of the cell at given index (see {@link BoardLayout}).
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getValue(int index) {
+		return mValues[index];
+	}
+
+	/**
+	 * Returns true, if cell at given index (see {@link BoardLayout}) is editable.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public boolean isEditable(int index) {
+		return CellCollection.getBit(mEditable, index);
+	}
+
+	private int cellIndex(int rowIndex, int colIndex) {
+		int index = mLayout.getCellIndex(rowIndex, colIndex);
+		if (index < 0) {
+			throw new IndexOutOfBoundsException("Cell [" + rowIndex + ", " + colIndex + "] is out of the board.");
+		}
+		return index;
+	}
+
+	public String serialize() {
+		StringBuilder sb = new StringBuilder();
+		serialize(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Writes snapshot in the same format as {@link CellCollection#serialize(StringBuilder)}.
+	 *
+	 * @param data
+	 */
+	public void serialize(StringBuilder data) {
+		CellCollection.serialize(data, mLayout, mValues, mNotes, mEditable);
+	}
+}
@@ -25,22 +25,22 @@ import java.util.StringTokenizer;
 /**
  * Sudoku cell. Every cell has value, some notes attached to it and some basic
  * state (whether it is editable and valid).
+ * <p/>
+ * Cell obtained from {@link CellCollection} is just a view over collection's data, all
+ * changes are written directly to the collection.
  *
  * @author romario
  */
 public class Cell {
-	// if cell is included in collection, here are some additional information 
+	// if cell is included in collection, here are some additional information
 	// about collection and cell's position in it
-	private CellCollection mCellCollection;
-	private final Object mCellCollectionLock = new Object();
-	private int mRowIndex = -1;
-	private int mColumnIndex = -1;
-	private CellGroup mSector; // sector containing this cell
-	private CellGroup mRow; // row containing this cell
-	private CellGroup mColumn; // column containing this cell
+	private final CellCollection mCellCollection;
+	private final int mIndex;
 
+	// cell's own data, used only if cell is not included in collection
 	private int mValue;
 	private CellNote mNote;
+	private CellNote mCenterNote = CellNote.EMPTY;
 	private boolean mEditable;
 	private boolean mValid;
 
@@ -61,23 +61,36 @@ public class Cell {
 	}
 
 	private Cell(int value, CellNote note, boolean editable, boolean valid) {
-		if (value < 0 || value > 9) {
-			throw new IllegalArgumentException("Value must be between 0-9.");
+		if (value < 0 || value > BoardLayout.MAX_SIZE) {
+			throw new IllegalArgumentException("Value must be between 0-" + BoardLayout.MAX_SIZE + ".");
 		}
 
+		mCellCollection = null;
+		mIndex = -1;
 		mValue = value;
 		mNote = note;
 		mEditable = editable;
 		mValid = valid;
 	}
 
+	/**
+	 * Creates view over the cell at given index in {@link CellCollection}.
+	 *
+	 * @param cellCollection Collection containing the cell.
+	 * @param index          Cell's index within collection.
+	 */
+	Cell(CellCollection cellCollection, int index) {
+		mCellCollection = cellCollection;
+		mIndex = index;
+	}
+
 	/**
 	 * Gets cell's row index within {@link CellCollection}.
 	 *
 	 * @return Cell's row index within CellCollection.
 	 */
 	public int getRowIndex() {
-		return mRowIndex;
+		return mIndex < 0 ? -1 : mCellCollection.getLayout().getCellRow(mIndex);
 	}
 
 	/**
@@ -86,42 +99,25 @@ public class Cell {
 	 * @return Cell's column index within CellColection.
 	 */
 	public int getColumnIndex() {
-		return mColumnIndex;
+		return mIndex < 0 ? -1 : mCellCollection.getLayout().getCellColumn(mIndex);
 	}
 
 	/**
-	 * Called when <code>Cell</code> is added to {@link CellCollection}.
+	 * Gets cell's index within {@link CellCollection} (see {@link BoardLayout}).
 	 *
-	 * @param rowIndex Cell's row index within collection.
-	 * @param colIndex Cell's column index within collection.
-	 * @param sector   Reference to sector group in which cell is included.
-	 * @param row      Reference to row group in which cell is included.
-	 * @param column   Reference to column group in which cell is included.
+	 * @return Cell's index, -1 if cell is not included in collection.
 	 */
-	protected void initCollection(CellCollection cellCollection, int rowIndex, int colIndex,
-								  CellGroup sector, CellGroup row, CellGroup column) {
-		synchronized (mCellCollectionLock) {
-			mCellCollection = cellCollection;
-		}
-
-		mRowIndex = rowIndex;
-		mColumnIndex = colIndex;
-		mSector = sector;
-		mRow = row;
-		mColumn = column;
-
-		sector.addCell(this);
-		row.addCell(this);
-		column.addCell(this);
+	public int getIndex() {
+		return mIndex;
 	}
 
 	/**
-	 * Returns sector containing this cell. Sector is 3x3 group of cells.
+	 * Returns sector (box) containing this cell, for example 3x3 group of cells on classic board.
 	 *
 	 * @return Sector containing this cell.
 	 */
 	public CellGroup getSector() {
-		return mSector;
+		return mCellCollection != null ? mCellCollection.getGroup(mIndex, BoardLayout.UNIT_BOX) : null;
 	}
 
 	/**
@@ -130,7 +126,7 @@ public class Cell {
 	 * @return Row containing this cell.
 	 */
 	public CellGroup getRow() {
-		return mRow;
+		return mCellCollection != null ? mCellCollection.getGroup(mIndex, BoardLayout.UNIT_ROW) : null;
 	}
 
 	/**
@@ -139,49 +135,93 @@ public class Cell {
 	 * @return Column containing this cell.
 	 */
 	public CellGroup getColumn() {
-		return mColumn;
+		return mCellCollection != null ? mCellCollection.getGroup(mIndex, BoardLayout.UNIT_COLUMN) : null;
 	}
 
 	/**
-	 * Sets cell's value. Value can be 1-9 or 0 if cell should be empty.
+	 * Sets cell's value. Value can be 1 to size of the board (1-9 on classic board) or 0
+	 * if cell should be empty.
 	 *
-	 * @param value 1-9 or 0 if cell should be empty.
+	 * @param value 1 to size of the board or 0 if cell should be empty.
 	 */
 	public void setValue(int value) {
-		if (value < 0 || value > 9) {
-			throw new IllegalArgumentException("Value must be between 0-9.");
+		if (mCellCollection != null) {
+			mCellCollection.setValue(mIndex, value);
+		} else {
+			if (value < 0 || value > BoardLayout.MAX_SIZE) {
+				throw new IllegalArgumentException("Value must be between 0-" + BoardLayout.MAX_SIZE + ".");
+			}
+			mValue = value;
 		}
-		mValue = value;
-		onChange();
 	}
 
 	/**
-	 * Gets cell's value. Value can be 1-9 or 0 if cell is empty.
+	 * Gets cell's value. Value can be 1 to size of the board or 0 if cell is empty.
 	 *
-	 * @return Cell's value. Value can be 1-9 or 0 if cell is empty.
+	 * @return Cell's value. Value can be 1 to size of the board or 0 if cell is empty.
 	 */
 	public int getValue() {
-		return mValue;
+		return mCellCollection != null ? mCellCollection.getValue(mIndex) : mValue;
 	}
 
 
 	/**
-	 * Gets note attached to the cell.
+	 * Gets note attached to the cell (its corner layer).
 	 *
 	 * @return Note attached to the cell.
 	 */
 	public CellNote getNote() {
-		return mNote;
+		return getNote(CellNote.LAYER_CORNER);
 	}
 
 	/**
-	 * Sets note attached to the cell
+	 * Gets note in given layer of the cell.
+	 *
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @return Note attached to the cell.
+	 */
+	public CellNote getNote(int layer) {
+		if (mCellCollection != null) {
+			return mCellCollection.getNote(mIndex, layer);
+		}
+		return layer == CellNote.LAYER_CENTER ? mCenterNote : mNote;
+	}
+
+	/**
+	 * Sets note attached to the cell (its corner layer).
 	 *
 	 * @param note Note attached to the cell
 	 */
 	public void setNote(CellNote note) {
-		mNote = note;
-		onChange();
+		setNote(CellNote.LAYER_CORNER, note);
+	}
+
+	/**
+	 * Sets note in given layer of the cell.
+	 *
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @param note  Note attached to the cell
+	 */
+	public void setNote(int layer, CellNote note) {
+		if (mCellCollection != null) {
+			mCellCollection.setNote(mIndex, layer, note);
+		} else if (layer == CellNote.LAYER_CENTER) {
+			mCenterNote = note;
+		} else {
+			mNote = note;
+		}
+	}
+
+	/**
+	 * Returns numbers, which can be entered in the cell without conflict with any
+	 * number in cell's row, column or sector (or other peers given by board layout) and
+	 * which can complete cell's killer cage. Cell's own value is not taken into account.
+	 * Candidates are maintained by {@link CellCollection}, so this is O(1).
+	 *
+	 * @return Candidates as a note, empty note if cell is not included in collection.
+	 */
+	public CellNote getCandidates() {
+		return mCellCollection != null ? CellNote.valueOf(mCellCollection.getCandidatesMask(mIndex)) : CellNote.EMPTY;
 	}
 
 	/**
@@ -190,7 +230,7 @@ public class Cell {
 	 * @return True if cell can be edited.
 	 */
 	public boolean isEditable() {
-		return mEditable;
+		return mCellCollection != null ? mCellCollection.isEditable(mIndex) : mEditable;
 	}
 
 	/**
@@ -198,9 +238,12 @@ public class Cell {
 	 *
 	 * @param editable True, if cell should allow editing.
 	 */
-	public void setEditable(Boolean editable) {
-		mEditable = editable;
-		onChange();
+	public void setEditable(boolean editable) {
+		if (mCellCollection != null) {
+			mCellCollection.setEditable(mIndex, editable);
+		} else {
+			mEditable = editable;
+		}
 	}
 
 	/**
@@ -208,9 +251,12 @@ public class Cell {
 	 *
 	 * @param valid
 	 */
-	public void setValid(Boolean valid) {
-		mValid = valid;
-		onChange();
+	public void setValid(boolean valid) {
+		if (mCellCollection != null) {
+			mCellCollection.setValid(mIndex, valid);
+		} else {
+			mValid = valid;
+		}
 	}
 
 	/**
@@ -219,7 +265,7 @@ public class Cell {
 	 * @return True, if cell contains valid value according to sudoku rules.
 	 */
 	public boolean isValid() {
-		return mValid;
+		return mCellCollection != null ? mCellCollection.isValid(mIndex) : mValid;
 	}
 
 
@@ -233,6 +279,9 @@ public class Cell {
 		Cell cell = new Cell();
 		cell.setValue(Integer.parseInt(data.nextToken()));
 		cell.setNote(CellNote.deserialize(data.nextToken(), version));
+		if (version >= CellCollection.DATA_VERSION_4) {
+			cell.setNote(CellNote.LAYER_CENTER, CellNote.deserialize(data.nextToken(), version));
+		}
 		cell.setEditable(data.nextToken().equals("1"));
 
 		return cell;
@@ -258,31 +307,35 @@ public class Cell {
 	 * @param data
 	 */
 	public void serialize(StringBuilder data) {
-		data.append(mValue).append("|");
-		if (mNote == null || mNote.isEmpty()) {
-			data.append("0").append("|");
-		} else {
-			mNote.serialize(data);
-			data.append("|");
-		}
-		data.append(mEditable ? "1" : "0").append("|");
+		CellNote note = getNote();
+		CellNote centerNote = getNote(CellNote.LAYER_CENTER);
+		serialize(data, getValue(), note == null ? 0 : note.getNotedNumbersMask(),
+				centerNote == null ? 0 : centerNote.getNotedNumbersMask(), isEditable());
 	}
 
-	public String serialize() {
-		StringBuilder sb = new StringBuilder();
-		serialize(sb);
-		return sb.toString();
+	/**
+	 * Appends string representation of cell with given data to the <code>StringBuilder</code>.
+	 */
+	static void serialize(StringBuilder data, int value, int note, boolean editable) {
+		data.append(value).append("|");
+		data.append(note).append("|");
+		data.append(editable ? "1" : "0").append("|");
 	}
 
 	/**
-	 * Notify CellCollection that something has changed.
+	 * Appends string representation of cell with given data, including centre note, to the
+	 * <code>StringBuilder</code> ({@link CellCollection#DATA_VERSION_4}).
 	 */
-	private void onChange() {
-		synchronized (mCellCollectionLock) {
-			if (mCellCollection != null) {
-				mCellCollection.onChange();
-			}
+	static void serialize(StringBuilder data, int value, int note, int centerNote, boolean editable) {
+		data.append(value).append("|");
+		data.append(note).append("|");
+		data.append(centerNote).append("|");
+		data.append(editable ? "1" : "0").append("|");
+	}
 
-		}
+	public String serialize() {
+		StringBuilder sb = new StringBuilder();
+		serialize(sb);
+		return sb.toString();
 	}
 }
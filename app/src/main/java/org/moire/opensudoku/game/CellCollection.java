@@ -28,12 +28,26 @@ import java.util.StringTokenizer;
 import java.util.regex.Pattern;
 
 /**
- * Collection of sudoku cells. This class in fact represents one sudoku board (9x9).
+ * Collection of sudoku cells. This class in fact represents one sudoku board, its shape
+ * (size, boxes, positions of cells) is given by {@link BoardLayout}.
+ * <p/>
+ * Board data are kept in primitive arrays indexed by cell index (see {@link BoardLayout}),
+ * so memory and time needed by most operations grow with number of cells and values only.
+ * {@link Cell} and {@link CellGroup} instances returned by this class are just lightweight
+ * views over these arrays, they are created on demand and cached.
+ * <p/>
+ * Collection is not thread-safe. Once created, it must be read and modified only by one
+ * owner thread (UI thread in the application), listeners are called on that thread too.
+ * Other threads (savers, solvers, exporters...) must work with {@link BoardSnapshot}
+ * returned by {@link #getSnapshot()}, which is published after every change.
  *
  * @author romario
  */
 public class CellCollection {
 
+	/**
+	 * Size of the classic board, see {@link BoardLayout#CLASSIC}.
+	 */
 	public static final int SUDOKU_SIZE = 9;
 
 	/**
@@ -53,38 +67,109 @@ public class CellCollection {
 	 */
 	public static int DATA_VERSION_2 = 2;
 
-	public static int DATA_VERSION = DATA_VERSION_2;
-
-	// TODO: An array of ints is a much better than an array of Integers, but this also generalizes to the fact that two parallel arrays of ints are also a lot more efficient than an array of (int,int) objects
-	// Cell's data.
-	private Cell[][] mCells;
-
-	// Helper arrays, contains references to the groups of cells, which should contain unique
-	// numbers.
-	private CellGroup[] mSectors;
-	private CellGroup[] mRows;
-	private CellGroup[] mColumns;
+	/**
+	 * Same as {@link #DATA_VERSION_2}, with board layout descriptor (see
+	 * {@link BoardLayout#getDescriptor()}) on the second line. Used for boards other than
+	 * classic 9x9, so older versions of the application can still read classic ones.
+	 */
+	public static int DATA_VERSION_3 = 3;
 
-	private boolean mOnChangeEnabled = true;
+	/**
+	 * Same as {@link #DATA_VERSION_3}, each cell has two notes (corner and centre layer,
+	 * see {@link CellNote#LAYER_CORNER}). Used only if there are some centre notes.
+	 */
+	public static int DATA_VERSION_4 = 4;
+
+	public static int DATA_VERSION = DATA_VERSION_4;
+
+	private static final String LAYOUT_PREFIX = "layout:";
+
+	private final BoardLayout mLayout;
+	private final int mSize;
+	private final int mCellCount;
+	private final int mBitSetWords;
+
+	// Cell's data. Arrays are shared with the last published snapshot until the next change
+	// (copy on write), see publishSnapshot().
+	// Both note layers of the cell are packed in one long, see packNotes().
+	private byte[] mValues;
+	private long[] mNotes;
+	private long[] mEditable;
+	private long[] mValid;
+	private boolean mDataShared;
+
+	// Bit masks of values present in each unit (row, column, sector...).
+	private final int[] mUnitMasks;
+
+	// Incremental validation state: how many times each value occurs in each unit
+	// (indexed by unit * (size + 1) + value), how many peers of each cell contain
+	// the same value as the cell and cells whose valid flag has to be recomputed
+	// by next validate() call.
+	private final byte[] mUnitValueCounts;
+	private final byte[] mConflicts;
+	private final long[] mValidationDirty;
+	private int mFilledCount;
+	private int mConflictingCount;
+
+	// Solution of the puzzle, cells whose values (or notes) don't agree with it are not valid.
+	// Null if cells are checked only for conflicts, see setSolution().
+	private byte[] mSolution;
+
+	// Killer cages: sum and count of values entered in each cage and cages which cannot
+	// be completed anymore (their cells are not valid).
+	private final int[] mCageValueSums;
+	private final byte[] mCageFilledCounts;
+	private final boolean[] mCageBroken;
+	private int mBrokenCageCount;
+
+	// Candidates of each cell: how many peers of each cell contain each value (indexed
+	// by cell * (size + 1) + value) and bit mask of values not used by any peer.
+	private final byte[] mPeerValueCounts;
+	private final int[] mCandidates;
+
+	// Positions of each value (bit set of cells, indexed by value * bit set words + word)
+	// and how many times is each value used.
+	private final long[] mValuePositions;
+	private final int[] mValueCounts;
+
+	// Zobrist hash of values and of notes (see ZobristHash), updated with each change.
+	private long mValuesHash;
+	private long mNotesHash;
+
+	// Views over cell's data, created lazily.
+	private Cell[] mCellViews;
+	private CellGroup[] mGroupViews;
+
+	// Changes made in current transaction, see beginChange().
+	private int mChangeDepth;
+	private final byte[] mChangeKinds;
+	private final int[] mChangedCells;
+	private int mChangedCount;
 
 	private final List<OnChangeListener> mChangeListeners = new ArrayList<OnChangeListener>();
 
+	// Latest state of the board, readable from any thread.
+	private volatile BoardSnapshot mSnapshot;
+
 	/**
-	 * Creates empty sudoku.
+	 * Creates empty classic 9x9 sudoku.
 	 *
 	 * @return
 	 */
 	public static CellCollection createEmpty() {
-		Cell[][] cells = new Cell[SUDOKU_SIZE][SUDOKU_SIZE];
-
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				cells[r][c] = new Cell();
-			}
-		}
+		return createEmpty(BoardLayout.CLASSIC);
+	}
 
-		return new CellCollection(cells);
+	/**
+	 * Creates empty sudoku with given layout.
+	 *
+	 * @param layout
+	 * @return
+	 */
+	public static CellCollection createEmpty(BoardLayout layout) {
+		CellCollection cells = new CellCollection(layout);
+		cells.publishSnapshot();
+		return cells;
 	}
 
 	/**
@@ -93,12 +178,9 @@ public class CellCollection {
 	 * @return
 	 */
 	public boolean isEmpty() {
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
-				if (cell.getValue() != 0)
-					return false;
-			}
+		for (int i = 0; i < mCellCount; i++) {
+			if (mValues[i] != 0)
+				return false;
 		}
 		return true;
 	}
@@ -110,34 +192,98 @@ public class CellCollection {
 	 * @return
 	 */
 	public static CellCollection createDebugGame() {
-		CellCollection debugGame = new CellCollection(new Cell[][]{
-				{new Cell(), new Cell(), new Cell(), new Cell(4), new Cell(5), new Cell(6), new Cell(7), new Cell(8), new Cell(9),},
-				{new Cell(), new Cell(), new Cell(), new Cell(7), new Cell(8), new Cell(9), new Cell(1), new Cell(2), new Cell(3),},
-				{new Cell(), new Cell(), new Cell(), new Cell(1), new Cell(2), new Cell(3), new Cell(4), new Cell(5), new Cell(6),},
-				{new Cell(2), new Cell(3), new Cell(4), new Cell(), new Cell(), new Cell(), new Cell(8), new Cell(9), new Cell(1),},
-				{new Cell(5), new Cell(6), new Cell(7), new Cell(), new Cell(), new Cell(), new Cell(2), new Cell(3), new Cell(4),},
-				{new Cell(8), new Cell(9), new Cell(1), new Cell(), new Cell(), new Cell(), new Cell(5), new Cell(6), new Cell(7),},
-				{new Cell(3), new Cell(4), new Cell(5), new Cell(6), new Cell(7), new Cell(8), new Cell(9), new Cell(1), new Cell(2),},
-				{new Cell(6), new Cell(7), new Cell(8), new Cell(9), new Cell(1), new Cell(2), new Cell(3), new Cell(4), new Cell(5),},
-				{new Cell(9), new Cell(1), new Cell(2), new Cell(3), new Cell(4), new Cell(5), new Cell(6), new Cell(7), new Cell(8),},
-		});
-		debugGame.markFilledCellsAsNotEditable();
-		return debugGame;
+		return fromString(
+				"000456789" +
+				"000789123" +
+				"000123456" +
+				"234000891" +
+				"567000234" +
+				"891000567" +
+				"345678912" +
+				"678912345" +
+				"912345678");
 	}
 
+	/**
+	 * Returns cells arranged by rows and columns. Positions without cell (if board layout
+	 * has any) are null.
+	 *
+	 * @return
+	 */
 	public Cell[][] getCells() {
-		return mCells;
+		Cell[][] cells = new Cell[mLayout.getRowCount()][mLayout.getColumnCount()];
+		for (int i = 0; i < mCellCount; i++) {
+			cells[mLayout.getCellRow(i)][mLayout.getCellColumn(i)] = getCell(i);
+		}
+		return cells;
 	}
 
 	/**
-	 * Wraps given array in this object.
+	 * Creates collection with all cells empty, editable and valid.
+	 */
+	private CellCollection(BoardLayout layout) {
+		mLayout = layout;
+		mSize = layout.getSize();
+		mCellCount = layout.getCellCount();
+		mBitSetWords = layout.getBitSetWords();
+		int unitCount = layout.getUnitCount();
+
+		mValues = new byte[mCellCount];
+		mNotes = new long[mCellCount];
+		mEditable = new long[mBitSetWords];
+		mValid = new long[mBitSetWords];
+		mUnitMasks = new int[unitCount];
+		mUnitValueCounts = new byte[unitCount * (mSize + 1)];
+		mConflicts = new byte[mCellCount];
+		mValidationDirty = new long[mBitSetWords];
+		mPeerValueCounts = new byte[mCellCount * (mSize + 1)];
+		mCandidates = new int[mCellCount];
+		mValuePositions = new long[(mSize + 1) * mBitSetWords];
+		mValueCounts = new int[mSize + 1];
+		mChangeKinds = new byte[mCellCount];
+		mChangedCells = new int[mCellCount];
+		mCageValueSums = new int[layout.getCageCount()];
+		mCageFilledCounts = new byte[layout.getCageCount()];
+		mCageBroken = new boolean[layout.getCageCount()];
+
+		mValuesHash = ZobristHash.layoutKey(layout);
+
+		int allValues = layout.getAllValuesMask();
+		for (int i = 0; i < mCellCount; i++) {
+			mCandidates[i] = allValues;
+		}
+		setAllBits(mEditable);
+		setAllBits(mValid);
+		for (int cage = 0; cage < mCageBroken.length; cage++) {
+			updateCage(cage);
+		}
+	}
+
+	/**
+	 * Returns layout (shape) of the board.
 	 *
-	 * @param cells
+	 * @return
 	 */
-	private CellCollection(Cell[][] cells) {
+	public BoardLayout getLayout() {
+		return mLayout;
+	}
 
-		mCells = cells;
-		initCollection();
+	/**
+	 * Returns number of values, which can be entered in the cells (values are 1 to size).
+	 *
+	 * @return
+	 */
+	public int getSize() {
+		return mSize;
+	}
+
+	/**
+	 * Returns number of cells, cells can be accessed by index using {@link #getCell(int)}.
+	 *
+	 * @return
+	 */
+	public int getCellCount() {
+		return mCellCount;
 	}
 
 	/**
@@ -148,16 +294,103 @@ public class CellCollection {
 	 * @return
 	 */
 	public Cell getCell(int rowIndex, int colIndex) {
-		return mCells[rowIndex][colIndex];
+		int index = mLayout.getCellIndex(rowIndex, colIndex);
+		if (index < 0) {
+			throw new IndexOutOfBoundsException("Cell [" + rowIndex + ", " + colIndex + "] is out of the board.");
+		}
+		return getCell(index);
+	}
+
+	/**
+	 * Gets cell at given index (0 to {@link #getCellCount()} - 1).
+	 *
+	 * @param index
+	 * @return
+	 */
+	public Cell getCell(int index) {
+		if (mCellViews == null) {
+			mCellViews = new Cell[mCellCount];
+		}
+		Cell cell = mCellViews[index];
+		if (cell == null) {
+			cell = new Cell(this, index);
+			mCellViews[index] = cell;
+		}
+		return cell;
+	}
+
+	/**
+	 * Gets group of cells (row, column or sector) with given unit index.
+	 *
+	 * @param unit
+	 * @return
+	 */
+	CellGroup getGroup(int unit) {
+		if (mGroupViews == null) {
+			mGroupViews = new CellGroup[mLayout.getUnitCount()];
+		}
+		CellGroup group = mGroupViews[unit];
+		if (group == null) {
+			group = new CellGroup(this, unit);
+			mGroupViews[unit] = group;
+		}
+		return group;
+	}
+
+	/**
+	 * Returns first group of given kind (see {@link BoardLayout#UNIT_ROW} etc.) containing
+	 * cell at given index, or null if there is no such group.
+	 */
+	CellGroup getGroup(int index, int kind) {
+		int unit = mLayout.getCellUnit(index, kind);
+		return unit < 0 ? null : getGroup(unit);
 	}
 
 
 	public Cell findFirstCell(int val) {
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
-				if (cell.getValue() == val)
-					return cell;
+		if (val == 0) {
+			for (int i = 0; i < mCellCount; i++) {
+				if (mValues[i] == 0)
+					return getCell(i);
+			}
+			return null;
+		}
+		return findValue(val, 0);
+	}
+
+	/**
+	 * Returns next cell (in row by row order) containing the same value as given cell,
+	 * or null if there is no such cell. Together with {@link #findFirstCell(int)}, this
+	 * can be used to iterate over cells with given value.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public Cell findNextCell(Cell cell) {
+		int index = mLayout.getCellIndex(cell.getRowIndex(), cell.getColumnIndex());
+		int value = mValues[index];
+		if (value == 0) {
+			for (int i = index + 1; i < mCellCount; i++) {
+				if (mValues[i] == 0)
+					return getCell(i);
+			}
+			return null;
+		}
+		return findValue(value, index + 1);
+	}
+
+	/**
+	 * Returns first cell with given non-zero value at or after given index.
+	 */
+	private Cell findValue(int value, int fromIndex) {
+		int base = value * mBitSetWords;
+		for (int w = fromIndex >>> 6; w < mBitSetWords; w++) {
+			long bits = mValuePositions[base + w];
+			if (w == fromIndex >>> 6) {
+				bits &= -1L << fromIndex;
+			}
+			if (bits != 0) {
+				return getCell((w << 6) + Long.numberOfTrailingZeros(bits));
 			}
 		}
 		return null;
@@ -165,88 +398,109 @@ public class CellCollection {
 
 
 	public void markAllCellsAsValid() {
-		mOnChangeEnabled = false;
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				mCells[r][c].setValid(true);
+		beginChange();
+		copyOnWrite();
+		for (int i = 0; i < mCellCount; i++) {
+			if (!getBit(mValid, i)) {
+				setBit(mValid, i, true);
+				cellChanged(i, ChangeSet.CHANGE_VALIDITY);
 			}
 		}
-		mOnChangeEnabled = true;
-		onChange();
+		// valid flags may no longer reflect conflicts, let next validate() fix them
+		setAllBits(mValidationDirty);
+		endChange();
 	}
 
 	/**
 	 * Validates numbers in collection according to the sudoku rules. Cells with invalid
 	 * values are marked - you can use getInvalid method of cell to find out whether cell
 	 * contains valid value.
+	 * <p/>
+	 * Conflicts are tracked incrementally as values change, so this method only updates
+	 * valid flags of cells affected by changes since the last call.
 	 *
 	 * @return True if validation is successful.
 	 */
 	public boolean validate() {
-
-		boolean valid = true;
-
-		// first set all cells as valid
-		markAllCellsAsValid();
-
-		mOnChangeEnabled = false;
-		// run validation in groups
-		for (CellGroup row : mRows) {
-			if (!row.validate()) {
-				valid = false;
-			}
-		}
-		for (CellGroup column : mColumns) {
-			if (!column.validate()) {
-				valid = false;
-			}
-		}
-		for (CellGroup sector : mSectors) {
-			if (!sector.validate()) {
-				valid = false;
+		beginChange();
+		for (int w = 0; w < mBitSetWords; w++) {
+			long dirty = mValidationDirty[w];
+			mValidationDirty[w] = 0;
+			while (dirty != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(dirty);
+				dirty &= dirty - 1;
+
+				int cage = mLayout.getCellCage(i);
+				boolean cellValid = mConflicts[i] == 0 && (cage < 0 || !mCageBroken[cage])
+						&& (mSolution == null || agreesWithSolution(mValues[i], mNotes[i], mSolution[i]));
+				if (getBit(mValid, i) != cellValid) {
+					copyOnWrite();
+					setBit(mValid, i, cellValid);
+					cellChanged(i, ChangeSet.CHANGE_VALIDITY);
+				}
 			}
 		}
+		endChange();
 
-		mOnChangeEnabled = true;
-		onChange();
+		return mConflictingCount == 0 && mBrokenCageCount == 0;
+	}
 
-		return valid;
+	/**
+	 * Sets solution of the puzzle, against which {@link #validate()} checks cells in addition
+	 * to the sudoku rules: cell with value different from the solution, or empty cell with
+	 * notes excluding the solution's value is not valid.
+	 *
+	 * @param solution Values of the solution indexed by cell index, null to check only
+	 *                 conflicts. Array is not copied.
+	 */
+	void setSolution(byte[] solution) {
+		mSolution = solution;
+		setAllBits(mValidationDirty);
 	}
 
-	public boolean isCompleted() {
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
-				if (cell.getValue() == 0 || !cell.isValid()) {
-					return false;
-				}
-			}
+	/**
+	 * Returns true, if value of the cell is equal to solution's value, or cell is empty and
+	 * none of its note layers excludes solution's value.
+	 */
+	static boolean agreesWithSolution(int value, long notes, int solutionValue) {
+		if (value != 0) {
+			return value == solutionValue;
 		}
-		return true;
+		int bit = valueBit(solutionValue);
+		int corner = getNoteMask(notes, CellNote.LAYER_CORNER);
+		int center = getNoteMask(notes, CellNote.LAYER_CENTER);
+		return (corner == 0 || (corner & bit) != 0) && (center == 0 || (center & bit) != 0);
+	}
+
+	/**
+	 * Returns true, if all cells are filled and there are no conflicts between them.
+	 *
+	 * @return
+	 */
+	public boolean isCompleted() {
+		return mFilledCount == mCellCount && mConflictingCount == 0 && mBrokenCageCount == 0;
 	}
 
 	/**
 	 * Marks all cells as editable.
 	 */
 	public void markAllCellsAsEditable() {
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
-				cell.setEditable(true);
-			}
+		beginChange();
+		for (int i = 0; i < mCellCount; i++) {
+			setEditable(i, true);
 		}
+		endChange();
 	}
 
 	/**
 	 * Marks all filled cells (cells with value other than 0) as not editable.
 	 */
 	public void markFilledCellsAsNotEditable() {
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
-				cell.setEditable(cell.getValue() == 0);
-			}
+		beginChange();
+		for (int i = 0; i < mCellCount; i++) {
+			setEditable(i, mValues[i] == 0);
 		}
+		endChange();
 	}
 
 
@@ -258,72 +512,388 @@ public class CellCollection {
 	 */
 	public Map<Integer, Integer> getValuesUseCount() {
 		Map<Integer, Integer> valuesUseCount = new HashMap<Integer, Integer>();
-		for (int value = 1; value <= CellCollection.SUDOKU_SIZE; value++) {
-			valuesUseCount.put(value, 0);
+		for (int value = 1; value <= mSize; value++) {
+			valuesUseCount.put(value, mValueCounts[value]);
+		}
+		return valuesUseCount;
+	}
+
+	/**
+	 * Returns how many times given value is used in <code>CellCollection</code>. Unlike
+	 * {@link #getValuesUseCount()}, this is O(1) and does not allocate.
+	 *
+	 * @param value 1 to size of the board
+	 * @return
+	 */
+	public int getValueUseCount(int value) {
+		if (value < 1 || value > mSize) {
+			throw new IllegalArgumentException("Value must be between 1-" + mSize + ".");
+		}
+		return mValueCounts[value];
+	}
+
+	/**
+	 * Returns true, if given value is used as many times as it will be in solved sudoku.
+	 *
+	 * @param value 1 to size of the board
+	 * @return
+	 */
+	public boolean isValueCompleted(int value) {
+		return getValueUseCount(value) * mSize >= mCellCount;
+	}
+
+	/**
+	 * Returns 64-bit Zobrist hash of values on the board (and its layout). Hash is updated
+	 * incrementally with each change, so this is O(1). Equal boards always have equal hashes,
+	 * different boards have different hashes with very high probability, so hash can be
+	 * used as a key instead of serialized board.
+	 *
+	 * @return
+	 */
+	public long getHash() {
+		return mValuesHash;
+	}
+
+	/**
+	 * Returns 64-bit Zobrist hash of the board, see {@link #getHash()}.
+	 *
+	 * @param includeNotes If true, notes are hashed too.
+	 * @return
+	 */
+	public long getHash(boolean includeNotes) {
+		return includeNotes ? mValuesHash ^ mNotesHash : mValuesHash;
+	}
+
+	/**
+	 * Returns bit mask of values which are not present in any of the given cell's peers
+	 * (row, column, sector...) and, if the cell is in killer cage, which can still complete
+	 * the cage. Cell's own value is not taken into account.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getCandidatesMask(int index) {
+		int cage = mLayout.getCellCage(index);
+		if (cage < 0) {
+			return mCandidates[index];
 		}
 
-		for (int r = 0; r < CellCollection.SUDOKU_SIZE; r++) {
-			for (int c = 0; c < CellCollection.SUDOKU_SIZE; c++) {
-				int value = getCell(r, c).getValue();
-				if (value != 0) {
-					valuesUseCount.put(value, valuesUseCount.get(value) + 1);
+		// values, which can complete the cage (ignoring cell's own value)
+		int unit = mLayout.getCageUnit(cage);
+		int cells = mLayout.getCageSize(cage) - mCageFilledCounts[cage];
+		int sum = mLayout.getCageSum(cage) - mCageValueSums[cage];
+		int used = mUnitMasks[unit];
+		int value = mValues[index];
+		if (value != 0) {
+			cells++;
+			sum += value;
+			if (mUnitValueCounts[unit * (mSize + 1) + value] == 1) {
+				used &= ~valueBit(value);
+			}
+		}
+		return mCandidates[index] & KillerCombinations.getAllowedValues(cells, sum, used, mLayout.getAllValuesMask());
+	}
+
+	boolean unitContains(int unit, int value) {
+		if (value == 0) {
+			for (int i : mLayout.getUnitCells(unit)) {
+				if (mValues[i] == 0) {
+					return true;
 				}
 			}
+			return false;
 		}
+		return (mUnitMasks[unit] & valueBit(value)) != 0;
+	}
 
-		return valuesUseCount;
+	int getValue(int index) {
+		return mValues[index];
+	}
+
+	void setValue(int index, int value) {
+		if (value < 0 || value > mSize) {
+			throw new IllegalArgumentException("Value must be between 0-" + mSize + ".");
+		}
+		int oldValue = mValues[index];
+		if (oldValue != value) {
+			copyOnWrite();
+			if (oldValue != 0) {
+				removeValue(index, oldValue);
+			}
+			mValues[index] = (byte) value;
+			mValuesHash ^= ZobristHash.valueKey(index, oldValue) ^ ZobristHash.valueKey(index, value);
+			if (value != 0) {
+				addValue(index, value);
+			}
+			cellChanged(index, ChangeSet.CHANGE_VALUE);
+		}
+	}
+
+	CellNote getNote(int index, int layer) {
+		return CellNote.valueOf(getNoteMask(mNotes[index], layer));
+	}
+
+	/**
+	 * Returns bit mask of numbers noted in given layer of the cell (see
+	 * {@link CellNote#getNotedNumbersMask()}). Unlike {@link Cell#getNote(int)}, this
+	 * never allocates.
+	 *
+	 * @param index
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @return
+	 */
+	public int getNoteMask(int index, int layer) {
+		return getNoteMask(mNotes[index], layer);
+	}
+
+	void setNote(int index, int layer, CellNote note) {
+		long notes = mNotes[index];
+		long newNotes = layer == CellNote.LAYER_CENTER
+				? packNotes(getNoteMask(notes, CellNote.LAYER_CORNER), note.getNotedNumbersMask())
+				: packNotes(note.getNotedNumbersMask(), getNoteMask(notes, CellNote.LAYER_CENTER));
+		if (notes != newNotes) {
+			copyOnWrite();
+			mNotesHash ^= ZobristHash.notesKey(index, notes ^ newNotes);
+			mNotes[index] = newNotes;
+			if (mSolution != null) {
+				setBit(mValidationDirty, index, true);
+			}
+			cellChanged(index, ChangeSet.CHANGE_NOTE);
+		}
+	}
+
+	/**
+	 * Packs masks of both note layers into one long: corner layer in lower 32 bits, centre
+	 * layer in upper 32 bits. Two layers of 25 numbers (largest supported board) don't fit
+	 * into one int.
+	 */
+	static long packNotes(int corner, int center) {
+		return (corner & 0xFFFFFFFFL) | ((long) center << 32);
+	}
+
+	static int getNoteMask(long notes, int layer) {
+		return (int) (layer == CellNote.LAYER_CENTER ? notes >>> 32 : notes);
+	}
+
+	boolean isEditable(int index) {
+		return getBit(mEditable, index);
+	}
+
+	void setEditable(int index, boolean editable) {
+		if (getBit(mEditable, index) != editable) {
+			copyOnWrite();
+			setBit(mEditable, index, editable);
+			cellChanged(index, ChangeSet.CHANGE_FLAGS);
+		}
+	}
+
+	boolean isValid(int index) {
+		return getBit(mValid, index);
+	}
+
+	void setValid(int index, boolean valid) {
+		setBit(mValidationDirty, index, true);
+		if (getBit(mValid, index) != valid) {
+			copyOnWrite();
+			setBit(mValid, index, valid);
+			cellChanged(index, ChangeSet.CHANGE_VALIDITY);
+		}
 	}
 
 	/**
-	 * Initializes collection, initialization has two steps:
-	 * 1) Groups of cells which must contain unique numbers are created.
-	 * 2) Row and column index for each cell is set.
+	 * Updates unit counts and conflicts after value has been placed in the cell. Cell's
+	 * value must already be set.
 	 */
-	private void initCollection() {
-		mRows = new CellGroup[SUDOKU_SIZE];
-		mColumns = new CellGroup[SUDOKU_SIZE];
-		mSectors = new CellGroup[SUDOKU_SIZE];
+	private void addValue(int index, int value) {
+		for (int unit : mLayout.getCellUnits(index)) {
+			incUnitValueCount(unit, value);
+		}
+		mFilledCount++;
+		mValueCounts[value]++;
+		mValuePositions[value * mBitSetWords + (index >>> 6)] |= 1L << index;
+
+		int bit = valueBit(value);
+		for (int p : mLayout.getPeers(index)) {
+			if (mPeerValueCounts[p * (mSize + 1) + value]++ == 0) {
+				mCandidates[p] &= ~bit;
+			}
+			if (mValues[p] == value) {
+				changeConflicts(p, 1);
+				changeConflicts(index, 1);
+			}
+		}
+		setBit(mValidationDirty, index, true);
+
+		int cage = mLayout.getCellCage(index);
+		if (cage >= 0) {
+			mCageValueSums[cage] += value;
+			mCageFilledCounts[cage]++;
+			updateCage(cage);
+		}
+	}
+
+	/**
+	 * Updates unit counts and conflicts before value is removed from the cell. Cell's
+	 * value must still be set.
+	 */
+	private void removeValue(int index, int value) {
+		for (int unit : mLayout.getCellUnits(index)) {
+			decUnitValueCount(unit, value);
+		}
+		mFilledCount--;
+		mValueCounts[value]--;
+		mValuePositions[value * mBitSetWords + (index >>> 6)] &= ~(1L << index);
+
+		int bit = valueBit(value);
+		for (int p : mLayout.getPeers(index)) {
+			if (--mPeerValueCounts[p * (mSize + 1) + value] == 0) {
+				mCandidates[p] |= bit;
+			}
+			if (mValues[p] == value) {
+				changeConflicts(p, -1);
+				changeConflicts(index, -1);
+			}
+		}
+		setBit(mValidationDirty, index, true);
 
-		for (int i = 0; i < SUDOKU_SIZE; i++) {
-			mRows[i] = new CellGroup();
-			mColumns[i] = new CellGroup();
-			mSectors[i] = new CellGroup();
+		int cage = mLayout.getCellCage(index);
+		if (cage >= 0) {
+			mCageValueSums[cage] -= value;
+			mCageFilledCounts[cage]--;
+			updateCage(cage);
 		}
+	}
 
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
+	private void incUnitValueCount(int unit, int value) {
+		if (mUnitValueCounts[unit * (mSize + 1) + value]++ == 0) {
+			mUnitMasks[unit] |= valueBit(value);
+		}
+	}
 
-				cell.initCollection(this, r, c,
-						mSectors[((c / 3) * 3) + (r / 3)],
-						mRows[c],
-						mColumns[r]
-				);
+	private void decUnitValueCount(int unit, int value) {
+		if (--mUnitValueCounts[unit * (mSize + 1) + value] == 0) {
+			mUnitMasks[unit] &= ~valueBit(value);
+		}
+	}
+
+	/**
+	 * Checks whether killer cage can still be completed, cells of the cage are marked for
+	 * validation if this changes.
+	 */
+	private void updateCage(int cage) {
+		int cells = mLayout.getCageSize(cage) - mCageFilledCounts[cage];
+		int sum = mLayout.getCageSum(cage) - mCageValueSums[cage];
+		boolean broken = !KillerCombinations.isPossible(cells, sum, mUnitMasks[mLayout.getCageUnit(cage)],
+				mLayout.getAllValuesMask());
+		if (broken != mCageBroken[cage]) {
+			mCageBroken[cage] = broken;
+			mBrokenCageCount += broken ? 1 : -1;
+			for (int i = 0; i < mLayout.getCageSize(cage); i++) {
+				setBit(mValidationDirty, mLayout.getCageCell(cage, i), true);
 			}
 		}
 	}
 
+	private void changeConflicts(int index, int delta) {
+		int oldConflicts = mConflicts[index];
+		mConflicts[index] = (byte) (oldConflicts + delta);
+		if (oldConflicts == 0) {
+			mConflictingCount++;
+		} else if (oldConflicts + delta == 0) {
+			mConflictingCount--;
+		}
+		setBit(mValidationDirty, index, true);
+	}
+
+	/**
+	 * Sets value of empty cell without change notification, used while the collection is
+	 * being created.
+	 */
+	private void initValue(int index, int value) {
+		if (value < 0 || value > mSize) {
+			throw new IllegalArgumentException("Value must be between 0-" + mSize + ".");
+		}
+		mValues[index] = (byte) value;
+		mValuesHash ^= ZobristHash.valueKey(index, value);
+		if (value != 0) {
+			addValue(index, value);
+		}
+	}
+
+	/**
+	 * Sets note of the cell without change notification, used while the collection is
+	 * being created.
+	 */
+	private void initNotes(int index, long notes) {
+		mNotesHash ^= ZobristHash.notesKey(index, mNotes[index] ^ notes);
+		mNotes[index] = notes;
+	}
+
+	/**
+	 * Returns bit representing given value, 0 for empty cell.
+	 */
+	static int valueBit(int value) {
+		return (1 << value) >>> 1;
+	}
+
+	/**
+	 * Sets bits of all cells in the given bit set.
+	 */
+	private void setAllBits(long[] bits) {
+		for (int w = 0; w < mBitSetWords; w++) {
+			bits[w] = -1L;
+		}
+		bits[mBitSetWords - 1] >>>= mBitSetWords * 64 - mCellCount;
+	}
+
+	static boolean getBit(long[] bits, int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private static void setBit(long[] bits, int index, boolean value) {
+		if (value) {
+			bits[index >>> 6] |= 1L << index;
+		} else {
+			bits[index >>> 6] &= ~(1L << index);
+		}
+	}
+
 	/**
 	 * Creates instance from given <code>StringTokenizer</code>.
 	 *
 	 * @param data
 	 * @return
 	 */
-	public static CellCollection deserialize(StringTokenizer data, int version ) {
-		Cell[][] cells = new Cell[SUDOKU_SIZE][SUDOKU_SIZE];
-
-		int r = 0, c = 0;
-		while (data.hasMoreTokens() && r < 9) {
-			cells[r][c] = Cell.deserialize(data, version);
-			c++;
+	public static CellCollection deserialize(StringTokenizer data, int version) {
+		return deserialize(data, version, BoardLayout.CLASSIC);
+	}
 
-			if (c == 9) {
-				r++;
-				c = 0;
+	/**
+	 * Creates instance with given layout from given <code>StringTokenizer</code>.
+	 *
+	 * @param data
+	 * @param version
+	 * @param layout
+	 * @return
+	 */
+	public static CellCollection deserialize(StringTokenizer data, int version, BoardLayout layout) {
+		CellCollection cells = new CellCollection(layout);
+
+		int i = 0;
+		while (data.hasMoreTokens() && i < cells.mCellCount) {
+			cells.initValue(i, Integer.parseInt(data.nextToken()));
+			int corner = CellNote.deserialize(data.nextToken(), version).getNotedNumbersMask();
+			int center = 0;
+			if (version >= DATA_VERSION_4) {
+				center = CellNote.deserialize(data.nextToken(), version).getNotedNumbersMask();
 			}
+			cells.initNotes(i, packNotes(corner, center));
+			setBit(cells.mEditable, i, data.nextToken().equals("1"));
+			i++;
 		}
+		cells.publishSnapshot();
 
-		return new CellCollection(cells);
+		return cells;
 	}
 
 	/**
@@ -344,8 +914,17 @@ public class CellCollection {
 		if (line.startsWith("version:")) {
             String[] kv = line.split(":");
 		    int version = Integer.parseInt(kv[1].trim());
-            StringTokenizer st = new StringTokenizer(lines[1], "|");
-            return deserialize(st, version);
+			BoardLayout layout = BoardLayout.CLASSIC;
+			int dataLine = 1;
+			if (version >= DATA_VERSION_3) {
+				if (lines.length < 2 || !lines[1].startsWith(LAYOUT_PREFIX)) {
+					throw new IllegalArgumentException("Cannot deserialize Sudoku, board layout is missing.");
+				}
+				layout = BoardLayout.fromDescriptor(lines[1].substring(LAYOUT_PREFIX.length()).trim());
+				dataLine = 2;
+			}
+            StringTokenizer st = new StringTokenizer(lines.length > dataLine ? lines[dataLine] : "", "|");
+            return deserialize(st, version, layout);
 		} else {
 			return fromString(data);
 		}
@@ -360,31 +939,132 @@ public class CellCollection {
 	 * @return
 	 */
 	public static CellCollection fromString(String data) {
+		return fromString(BoardLayout.CLASSIC, data);
+	}
+
+	/**
+	 * Creates collection with given layout from given string. Each cell value is represented
+	 * by one character, values above 9 by letters (see {@link BoardLayout#parseValue(char)}),
+	 * other characters are ignored.
+	 *
+	 * @param layout
+	 * @param data
+	 * @return
+	 */
+	public static CellCollection fromString(BoardLayout layout, String data) {
 		// TODO: validate
 
-		Cell[][] cells = new Cell[SUDOKU_SIZE][SUDOKU_SIZE];
+		CellCollection cells = new CellCollection(layout);
+		boolean letters = layout.getSize() > 9;
 
 		int pos = 0;
-		for (int r = 0; r < CellCollection.SUDOKU_SIZE; r++) {
-			for (int c = 0; c < CellCollection.SUDOKU_SIZE; c++) {
-				int value = 0;
-				while (pos < data.length()) {
-					pos++;
-					if (data.charAt(pos - 1) >= '0'
-							&& data.charAt(pos - 1) <= '9') {
-						// value=Integer.parseInt(data.substring(pos-1, pos));
-						value = data.charAt(pos - 1) - '0';
-						break;
-					}
+		for (int i = 0; i < cells.mCellCount; i++) {
+			int value = 0;
+			while (pos < data.length()) {
+				char c = data.charAt(pos++);
+				if (c >= '0' && c <= '9' || letters && BoardLayout.parseValue(c) > 0) {
+					value = BoardLayout.parseValue(c);
+					break;
 				}
-				Cell cell = new Cell();
-				cell.setValue(value);
-				cell.setEditable(value == 0);
-				cells[r][c] = cell;
 			}
+			cells.initValue(i, value);
+			setBit(cells.mEditable, i, value == 0);
+		}
+		cells.publishSnapshot();
+
+		return cells;
+	}
+
+	/**
+	 * Returns immutable copy of the board as it was after the last change. Unlike other
+	 * methods, this one can be called from any thread.
+	 *
+	 * @return
+	 */
+	public BoardSnapshot getSnapshot() {
+		return mSnapshot;
+	}
+
+	/**
+	 * Returns immutable copy of the current state of the board, including changes made
+	 * by the transaction in progress. Snapshot shares data with the collection until
+	 * the next change, so this is O(1).
+	 *
+	 * @return
+	 */
+	public BoardSnapshot createSnapshot() {
+		if (mChangeDepth != 0 || mSnapshot == null) {
+			publishSnapshot();
+		}
+		return mSnapshot;
+	}
+
+	/**
+	 * Creates collection from the given snapshot. No parsing is needed, data are shared
+	 * with the snapshot until first change.
+	 *
+	 * @param snapshot
+	 * @return
+	 */
+	public static CellCollection fromSnapshot(BoardSnapshot snapshot) {
+		CellCollection cells = new CellCollection(snapshot.mLayout);
+		cells.mNotes = snapshot.mNotes;
+		cells.mNotesHash = snapshot.mNotesHash;
+		cells.mEditable = snapshot.mEditable;
+		cells.mValid = snapshot.mValid;
+		cells.mDataShared = true;
+		for (int i = 0; i < cells.mCellCount; i++) {
+			int value = snapshot.mValues[i];
+			if (value != 0) {
+				cells.initValue(i, value);
+			}
+		}
+		// valid flags are taken from the snapshot, let next validate() check them against
+		// the conflicts
+		cells.setAllBits(cells.mValidationDirty);
+		cells.mValues = snapshot.mValues;
+		cells.mSnapshot = snapshot;
+		return cells;
+	}
+
+	/**
+	 * Sets state of all cells to the state stored in the given snapshot. Listeners are
+	 * notified about the cells, which have changed.
+	 *
+	 * @param snapshot
+	 */
+	public void restore(BoardSnapshot snapshot) {
+		if (snapshot.mLayout != mLayout) {
+			throw new IllegalArgumentException("Snapshot has different board layout.");
+		}
+		beginChange();
+		for (int i = 0; i < mCellCount; i++) {
+			setValue(i, snapshot.mValues[i]);
+			setNote(i, CellNote.LAYER_CORNER, CellNote.valueOf(getNoteMask(snapshot.mNotes[i], CellNote.LAYER_CORNER)));
+			setNote(i, CellNote.LAYER_CENTER, CellNote.valueOf(getNoteMask(snapshot.mNotes[i], CellNote.LAYER_CENTER)));
+			setEditable(i, getBit(snapshot.mEditable, i));
+			setValid(i, getBit(snapshot.mValid, i));
 		}
+		endChange();
+	}
+
+	private void publishSnapshot() {
+		mSnapshot = new BoardSnapshot(mLayout, mValues, mNotes, mEditable, mValid, mValuesHash, mNotesHash);
+		mDataShared = true;
+	}
 
-		return new CellCollection(cells);
+	/**
+	 * Must be called before cell's data are modified, so snapshot sharing the data
+	 * is not affected.
+	 */
+	private void copyOnWrite() {
+		if (mDataShared) {
+			mValues = mValues.clone();
+			mNotes = mNotes.clone();
+			mEditable = mEditable.clone();
+			mValid = mValid.clone();
+			mDataShared = false;
+		}
 	}
 
 	public String serialize() {
@@ -400,19 +1080,48 @@ public class CellCollection {
 	 * @return
 	 */
 	public void serialize(StringBuilder data) {
-		data.append("version: 2\n");
+		serialize(data, mLayout, mValues, mNotes, mEditable);
+	}
 
-		for (int r = 0; r < SUDOKU_SIZE; r++) {
-			for (int c = 0; c < SUDOKU_SIZE; c++) {
-				Cell cell = mCells[r][c];
-				cell.serialize(data);
+	/**
+	 * Writes board data in the format of {@link #serialize(StringBuilder)}. Oldest format,
+	 * which can hold the data, is used, so older versions of the application can read them:
+	 * {@link #DATA_VERSION_2} for classic boards, {@link #DATA_VERSION_3} for other ones and
+	 * {@link #DATA_VERSION_4} if there are centre notes.
+	 */
+	static void serialize(StringBuilder data, BoardLayout layout, byte[] values, long[] notes, long[] editable) {
+		boolean centerNotes = false;
+		for (long n : notes) {
+			if (getNoteMask(n, CellNote.LAYER_CENTER) != 0) {
+				centerNotes = true;
+				break;
+			}
+		}
+
+		if (layout == BoardLayout.CLASSIC && !centerNotes) {
+			data.append("version: 2\n");
+		} else {
+			data.append(centerNotes ? "version: 4\n" : "version: 3\n");
+			data.append(LAYOUT_PREFIX).append(" ").append(layout.getDescriptor()).append("\n");
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			if (centerNotes) {
+				Cell.serialize(data, values[i], getNoteMask(notes[i], CellNote.LAYER_CORNER),
+						getNoteMask(notes[i], CellNote.LAYER_CENTER), getBit(editable, i));
+			} else {
+				Cell.serialize(data, values[i], getNoteMask(notes[i], CellNote.LAYER_CORNER), getBit(editable, i));
 			}
 		}
 	}
 
+	// cells are stored as value|note|editable| (value|cornerNote|centreNote|editable| in
+	// version 4); inline (?#...) comments are not used, java.util.regex does not support them
 	private static Pattern DATA_PATTERN_VERSION_PLAIN = Pattern.compile("^\\d{81}$");
-	private static Pattern DATA_PATTERN_VERSION_1 = Pattern.compile("^version: 1\\n((?#value)\\d\\|(?#note)((\\d,)+|-)\\|(?#editable)[01]\\|){0,81}$");
-	private static Pattern DATA_PATTERN_VERSION_2 = Pattern.compile("^version: 2\\n((?#value)\\d\\|(?#note)(\\d){1,3}\\|(?#editable)[01]\\|){0,81}$");
+	private static Pattern DATA_PATTERN_VERSION_1 = Pattern.compile("^version: 1\\n(\\d\\|((\\d,)+|-)\\|[01]\\|){0,81}$");
+	private static Pattern DATA_PATTERN_VERSION_2 = Pattern.compile("^version: 2\\n(\\d\\|(\\d){1,3}\\|[01]\\|){0,81}$");
+	private static Pattern DATA_PATTERN_VERSION_3 = Pattern.compile("^version: 3\\nlayout: [^\\n]+\\n(\\d{1,2}\\|(\\d){1,8}\\|[01]\\|)*$");
+	private static Pattern DATA_PATTERN_VERSION_4 = Pattern.compile("^version: 4\\nlayout: [^\\n]+\\n(\\d{1,2}\\|(\\d){1,8}\\|(\\d){1,8}\\|[01]\\|)*$");
 
 	/**
 	 * Returns true, if given <code>data</code> conform to format of given data version.
@@ -428,6 +1137,10 @@ public class CellCollection {
 			return DATA_PATTERN_VERSION_1.matcher(data).matches();
 		} else if (dataVersion == DATA_VERSION_2) {
 			return DATA_PATTERN_VERSION_2.matcher(data).matches();
+		} else if (dataVersion == DATA_VERSION_3) {
+			return DATA_PATTERN_VERSION_3.matcher(data).matches();
+		} else if (dataVersion == DATA_VERSION_4) {
+			return DATA_PATTERN_VERSION_4.matcher(data).matches();
 		} else {
 			throw new IllegalArgumentException("Unknown version: " + dataVersion);
 		}
@@ -442,7 +1155,9 @@ public class CellCollection {
     public static boolean isValid(String data) {
         return (DATA_PATTERN_VERSION_PLAIN.matcher(data).matches() ||
                 DATA_PATTERN_VERSION_1.matcher(data).matches() ||
-                DATA_PATTERN_VERSION_2.matcher(data).matches()
+                DATA_PATTERN_VERSION_2.matcher(data).matches() ||
+                DATA_PATTERN_VERSION_3.matcher(data).matches() ||
+                DATA_PATTERN_VERSION_4.matcher(data).matches()
                 );
     }
 
@@ -450,57 +1165,82 @@ public class CellCollection {
 		if (listener == null) {
 			throw new IllegalArgumentException("The listener is null.");
 		}
-		synchronized (mChangeListeners) {
-			if (mChangeListeners.contains(listener)) {
-				throw new IllegalStateException("Listener " + listener + "is already registered.");
-			}
-			mChangeListeners.add(listener);
+		if (mChangeListeners.contains(listener)) {
+			throw new IllegalStateException("Listener " + listener + "is already registered.");
 		}
+		mChangeListeners.add(listener);
 	}
 
 	public void removeOnChangeListener(OnChangeListener listener) {
 		if (listener == null) {
 			throw new IllegalArgumentException("The listener is null.");
 		}
-		synchronized (mChangeListeners) {
-			if (!mChangeListeners.contains(listener)) {
-				throw new IllegalStateException("Listener " + listener + " was not registered.");
-			}
-			mChangeListeners.remove(listener);
+		if (!mChangeListeners.contains(listener)) {
+			throw new IllegalStateException("Listener " + listener + " was not registered.");
 		}
+		mChangeListeners.remove(listener);
 	}
 
 	/**
-	 * Returns whether change notification is enabled.
-	 *
-	 * If true, change notifications are distributed to the listeners
-	 * registered by {@link #addOnChangeListener(OnChangeListener)}.
-	 *
-	 * @return
+	 * Starts a transaction. Changes made until matching {@link #endChange()} call are
+	 * collected and distributed to the listeners as a single {@link ChangeSet}. Transactions
+	 * can be nested, listeners are notified when the outermost one ends.
+	 */
+	public void beginChange() {
+		mChangeDepth++;
+	}
+
+	/**
+	 * Ends transaction started by {@link #beginChange()}.
 	 */
-//	public boolean isOnChangeEnabled() {
-//		return mOnChangeEnabled;
-//	}
-//	
-//	/**
-//	 * Enables or disables change notifications, that are distributed to the listeners
-//	 * registered by {@link #addOnChangeListener(OnChangeListener)}.
-//	 * 
-//	 * @param onChangeEnabled
-//	 */
-//	public void setOnChangeEnabled(boolean onChangeEnabled) {
-//		mOnChangeEnabled = onChangeEnabled;
-//	}
+	public void endChange() {
+		if (mChangeDepth == 0) {
+			throw new IllegalStateException("No change is in progress.");
+		}
+		mChangeDepth--;
+		if (mChangeDepth == 0) {
+			onChange();
+		}
+	}
 
 	/**
-	 * Notify all registered listeners that something has changed.
+	 * Records change of given kind in the cell. If no transaction is in progress, listeners
+	 * are notified immediately.
+	 */
+	private void cellChanged(int index, int kind) {
+		if (mChangeKinds[index] == 0) {
+			mChangedCells[mChangedCount++] = index;
+		}
+		mChangeKinds[index] |= kind;
+
+		if (mChangeDepth == 0) {
+			onChange();
+		}
+	}
+
+	/**
+	 * Notify all registered listeners about changes collected so far.
 	 */
 	protected void onChange() {
-		if (mOnChangeEnabled) {
-			synchronized (mChangeListeners) {
-				for (OnChangeListener l : mChangeListeners) {
-					l.onChange();
-				}
+		if (mChangedCount == 0) {
+			return;
+		}
+
+		ChangeSet changes = null;
+		if (!mChangeListeners.isEmpty()) {
+			changes = new ChangeSet(this, mChangedCells, mChangeKinds, mChangedCount);
+		}
+		for (int i = 0; i < mChangedCount; i++) {
+			mChangeKinds[mChangedCells[i]] = 0;
+		}
+		mChangedCount = 0;
+
+		publishSnapshot();
+
+		if (changes != null) {
+			// listeners are allowed to (un)register other listeners
+			for (int i = 0; i < mChangeListeners.size(); i++) {
+				mChangeListeners.get(i).onChange(changes);
 			}
 		}
 	}
@@ -508,7 +1248,76 @@ public class CellCollection {
 	public interface OnChangeListener {
 		/**
 		 * Called when anything in the collection changes (cell's value, note, etc.)
+		 *
+		 * @param changes Cells which have changed.
+		 */
+		void onChange(ChangeSet changes);
+	}
+
+	/**
+	 * Set of cells changed in one transaction together with kinds of their changes.
+	 */
+	public static class ChangeSet {
+		public static final int CHANGE_VALUE = 1;
+		public static final int CHANGE_NOTE = 2;
+		public static final int CHANGE_FLAGS = 4;
+		public static final int CHANGE_VALIDITY = 8;
+
+		private final CellCollection mCellCollection;
+		private final int[] mCells;
+		private final byte[] mKinds;
+		private final int mKindsUnion;
+
+		private ChangeSet(CellCollection cellCollection, int[] changedCells, byte[] changeKinds, int count) {
+			mCellCollection = cellCollection;
+			mCells = new int[count];
+			mKinds = new byte[count];
+			int kindsUnion = 0;
+			for (int i = 0; i < count; i++) {
+				mCells[i] = changedCells[i];
+				mKinds[i] = changeKinds[changedCells[i]];
+				kindsUnion |= mKinds[i];
+			}
+			mKindsUnion = kindsUnion;
+		}
+
+		/**
+		 * Returns number of changed cells.
+		 *
+		 * @return
 		 */
-		void onChange();
+		public int size() {
+			return mCells.length;
+		}
+
+		/**
+		 * Returns i-th changed cell.
+		 *
+		 * @param i
+		 * @return
+		 */
+		public Cell getCell(int i) {
+			return mCellCollection.getCell(mCells[i]);
+		}
+
+		/**
+		 * Returns kinds of changes (combination of CHANGE_* constants) of i-th changed cell.
+		 *
+		 * @param i
+		 * @return
+		 */
+		public int getChangeKinds(int i) {
+			return mKinds[i];
+		}
+
+		/**
+		 * Returns true, if any cell has changed in any of given ways.
+		 *
+		 * @param kinds Combination of CHANGE_* constants.
+		 * @return
+		 */
+		public boolean hasChanges(int kinds) {
+			return (mKindsUnion & kinds) != 0;
+		}
 	}
 }
@@ -20,63 +20,44 @@
 
 package org.moire.opensudoku.game;
 
-import java.util.HashMap;
-import java.util.Map;
-
-
 /**
  * Represents group of cells which must each contain unique number.
  * <p/>
- * Typical examples of instances are sudoku row, column or sector (3x3 group of cells).
+ * Typical examples of instances are sudoku row, column or sector (3x3 group of cells
+ * on classic board).
+ * Group is a view over {@link CellCollection}'s data.
  *
  * @author romario
  */
 public class CellGroup {
-	private Cell[] mCells = new Cell[CellCollection.SUDOKU_SIZE];
-	private int mPos = 0;
+	private final CellCollection mCellCollection;
+	private final int mUnit;
 
-	public void addCell(Cell cell) {
-		mCells[mPos] = cell;
-		mPos++;
+	CellGroup(CellCollection cellCollection, int unit) {
+		mCellCollection = cellCollection;
+		mUnit = unit;
 	}
 
-
 	/**
-	 * Validates numbers in given sudoku group - numbers must be unique. Cells with invalid
-	 * numbers are marked (see {@link Cell#isValid}).
-	 * <p/>
-	 * Method expects that cell's invalid properties has been set to false
-	 * ({@link CellCollection#validate} does this).
+	 * Returns cell at given position within the group.
 	 *
-	 * @return True if validation is successful.
+	 * @param position 0 to {@link #size()} - 1
+	 * @return
 	 */
-	protected boolean validate() {
-		boolean valid = true;
-
-		Map<Integer, Cell> cellsByValue = new HashMap<Integer, Cell>();
-		for (int i = 0; i < mCells.length; i++) {
-			Cell cell = mCells[i];
-			int value = cell.getValue();
-			if (cellsByValue.get(value) != null) {
-				mCells[i].setValid(false);
-				cellsByValue.get(value).setValid(false);
-				valid = false;
-			} else {
-				cellsByValue.put(value, cell);
-				// we cannot set cell as valid here, because same cell can be invalid
-				// as part of another group 
-			}
-		}
+	public Cell getCell(int position) {
+		return mCellCollection.getCell(mCellCollection.getLayout().getUnitCells(mUnit)[position]);
+	}
 
-		return valid;
+	/**
+	 * Returns number of cells in the group.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return mCellCollection.getLayout().getUnitCells(mUnit).length;
 	}
 
 	public boolean contains(int value) {
-		for (int i = 0; i < mCells.length; i++) {
-			if (mCells[i].getValue() == value) {
-				return true;
-			}
-		}
-		return false;
+		return mCellCollection.unitContains(mUnit, value);
 	}
 }
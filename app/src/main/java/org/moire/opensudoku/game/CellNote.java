@@ -37,18 +37,55 @@ import java.util.StringTokenizer;
  */
 public class CellNote {
 
-	private final short mNotedNumbers;
+	/**
+	 * Layer of notes written in the corners of the cell (standard pencil marks).
+	 */
+	public static final int LAYER_CORNER = 0;
+
+	/**
+	 * Layer of notes written in the centre of the cell.
+	 */
+	public static final int LAYER_CENTER = 1;
+
+	private final int mNotedNumbers;
 
 	public static final CellNote EMPTY = new CellNote();
 
+	// Notes are immutable, so instances for all possible combinations of numbers can be shared.
+	// Only notes of classic board are cached, larger boards have too many combinations.
+	private static final CellNote[] NOTES = new CellNote[1 << CellCollection.SUDOKU_SIZE];
+
+	static {
+		NOTES[0] = EMPTY;
+	}
+
 	public CellNote() {
 		mNotedNumbers = 0;
 	}
 
-	private CellNote(short notedNumbers) {
+	private CellNote(int notedNumbers) {
 		mNotedNumbers = notedNumbers;
 	}
 
+	/**
+	 * Returns note instance for given bit mask of noted numbers (number <code>n</code> is
+	 * represented by bit <code>1 << (n - 1)</code>). Instances are shared.
+	 *
+	 * @param notedNumbers
+	 * @return
+	 */
+	public static CellNote valueOf(int notedNumbers) {
+		if (notedNumbers < 0 || notedNumbers >= NOTES.length) {
+			return new CellNote(notedNumbers);
+		}
+		CellNote note = NOTES[notedNumbers];
+		if (note == null) {
+			note = new CellNote(notedNumbers);
+			NOTES[notedNumbers] = note;
+		}
+		return note;
+	}
+
 	/**
 	 * Creates instance from given string (string which has been
 	 * created by {@link #serialize(StringBuilder)} or {@link #serialize()} method).
@@ -80,7 +117,7 @@ public class CellNote {
             }
         }
 
-        return new CellNote((short)noteValue);
+        return valueOf(noteValue);
 	}
 
 
@@ -94,10 +131,10 @@ public class CellNote {
 		int notedNumbers = 0;
 
 		for (Integer n : notedNums) {
-			notedNumbers = (short) (notedNumbers | (1 << (n - 1)));
+			notedNumbers |= 1 << (n - 1);
 		}
 
-		return new CellNote((short)notedNumbers);
+		return valueOf(notedNumbers);
 	}
 
 
@@ -108,7 +145,7 @@ public class CellNote {
 	 * @param data
 	 */
 	public void serialize(StringBuilder data) {
-        data.append((int)mNotedNumbers);
+        data.append(mNotedNumbers);
 		data.append("|");
 	}
 
@@ -127,8 +164,8 @@ public class CellNote {
 
         List<Integer> result = new ArrayList<>();
 	    int c = 1;
-	    for (int i = 0; i < 9; i++) {
-	        if ((mNotedNumbers & (short)c) != 0) {
+	    for (int i = 0; i < BoardLayout.MAX_SIZE; i++) {
+	        if ((mNotedNumbers & c) != 0) {
                 result.add(i + 1);
             }
             c = (c << 1);
@@ -144,10 +181,10 @@ public class CellNote {
 	 * @return New CellNote instance with changes.
 	 */
 	public CellNote toggleNumber(int number) {
-		if (number < 1 || number > 9)
-			throw new IllegalArgumentException("Number must be between 1-9.");
+		if (number < 1 || number > BoardLayout.MAX_SIZE)
+			throw new IllegalArgumentException("Number must be between 1-" + BoardLayout.MAX_SIZE + ".");
 
-		return new CellNote((short) (mNotedNumbers ^ (1 << (number - 1))));
+		return valueOf(mNotedNumbers ^ (1 << (number - 1)));
 	}
 
 	/**
@@ -157,10 +194,10 @@ public class CellNote {
 	 * @return
 	 */
 	public CellNote addNumber(int number) {
-		if (number < 1 || number > 9)
-			throw new IllegalArgumentException("Number must be between 1-9.");
+		if (number < 1 || number > BoardLayout.MAX_SIZE)
+			throw new IllegalArgumentException("Number must be between 1-" + BoardLayout.MAX_SIZE + ".");
 
-		return new CellNote((short) (mNotedNumbers | (1 << (number - 1))));
+		return valueOf(mNotedNumbers | (1 << (number - 1)));
 	}
 
 	/**
@@ -170,14 +207,34 @@ public class CellNote {
 	 * @return
 	 */
 	public CellNote removeNumber(int number) {
-		if (number < 1 || number > 9)
-			throw new IllegalArgumentException("Number must be between 1-9.");
+		if (number < 1 || number > BoardLayout.MAX_SIZE)
+			throw new IllegalArgumentException("Number must be between 1-" + BoardLayout.MAX_SIZE + ".");
 
-		return new CellNote((short) (mNotedNumbers & ~(1 << (number - 1))));
+		return valueOf(mNotedNumbers & ~(1 << (number - 1)));
 	}
 
 	public CellNote clear() {
-		return new CellNote();
+		return EMPTY;
+	}
+
+	/**
+	 * Returns bit mask of noted numbers, number <code>n</code> is represented by bit
+	 * <code>1 << (n - 1)</code>.
+	 *
+	 * @return
+	 */
+	public int getNotedNumbersMask() {
+		return mNotedNumbers;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CellNote && ((CellNote) o).mNotedNumbers == mNotedNumbers;
+	}
+
+	@Override
+	public int hashCode() {
+		return mNotedNumbers;
 	}
 
 	/**
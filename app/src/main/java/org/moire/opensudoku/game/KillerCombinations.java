@@ -0,0 +1,81 @@
+package org.moire.opensudoku.game;
+
+/**
+ * Precomputed combinations of values in killer sudoku cages (board sizes up to 9).
+ * <p/>
+ * For every number of empty cells, sum remaining to be filled in and mask of values already
+ * used in the cage, table holds mask of values, which can be entered into the empty cells.
+ * It is computed once (about 130 KB), so each cage check is a single array lookup.
+ */
+public final class KillerCombinations {
+
+	/**
+	 * Largest board size supported by killer cages.
+	 */
+	public static final int MAX_SIZE = 9;
+
+	private static final int MAX_SUM = MAX_SIZE * (MAX_SIZE + 1) / 2;
+	private static final int MASK_COUNT = 1 << MAX_SIZE;
+
+	// Allowed values indexed by [cells * (MAX_SUM + 1) + sum][usedMask], rows for impossible
+	// combinations of cells and sum are null.
+	private static final short[][] ALLOWED = new short[(MAX_SIZE + 1) * (MAX_SUM + 1)][];
+
+	static {
+		for (int combination = 0; combination < MASK_COUNT; combination++) {
+			int cells = Integer.bitCount(combination);
+			int sum = 0;
+			for (int value = 1; value <= MAX_SIZE; value++) {
+				if ((combination & (1 << (value - 1))) != 0) {
+					sum += value;
+				}
+			}
+
+			short[] row = ALLOWED[cells * (MAX_SUM + 1) + sum];
+			if (row == null) {
+				row = new short[MASK_COUNT];
+				ALLOWED[cells * (MAX_SUM + 1) + sum] = row;
+			}
+			// combination can be used if none of its values is used in the cage already
+			int free = (MASK_COUNT - 1) & ~combination;
+			for (int used = free; ; used = (used - 1) & free) {
+				row[used] |= combination;
+				if (used == 0) {
+					break;
+				}
+			}
+		}
+	}
+
+	private KillerCombinations() {
+	}
+
+	/**
+	 * Returns mask of values, which can be entered into empty cells of the cage.
+	 *
+	 * @param cells     Number of empty cells in the cage.
+	 * @param sum       Sum of values, which have to be entered into empty cells.
+	 * @param usedMask  Mask of values already used in the cage.
+	 * @param allValues Mask of values of the board (see {@link BoardLayout#getAllValuesMask()}),
+	 *                  combinations with larger values are not used on smaller boards.
+	 * @return Mask of allowed values, 0 if the cage cannot be completed.
+	 */
+	public static int getAllowedValues(int cells, int sum, int usedMask, int allValues) {
+		if (cells < 0 || cells > MAX_SIZE || sum < 0 || sum > MAX_SUM) {
+			return 0;
+		}
+		short[] row = ALLOWED[cells * (MAX_SUM + 1) + sum];
+		// values not on the board are excluded the same way as values used already
+		return row == null ? 0 : row[(usedMask | ~allValues) & (MASK_COUNT - 1)];
+	}
+
+	/**
+	 * Returns true, if cage can be completed.
+	 */
+	public static boolean isPossible(int cells, int sum, int usedMask, int allValues) {
+		if (cells == 0) {
+			return sum == 0;
+		}
+		return getAllowedValues(cells, sum, usedMask, allValues) != 0;
+	}
+}
@@ -21,16 +21,21 @@
 package org.moire.opensudoku.game;
 
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 import org.moire.opensudoku.game.command.AbstractSingleCellCommand;
+import org.moire.opensudoku.game.command.ClearAllNoteLayersCommand;
 import org.moire.opensudoku.game.command.ClearAllNotesCommand;
 import org.moire.opensudoku.game.command.AbstractCommand;
 import org.moire.opensudoku.game.command.CommandStack;
 import org.moire.opensudoku.game.command.EditCellNoteCommand;
 import org.moire.opensudoku.game.command.FillInNotesCommand;
+import org.moire.opensudoku.game.command.FillInSinglesCommand;
+import org.moire.opensudoku.game.command.SetCellValueAndRemoveNotesCommand;
 import org.moire.opensudoku.game.command.SetCellValueCommand;
+import org.moire.opensudoku.game.solver.SudokuSolver;
 
 public class SudokuGame {
 
@@ -45,6 +50,12 @@ public class SudokuGame {
 	private long mLastPlayed;
 	private String mNote;
 	private CellCollection mCells;
+	private boolean mRemovePeerNotes;
+	// Solution of the puzzle, searched for only when check against solution is enabled, null
+	// until it is found or if puzzle has no unique solution.
+	private byte[] mSolution;
+	private boolean mSolutionSearched;
+	private boolean mCheckAgainstSolution;
 
 	private OnPuzzleSolvedListener mOnPuzzleSolvedListener;
 	private CommandStack mCommandStack;
@@ -87,6 +98,7 @@ public class SudokuGame {
 		mLastPlayed = inState.getLong("lastPlayed");
 		mCells = CellCollection.deserialize(inState.getString("cells"));
 		mCommandStack = CommandStack.deserialize(inState.getString("command_stack"), mCells);
+		resetSolution();
 
 		validate();
 	}
@@ -152,6 +164,7 @@ public class SudokuGame {
 
 	public void setCells(CellCollection cells) {
 		mCells = cells;
+		resetSolution();
 		validate();
 		mCommandStack = new CommandStack(mCells);
 	}
@@ -160,6 +173,146 @@ public class SudokuGame {
 		return mCells;
 	}
 
+	/**
+	 * Returns hash of current state of the board, see {@link CellCollection#getHash(boolean)}.
+	 *
+	 * @param includeNotes
+	 * @return
+	 */
+	public long getBoardHash(boolean includeNotes) {
+		return mCells.getHash(includeNotes);
+	}
+
+	/**
+	 * If set to true, value entered by {@link #setCellValue(Cell, int)} is removed from
+	 * notes of cell's peers as a part of the same (undoable) command.
+	 *
+	 * @param removePeerNotes
+	 */
+	public void setRemovePeerNotes(boolean removePeerNotes) {
+		mRemovePeerNotes = removePeerNotes;
+	}
+
+	public boolean getRemovePeerNotes() {
+		return mRemovePeerNotes;
+	}
+
+	/**
+	 * If set to true, cells are validated also against the solution of the puzzle, so
+	 * wrong values are marked as invalid even if they don't conflict with other values, and
+	 * empty cells are marked as invalid when their notes exclude solution's value.
+	 * <p/>
+	 * Solution is searched for on a background thread, when the check is enabled for the first
+	 * time, and cells are validated against it once it is found. Method must be called on the
+	 * thread which modifies the game and has a looper (i.e. the main thread).
+	 *
+	 * @param checkAgainstSolution
+	 */
+	public void setCheckAgainstSolution(boolean checkAgainstSolution) {
+		if (mCheckAgainstSolution != checkAgainstSolution) {
+			mCheckAgainstSolution = checkAgainstSolution;
+			if (checkAgainstSolution && !mSolutionSearched) {
+				findSolution();
+			}
+			mCells.setSolution(checkAgainstSolution ? mSolution : null);
+			validate();
+		}
+	}
+
+	public boolean getCheckAgainstSolution() {
+		return mCheckAgainstSolution;
+	}
+
+	/**
+	 * Returns true, if the puzzle has unique solution, which has been found (solution is
+	 * searched for only when check against solution is enabled).
+	 *
+	 * @return
+	 */
+	public boolean hasSolution() {
+		return mSolution != null;
+	}
+
+	/**
+	 * Returns value of the cell in the solution of the puzzle, 0 if solution is not known.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public int getSolutionValue(Cell cell) {
+		return mSolution != null ? mSolution[cell.getIndex()] : 0;
+	}
+
+	/**
+	 * Returns false, if the cell contains value different from the solution. Empty cells and
+	 * cells of puzzles without known solution are always correct.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public boolean isValueCorrect(Cell cell) {
+		int value = cell.getValue();
+		return mSolution == null || value == 0 || value == mSolution[cell.getIndex()];
+	}
+
+	/**
+	 * Returns false, if notes of the empty cell (in any layer) exclude solution's value.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public boolean isNoteCorrect(Cell cell) {
+		int index = cell.getIndex();
+		return mSolution == null || cell.getValue() != 0
+				|| CellCollection.agreesWithSolution(0, CellCollection.packNotes(
+				mCells.getNoteMask(index, CellNote.LAYER_CORNER),
+				mCells.getNoteMask(index, CellNote.LAYER_CENTER)), mSolution[index]);
+	}
+
+	/**
+	 * Forgets solution of the previous cells, solution of the new ones is searched for
+	 * right away only if it is needed.
+	 */
+	private void resetSolution() {
+		mSolution = null;
+		mSolutionSearched = false;
+		if (mCheckAgainstSolution) {
+			findSolution();
+		}
+	}
+
+	private void findSolution() {
+		mSolutionSearched = true;
+		final CellCollection cells = mCells;
+		final BoardLayout layout = cells.getLayout();
+		final byte[] givens = SudokuSolver.getGivens(cells);
+		final Handler handler = new Handler();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final byte[] solution = SudokuSolver.findUniqueSolution(layout, givens);
+				if (solution == null) {
+					return;
+				}
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						// cells could have been replaced in the meantime
+						if (mCells == cells) {
+							mSolution = solution;
+							if (mCheckAgainstSolution) {
+								mCells.setSolution(solution);
+								validate();
+							}
+						}
+					}
+				});
+			}
+		}, "SolutionSearch");
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
 	public void setId(long id) {
 		mId = id;
 	}
@@ -186,14 +339,22 @@ public class SudokuGame {
 		if (cell == null) {
 			throw new IllegalArgumentException("Cell cannot be null.");
 		}
-		if (value < 0 || value > 9) {
-			throw new IllegalArgumentException("Value must be between 0-9.");
+		if (value < 0 || value > mCells.getSize()) {
+			throw new IllegalArgumentException("Value must be between 0-" + mCells.getSize() + ".");
 		}
 
 		if (cell.isEditable()) {
-			executeCommand(new SetCellValueCommand(cell, value));
+			// command and validation are reported to the listeners as one change
+			mCells.beginChange();
+			try {
+				executeCommand(mRemovePeerNotes && value != 0
+						? new SetCellValueAndRemoveNotesCommand(cell, value)
+						: new SetCellValueCommand(cell, value));
+				validate();
+			} finally {
+				mCells.endChange();
+			}
 
-			validate();
 			if (isCompleted()) {
 				finish();
 				if (mOnPuzzleSolvedListener != null) {
@@ -204,12 +365,23 @@ public class SudokuGame {
 	}
 
 	/**
-	 * Sets note attached to the given cell.
+	 * Sets note attached to the given cell (its corner layer).
 	 *
 	 * @param cell
 	 * @param note
 	 */
 	public void setCellNote(Cell cell, CellNote note) {
+		setCellNote(cell, CellNote.LAYER_CORNER, note);
+	}
+
+	/**
+	 * Sets note in given layer of the given cell.
+	 *
+	 * @param cell
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @param note
+	 */
+	public void setCellNote(Cell cell, int layer, CellNote note) {
 		if (cell == null) {
 			throw new IllegalArgumentException("Cell cannot be null.");
 		}
@@ -218,7 +390,7 @@ public class SudokuGame {
 		}
 
 		if (cell.isEditable()) {
-			executeCommand(new EditCellNoteCommand(cell, note));
+			executeCommand(EditCellNoteCommand.create(cell, layer, note));
 		}
 	}
 
@@ -297,25 +469,28 @@ public class SudokuGame {
 	 * Resets game.
 	 */
 	public void reset() {
-		for (int r = 0; r < CellCollection.SUDOKU_SIZE; r++) {
-			for (int c = 0; c < CellCollection.SUDOKU_SIZE; c++) {
-				Cell cell = mCells.getCell(r, c);
+		mCells.beginChange();
+		try {
+			for (int i = 0; i < mCells.getCellCount(); i++) {
+				Cell cell = mCells.getCell(i);
 				if (cell.isEditable()) {
 					cell.setValue(0);
-					cell.setNote(new CellNote());
+					cell.setNote(CellNote.LAYER_CORNER, CellNote.EMPTY);
+					cell.setNote(CellNote.LAYER_CENTER, CellNote.EMPTY);
 				}
 			}
+			mCommandStack = new CommandStack(mCells);
+			validate();
+		} finally {
+			mCells.endChange();
 		}
-		mCommandStack = new CommandStack(mCells);
-		validate();
 		setTime(0);
 		setLastPlayed(0);
 		mState = GAME_STATE_NOT_STARTED;
 	}
 
 	/**
-	 * Returns true, if puzzle is solved. In order to know the current state, you have to
-	 * call validate first.
+	 * Returns true, if puzzle is solved.
 	 *
 	 * @return
 	 */
@@ -324,14 +499,65 @@ public class SudokuGame {
 	}
 
 	public void clearAllNotes() {
-		executeCommand(new ClearAllNotesCommand());
+		clearAllNotes(CellNote.LAYER_CORNER);
+	}
+
+	/**
+	 * Clears notes in given layer of all cells.
+	 *
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 */
+	public void clearAllNotes(int layer) {
+		executeCommand(ClearAllNotesCommand.create(layer));
+	}
+
+	/**
+	 * Clears notes in both layers of all cells, as a single command.
+	 */
+	public void clearAllNoteLayers() {
+		executeCommand(new ClearAllNoteLayersCommand());
 	}
 
 	/**
 	 * Fills in possible values which can be entered in each cell.
 	 */
 	public void fillInNotes() {
-		executeCommand(new FillInNotesCommand());
+		fillInNotes(CellNote.LAYER_CORNER);
+	}
+
+	/**
+	 * Fills in possible values which can be entered in each cell into given layer of notes.
+	 *
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 */
+	public void fillInNotes(int layer) {
+		executeCommand(FillInNotesCommand.create(layer));
+	}
+
+	/**
+	 * Fills in all cells, which have only one possible value, until there are no such
+	 * cells. This is one step for undo.
+	 *
+	 * @return Number of filled cells.
+	 */
+	public int fillInSingles() {
+		FillInSinglesCommand command = new FillInSinglesCommand();
+		// command and validation are reported to the listeners as one change
+		mCells.beginChange();
+		try {
+			executeCommand(command);
+			validate();
+		} finally {
+			mCells.endChange();
+		}
+
+		if (isCompleted()) {
+			finish();
+			if (mOnPuzzleSolvedListener != null) {
+				mOnPuzzleSolvedListener.onPuzzleSolved();
+			}
+		}
+		return command.getFilledCount();
 	}
 
 	public void validate() {
@@ -0,0 +1,56 @@
+package org.moire.opensudoku.game;
+
+/**
+ * Keys of Zobrist hash of the board. Hash is XOR of keys of all (cell, value) pairs present
+ * on the board (and optionally (cell, noted number) pairs), so it can be updated in O(1)
+ * when a single cell changes.
+ * <p/>
+ * Keys are not stored in a table, each one is derived from cell index and value by
+ * SplitMix64 mixing function. They are the same on every run of the application, so hashes
+ * can be stored (for example in the database) and compared later.
+ */
+final class ZobristHash {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	// Noted numbers (64 bits of packed notes) use keys different from values.
+	private static final int NOTE_OFFSET = 32;
+
+	private ZobristHash() {
+	}
+
+	/**
+	 * Returns initial hash of the empty board with given layout, so equal boards with
+	 * different layouts have different hashes.
+	 */
+	static long layoutKey(BoardLayout layout) {
+		return mix(layout.getDescriptor().hashCode() * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Returns key of the value in given cell, 0 for empty cell.
+	 */
+	static long valueKey(int index, int value) {
+		return value == 0 ? 0 : mix((index * 128L + value) * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Returns combined key of all numbers in the notes of the cell (both layers packed as
+	 * in {@link CellCollection#packNotes(int, int)}).
+	 */
+	static long notesKey(int index, long notes) {
+		long key = 0;
+		while (notes != 0) {
+			int bit = Long.numberOfTrailingZeros(notes);
+			key ^= mix((index * 128L + NOTE_OFFSET + bit) * GOLDEN_GAMMA);
+			notes &= notes - 1;
+		}
+		return key;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
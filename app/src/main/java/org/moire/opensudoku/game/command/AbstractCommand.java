@@ -67,7 +67,19 @@ public abstract class AbstractCommand {
             new CommandDef(SetCellValueCommand.class.getSimpleName(),"c4",
                     new CommandCreatorFunction() { public AbstractCommand create() {return new SetCellValueCommand();} }),
             new CommandDef(CheckpointCommand.class.getSimpleName(),"c5",
-                    new CommandCreatorFunction() { public AbstractCommand create() {return new CheckpointCommand();} })
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new CheckpointCommand();} }),
+            new CommandDef(SetCellValueAndRemoveNotesCommand.class.getSimpleName(),"c6",
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new SetCellValueAndRemoveNotesCommand();} }),
+            new CommandDef(FillInSinglesCommand.class.getSimpleName(),"c7",
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new FillInSinglesCommand();} }),
+            new CommandDef(EditCellCenterNoteCommand.class.getSimpleName(),"c8",
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new EditCellCenterNoteCommand();} }),
+            new CommandDef(FillInCenterNotesCommand.class.getSimpleName(),"c9",
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new FillInCenterNotesCommand();} }),
+            new CommandDef(ClearAllCenterNotesCommand.class.getSimpleName(),"c10",
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new ClearAllCenterNotesCommand();} }),
+            new CommandDef(ClearAllNoteLayersCommand.class.getSimpleName(),"c11",
+                    new CommandCreatorFunction() { public AbstractCommand create() {return new ClearAllNoteLayersCommand();} })
     };
 
 	public static AbstractCommand deserialize(StringTokenizer data) {
@@ -1,14 +1,28 @@
 package org.moire.opensudoku.game.command;
 
+import org.moire.opensudoku.game.BoardSnapshot;
+
 /**
  * Created by spimanov on 29.10.17.
  */
 
 public class CheckpointCommand extends AbstractCommand {
 
+    // State of the board when checkpoint has been set, not serialized (after restore,
+    // commands are undone one by one).
+    private BoardSnapshot mSnapshot;
+
     public CheckpointCommand() {
     }
 
+    CheckpointCommand(BoardSnapshot snapshot) {
+        mSnapshot = snapshot;
+    }
+
+    BoardSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
     @Override
     void execute() {
     }
@@ -0,0 +1,14 @@
+package org.moire.opensudoku.game.command;
+
+import org.moire.opensudoku.game.CellNote;
+
+/**
+ * Clears all notes in the centre layer.
+ */
+public class ClearAllCenterNotesCommand extends ClearAllNotesCommand {
+
+	public ClearAllCenterNotesCommand() {
+		super(CellNote.LAYER_CENTER);
+	}
+
+}
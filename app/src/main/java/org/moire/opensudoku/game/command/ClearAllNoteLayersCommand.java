@@ -0,0 +1,88 @@
+package org.moire.opensudoku.game.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import org.moire.opensudoku.game.Cell;
+import org.moire.opensudoku.game.CellCollection;
+import org.moire.opensudoku.game.CellNote;
+
+/**
+ * Clears notes in both layers of all cells, so that they can be restored by single undo.
+ */
+public class ClearAllNoteLayersCommand extends AbstractCellCommand {
+
+	private List<NoteEntry> mOldNotes = new ArrayList<NoteEntry>();
+
+	@Override
+	public void serialize(StringBuilder data) {
+		super.serialize(data);
+
+		data.append(mOldNotes.size()).append("|");
+
+		for (NoteEntry ne : mOldNotes) {
+			data.append(ne.rowIndex).append("|");
+			data.append(ne.colIndex).append("|");
+			ne.cornerNote.serialize(data);
+			ne.centerNote.serialize(data);
+		}
+	}
+
+	@Override
+	protected void _deserialize(StringTokenizer data) {
+		super._deserialize(data);
+
+		int notesSize = Integer.parseInt(data.nextToken());
+		for (int i = 0; i < notesSize; i++) {
+			int row = Integer.parseInt(data.nextToken());
+			int col = Integer.parseInt(data.nextToken());
+			CellNote cornerNote = CellNote.deserialize(data.nextToken());
+			CellNote centerNote = CellNote.deserialize(data.nextToken());
+
+			mOldNotes.add(new NoteEntry(row, col, cornerNote, centerNote));
+		}
+	}
+
+	@Override
+	void execute() {
+		CellCollection cells = getCells();
+
+		mOldNotes.clear();
+		for (int i = 0; i < cells.getCellCount(); i++) {
+			Cell cell = cells.getCell(i);
+			CellNote cornerNote = cell.getNote(CellNote.LAYER_CORNER);
+			CellNote centerNote = cell.getNote(CellNote.LAYER_CENTER);
+			if (!cornerNote.isEmpty() || !centerNote.isEmpty()) {
+				mOldNotes.add(new NoteEntry(cell.getRowIndex(), cell.getColumnIndex(), cornerNote, centerNote));
+				cell.setNote(CellNote.LAYER_CORNER, CellNote.EMPTY);
+				cell.setNote(CellNote.LAYER_CENTER, CellNote.EMPTY);
+			}
+		}
+	}
+
+	@Override
+	void undo() {
+		CellCollection cells = getCells();
+
+		for (NoteEntry ne : mOldNotes) {
+			Cell cell = cells.getCell(ne.rowIndex, ne.colIndex);
+			cell.setNote(CellNote.LAYER_CORNER, ne.cornerNote);
+			cell.setNote(CellNote.LAYER_CENTER, ne.centerNote);
+		}
+	}
+
+	private static class NoteEntry {
+		public int rowIndex;
+		public int colIndex;
+		public CellNote cornerNote;
+		public CellNote centerNote;
+
+		public NoteEntry(int rowIndex, int colIndex, CellNote cornerNote, CellNote centerNote) {
+			this.rowIndex = rowIndex;
+			this.colIndex = colIndex;
+			this.cornerNote = cornerNote;
+			this.centerNote = centerNote;
+		}
+	}
+
+}
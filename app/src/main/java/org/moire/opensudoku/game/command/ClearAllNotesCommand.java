@@ -29,10 +29,26 @@ import org.moire.opensudoku.game.CellNote;
 
 public class ClearAllNotesCommand extends AbstractCellCommand {
 
+	private final int mLayer;
 	private List<NoteEntry> mOldNotes = new ArrayList<NoteEntry>();
 
 
 	public ClearAllNotesCommand() {
+		this(CellNote.LAYER_CORNER);
+	}
+
+	ClearAllNotesCommand(int layer) {
+		mLayer = layer;
+	}
+
+	/**
+	 * Creates command clearing all notes in given layer.
+	 *
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @return
+	 */
+	public static ClearAllNotesCommand create(int layer) {
+		return layer == CellNote.LAYER_CENTER ? new ClearAllCenterNotesCommand() : new ClearAllNotesCommand();
 	}
 
 
@@ -67,14 +83,12 @@ public class ClearAllNotesCommand extends AbstractCellCommand {
 		CellCollection cells = getCells();
 
 		mOldNotes.clear();
-		for (int r = 0; r < CellCollection.SUDOKU_SIZE; r++) {
-			for (int c = 0; c < CellCollection.SUDOKU_SIZE; c++) {
-				Cell cell = cells.getCell(r, c);
-				CellNote note = cell.getNote();
-				if (!note.isEmpty()) {
-					mOldNotes.add(new NoteEntry(r, c, note));
-					cell.setNote(new CellNote());
-				}
+		for (int i = 0; i < cells.getCellCount(); i++) {
+			Cell cell = cells.getCell(i);
+			CellNote note = cell.getNote(mLayer);
+			if (!note.isEmpty()) {
+				mOldNotes.add(new NoteEntry(cell.getRowIndex(), cell.getColumnIndex(), note));
+				cell.setNote(mLayer, CellNote.EMPTY);
 			}
 		}
 	}
@@ -84,7 +98,7 @@ public class ClearAllNotesCommand extends AbstractCellCommand {
 		CellCollection cells = getCells();
 
 		for (NoteEntry ne : mOldNotes) {
-			cells.getCell(ne.rowIndex, ne.colIndex).setNote(ne.note);
+			cells.getCell(ne.rowIndex, ne.colIndex).setNote(mLayer, ne.note);
 		}
 
 	}
@@ -3,13 +3,14 @@ package org.moire.opensudoku.game.command;
 import java.util.ListIterator;
 import java.util.Stack;
 import java.util.StringTokenizer;
+import org.moire.opensudoku.game.BoardSnapshot;
 import org.moire.opensudoku.game.CellCollection;
 
 public class CommandStack {
 	private Stack<AbstractCommand> mCommandStack = new Stack<AbstractCommand>();
 
-	// TODO: I need cells collection, because I have to call validate on it after some
-	//	commands. CellCollection should be able to validate itself on change.
+	// I need cells collection, because I have to call validate on it after some commands
+	// (conflicts are tracked by collection itself, validate just refreshes valid flags).
 	private CellCollection mCells;
 
 	public CommandStack(CellCollection cells) {
@@ -51,15 +52,27 @@ public class CommandStack {
 	}
 
 	public void execute(AbstractCommand command) {
-		push(command);
-		command.execute();
+		mCells.beginChange();
+		try {
+			push(command);
+			command.execute();
+			// only cells affected by the command are validated
+			validateCells();
+		} finally {
+			mCells.endChange();
+		}
 	}
 
 	public void undo() {
 		if (!mCommandStack.empty()) {
-			AbstractCommand c = pop();
-			c.undo();
-			validateCells();
+			mCells.beginChange();
+			try {
+				AbstractCommand c = pop();
+				c.undo();
+				validateCells();
+			} finally {
+				mCells.endChange();
+			}
 		}
 	}
 
@@ -69,7 +82,7 @@ public class CommandStack {
 			if (c instanceof CheckpointCommand)
 				return;
 		}
-		push(new CheckpointCommand());
+		push(new CheckpointCommand(mCells.createSnapshot()));
 	}
 
 	public boolean hasCheckpoint() {
@@ -85,15 +98,36 @@ public class CommandStack {
 		 * I originally planned to just call undo but this way it doesn't need to 
 		 * validateCells() until the run is complete
 		 */
-		AbstractCommand c;
-		while (!mCommandStack.empty()) {
-			c = mCommandStack.pop();
-			c.undo();
+		// if we still have board's state from the time checkpoint has been set, we can
+		// restore it at once and just drop commands above the checkpoint
+		BoardSnapshot snapshot = null;
+		for (int i = mCommandStack.size() - 1; i >= 0; i--) {
+			AbstractCommand command = mCommandStack.get(i);
+			if (command instanceof CheckpointCommand) {
+				snapshot = ((CheckpointCommand) command).getSnapshot();
+				break;
+			}
+		}
 
-			if (c instanceof CheckpointCommand)
-			    break;
+		AbstractCommand c;
+		mCells.beginChange();
+		try {
+			while (!mCommandStack.empty()) {
+				c = mCommandStack.pop();
+				if (snapshot == null) {
+					c.undo();
+				}
+
+				if (c instanceof CheckpointCommand)
+					break;
+			}
+			if (snapshot != null) {
+				mCells.restore(snapshot);
+			}
+			validateCells();
+		} finally {
+			mCells.endChange();
 		}
-		validateCells();
 	}
 
 
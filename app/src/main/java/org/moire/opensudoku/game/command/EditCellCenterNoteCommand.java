@@ -0,0 +1,20 @@
+package org.moire.opensudoku.game.command;
+
+import org.moire.opensudoku.game.Cell;
+import org.moire.opensudoku.game.CellNote;
+
+/**
+ * Edits note in the centre layer of the cell. Separate class, so the layer is given
+ * by command's name when command stack is serialized.
+ */
+public class EditCellCenterNoteCommand extends EditCellNoteCommand {
+
+	public EditCellCenterNoteCommand(Cell cell, CellNote note) {
+		super(cell, CellNote.LAYER_CENTER, note);
+	}
+
+	EditCellCenterNoteCommand() {
+		super(CellNote.LAYER_CENTER);
+	}
+
+}
@@ -26,16 +26,40 @@ import java.util.StringTokenizer;
 
 public class EditCellNoteCommand extends AbstractSingleCellCommand {
 
+	private final int mLayer;
 	private CellNote mNote;
 	private CellNote mOldNote;
 
 	public EditCellNoteCommand(Cell cell, CellNote note) {
+		this(cell, CellNote.LAYER_CORNER, note);
+	}
+
+	EditCellNoteCommand(Cell cell, int layer, CellNote note) {
 		super(cell);
+		mLayer = layer;
 		mNote = note;
 	}
 
 	EditCellNoteCommand() {
+		this(CellNote.LAYER_CORNER);
+	}
+
+	EditCellNoteCommand(int layer) {
+		mLayer = layer;
+	}
 
+	/**
+	 * Creates command editing note in given layer of the cell.
+	 *
+	 * @param cell
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @param note
+	 * @return
+	 */
+	public static EditCellNoteCommand create(Cell cell, int layer, CellNote note) {
+		return layer == CellNote.LAYER_CENTER
+				? new EditCellCenterNoteCommand(cell, note)
+				: new EditCellNoteCommand(cell, note);
 	}
 
 	@Override
@@ -57,14 +81,14 @@ public class EditCellNoteCommand extends AbstractSingleCellCommand {
 	@Override
 	void execute() {
 		Cell cell = getCell();
-		mOldNote = cell.getNote();
-		cell.setNote(mNote);
+		mOldNote = cell.getNote(mLayer);
+		cell.setNote(mLayer, mNote);
 	}
 
 	@Override
 	void undo() {
 		Cell cell = getCell();
-		cell.setNote(mOldNote);
+		cell.setNote(mLayer, mOldNote);
 	}
 
 }
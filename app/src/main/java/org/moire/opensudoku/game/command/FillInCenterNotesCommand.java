@@ -0,0 +1,14 @@
+package org.moire.opensudoku.game.command;
+
+import org.moire.opensudoku.game.CellNote;
+
+/**
+ * Fills in candidates into the centre layer of notes.
+ */
+public class FillInCenterNotesCommand extends FillInNotesCommand {
+
+	public FillInCenterNotesCommand() {
+		super(CellNote.LAYER_CENTER);
+	}
+
+}
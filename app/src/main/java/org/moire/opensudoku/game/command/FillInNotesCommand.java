@@ -5,14 +5,29 @@ import java.util.List;
 import java.util.StringTokenizer;
 import org.moire.opensudoku.game.Cell;
 import org.moire.opensudoku.game.CellCollection;
-import org.moire.opensudoku.game.CellGroup;
 import org.moire.opensudoku.game.CellNote;
 
 public class FillInNotesCommand extends AbstractCellCommand {
 
+	private final int mLayer;
 	private List<NoteEntry> mOldNotes = new ArrayList<NoteEntry>();
 
 	public FillInNotesCommand() {
+		this(CellNote.LAYER_CORNER);
+	}
+
+	FillInNotesCommand(int layer) {
+		mLayer = layer;
+	}
+
+	/**
+	 * Creates command filling in notes in given layer.
+	 *
+	 * @param layer {@link CellNote#LAYER_CORNER} or {@link CellNote#LAYER_CENTER}.
+	 * @return
+	 */
+	public static FillInNotesCommand create(int layer) {
+		return layer == CellNote.LAYER_CENTER ? new FillInCenterNotesCommand() : new FillInNotesCommand();
 	}
 
 	@Override
@@ -46,30 +61,29 @@ public class FillInNotesCommand extends AbstractCellCommand {
 		CellCollection cells = getCells();
 
 		mOldNotes.clear();
-		for (int r = 0; r < CellCollection.SUDOKU_SIZE; r++) {
-			for (int c = 0; c < CellCollection.SUDOKU_SIZE; c++) {
-				Cell cell = cells.getCell(r, c);
-				mOldNotes.add(new NoteEntry(r, c, cell.getNote()));
-				cell.setNote(new CellNote());
-
-				CellGroup row = cell.getRow();
-				CellGroup column = cell.getColumn();
-				CellGroup sector = cell.getSector();
-				for (int i = 1; i <= CellCollection.SUDOKU_SIZE; i++) {
-					if (!row.contains(i) && !column.contains(i) && !sector.contains(i)) {
-						cell.setNote(cell.getNote().addNumber(i));
-					}
-				}
+		for (int i = 0; i < cells.getCellCount(); i++) {
+			Cell cell = cells.getCell(i);
+			// candidates are maintained by collection, just copy them
+			CellNote note = cell.getCandidates();
+			if (cell.getValue() != 0) {
+				note = note.removeNumber(cell.getValue());
+			}
+
+			CellNote oldNote = cell.getNote(mLayer);
+			if (!oldNote.equals(note)) {
+				mOldNotes.add(new NoteEntry(cell.getRowIndex(), cell.getColumnIndex(), oldNote));
+				cell.setNote(mLayer, note);
 			}
 		}
 	}
 
+
 	@Override
 	void undo() {
 		CellCollection cells = getCells();
 
 		for (NoteEntry ne : mOldNotes) {
-			cells.getCell(ne.rowIndex, ne.colIndex).setNote(ne.note);
+			cells.getCell(ne.rowIndex, ne.colIndex).setNote(mLayer, ne.note);
 		}
 	}
 
@@ -0,0 +1,119 @@
+package org.moire.opensudoku.game.command;
+
+import java.util.StringTokenizer;
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.Cell;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Fills in all naked singles (empty editable cells with exactly one candidate), repeatedly,
+ * until there are none left.
+ * <p/>
+ * Board is scanned only once. After that, only peers of filled cells are checked again,
+ * since they are the only cells whose candidates could have changed.
+ */
+public class FillInSinglesCommand extends AbstractCellCommand {
+
+	// Filled cells (row, column and value of each), in order in which they were filled.
+	private int[] mFilled = new int[0];
+	private int mFilledCount;
+
+	public FillInSinglesCommand() {
+	}
+
+	/**
+	 * Returns number of cells filled in by this command.
+	 *
+	 * @return
+	 */
+	public int getFilledCount() {
+		return mFilledCount;
+	}
+
+	@Override
+	public void serialize(StringBuilder data) {
+		super.serialize(data);
+
+		data.append(mFilledCount).append("|");
+		for (int i = 0; i < mFilledCount * 3; i++) {
+			data.append(mFilled[i]).append("|");
+		}
+	}
+
+	@Override
+	protected void _deserialize(StringTokenizer data) {
+		super._deserialize(data);
+
+		mFilledCount = Integer.parseInt(data.nextToken());
+		mFilled = new int[mFilledCount * 3];
+		for (int i = 0; i < mFilled.length; i++) {
+			mFilled[i] = Integer.parseInt(data.nextToken());
+		}
+	}
+
+	@Override
+	void execute() {
+		CellCollection cells = getCells();
+		BoardLayout layout = cells.getLayout();
+		int cellCount = cells.getCellCount();
+
+		// each cell is queued at most once at a time, so queue of cellCount items is enough
+		int[] queue = new int[cellCount];
+		boolean[] queued = new boolean[cellCount];
+		int head = 0;
+		int size = 0;
+		for (int i = 0; i < cellCount; i++) {
+			if (isFillable(cells, i)) {
+				queue[size++] = i;
+				queued[i] = true;
+			}
+		}
+
+		int[] filled = new int[size * 3];
+		mFilledCount = 0;
+		while (size > 0) {
+			int index = queue[head];
+			head = (head + 1) % cellCount;
+			size--;
+			queued[index] = false;
+
+			int candidates = cells.getCandidatesMask(index);
+			if (!isFillable(cells, index) || Integer.bitCount(candidates) != 1) {
+				continue;
+			}
+
+			int value = Integer.numberOfTrailingZeros(candidates) + 1;
+			Cell cell = cells.getCell(index);
+			cell.setValue(value);
+			filled[mFilledCount * 3] = cell.getRowIndex();
+			filled[mFilledCount * 3 + 1] = cell.getColumnIndex();
+			filled[mFilledCount * 3 + 2] = value;
+			mFilledCount++;
+
+			for (int i = 0; i < layout.getPeerCount(index); i++) {
+				int peer = layout.getPeer(index, i);
+				if (!queued[peer] && isFillable(cells, peer)) {
+					queue[(head + size) % cellCount] = peer;
+					size++;
+					queued[peer] = true;
+				}
+			}
+		}
+		mFilled = filled;
+	}
+
+	@Override
+	void undo() {
+		CellCollection cells = getCells();
+
+		for (int i = mFilledCount - 1; i >= 0; i--) {
+			cells.getCell(mFilled[i * 3], mFilled[i * 3 + 1]).setValue(0);
+		}
+	}
+
+	private static boolean isFillable(CellCollection cells, int index) {
+		Cell cell = cells.getCell(index);
+		return cell.getValue() == 0 && cell.isEditable();
+	}
+
+}
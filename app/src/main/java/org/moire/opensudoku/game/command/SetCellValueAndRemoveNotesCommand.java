@@ -0,0 +1,104 @@
+package org.moire.opensudoku.game.command;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.Cell;
+import org.moire.opensudoku.game.CellCollection;
+import org.moire.opensudoku.game.CellNote;
+import java.util.StringTokenizer;
+
+/**
+ * Sets value of the cell and removes the value from notes (both layers) of cell's peers
+ * (cells in the same row, column, sector...).
+ * <p/>
+ * Only the peers, whose notes have changed, are remembered for undo, as a bit set of their
+ * positions in the peer list of the cell (see {@link BoardLayout#getPeer(int, int)}) for each
+ * layer. This fits into a single long per layer on all common boards.
+ */
+public class SetCellValueAndRemoveNotesCommand extends SetCellValueCommand {
+
+	private static final int[] LAYERS = {CellNote.LAYER_CORNER, CellNote.LAYER_CENTER};
+
+	// Bit sets of changed peers of each layer, one after another.
+	private long[] mChangedPeers;
+
+	public SetCellValueAndRemoveNotesCommand(Cell cell, int value) {
+		super(cell, value);
+	}
+
+	SetCellValueAndRemoveNotesCommand() {
+
+	}
+
+	@Override
+	public void serialize(StringBuilder data) {
+		super.serialize(data);
+
+		data.append(mChangedPeers.length).append("|");
+		for (long word : mChangedPeers) {
+			data.append(word).append("|");
+		}
+	}
+
+	@Override
+	protected void _deserialize(StringTokenizer data) {
+		super._deserialize(data);
+
+		mChangedPeers = new long[Integer.parseInt(data.nextToken())];
+		for (int i = 0; i < mChangedPeers.length; i++) {
+			mChangedPeers[i] = Long.parseLong(data.nextToken());
+		}
+	}
+
+	@Override
+	void execute() {
+		super.execute();
+
+		Cell cell = getCell();
+		CellCollection cells = getCells();
+		BoardLayout layout = cells.getLayout();
+		int index = cell.getIndex();
+		int value = getValue();
+		int bit = 1 << (value - 1);
+		int peerCount = layout.getPeerCount(index);
+		int words = (peerCount + 63) >>> 6;
+
+		mChangedPeers = new long[LAYERS.length * words];
+		if (value == 0) {
+			return;
+		}
+		for (int l = 0; l < LAYERS.length; l++) {
+			int layer = LAYERS[l];
+			for (int i = 0; i < peerCount; i++) {
+				int peer = layout.getPeer(index, i);
+				if ((cells.getNoteMask(peer, layer) & bit) != 0) {
+					Cell peerCell = cells.getCell(peer);
+					peerCell.setNote(layer, peerCell.getNote(layer).removeNumber(value));
+					mChangedPeers[l * words + (i >>> 6)] |= 1L << i;
+				}
+			}
+		}
+	}
+
+	@Override
+	void undo() {
+		CellCollection cells = getCells();
+		BoardLayout layout = cells.getLayout();
+		int index = getCell().getIndex();
+		int value = getValue();
+		int words = mChangedPeers.length / LAYERS.length;
+
+		for (int w = 0; w < mChangedPeers.length; w++) {
+			int layer = LAYERS[w / words];
+			long word = mChangedPeers[w];
+			while (word != 0) {
+				int i = ((w % words) << 6) + Long.numberOfTrailingZeros(word);
+				Cell peer = cells.getCell(layout.getPeer(index, i));
+				peer.setNote(layer, peer.getNote(layer).addNumber(value));
+				word &= word - 1;
+			}
+		}
+
+		super.undo();
+	}
+
+}
@@ -53,6 +53,10 @@ public class SetCellValueCommand extends AbstractSingleCellCommand {
 		mOldValue = Integer.parseInt(data.nextToken());
 	}
 
+	int getValue() {
+		return mValue;
+	}
+
 	@Override
 	void execute() {
 		Cell cell = getCell();
@@ -0,0 +1,119 @@
+package org.moire.opensudoku.game.solver;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Reads puzzles given to {@link SolverEngine} into an array of values, which is then solved
+ * by the subclass.
+ */
+abstract class AbstractSolverEngine implements SolverEngine {
+
+	private final BoardLayout mLayout;
+	private final byte[] mValues;
+	private int mNodeLimit = DEFAULT_NODE_LIMIT;
+
+	AbstractSolverEngine(BoardLayout layout) {
+		mLayout = layout;
+		mValues = new byte[layout.getCellCount()];
+	}
+
+	@Override
+	public BoardLayout getLayout() {
+		return mLayout;
+	}
+
+	@Override
+	public void setNodeLimit(int nodeLimit) {
+		mNodeLimit = nodeLimit;
+	}
+
+	@Override
+	public int getNodeLimit() {
+		return mNodeLimit;
+	}
+
+	@Override
+	public SolverResult solve(CellCollection cells) {
+		long startTime = System.nanoTime();
+		readValues(cells);
+		return solve(mValues, startTime);
+	}
+
+	@Override
+	public SolverResult solve(String puzzle) {
+		long startTime = System.nanoTime();
+		readValues(puzzle);
+		return solve(mValues, startTime);
+	}
+
+	@Override
+	public int countSolutions(CellCollection cells, int limit) {
+		readValues(cells);
+		return countSolutions(mValues, limit);
+	}
+
+	@Override
+	public int countSolutions(String puzzle, int limit) {
+		readValues(puzzle);
+		return countSolutions(mValues, limit);
+	}
+
+	/**
+	 * Counts solutions of the puzzle given by read-only cells of the collection, values
+	 * entered by the player are ignored.
+	 *
+	 * @param cells
+	 * @param limit
+	 * @return Number of solutions (at most limit), -1 if node limit has been reached before.
+	 */
+	int countPuzzleSolutions(CellCollection cells, int limit) {
+		readValues(cells);
+		for (int i = 0; i < mValues.length; i++) {
+			if (cells.getCell(i).isEditable()) {
+				mValues[i] = 0;
+			}
+		}
+		return countSolutions(mValues, limit);
+	}
+
+	/**
+	 * Solves puzzle given by values indexed by cell index, 0 for empty cell. Array is
+	 * reused by the next call.
+	 *
+	 * @param values
+	 * @param startTime Value of {@link System#nanoTime()} when solving has started.
+	 * @return
+	 */
+	abstract SolverResult solve(byte[] values, long startTime);
+
+	/**
+	 * Counts solutions of the puzzle given by values indexed by cell index.
+	 *
+	 * @param values
+	 * @param limit
+	 * @return Number of solutions (at most limit), -1 if node limit has been reached before.
+	 */
+	abstract int countSolutions(byte[] values, int limit);
+
+	void readValues(CellCollection cells) {
+		BoardLayout layout = cells.getLayout();
+		if (layout != mLayout && !layout.getDescriptor().equals(mLayout.getDescriptor())) {
+			throw new IllegalArgumentException("Cells have different layout than the solver.");
+		}
+		for (int i = 0; i < mValues.length; i++) {
+			mValues[i] = (byte) cells.getCell(i).getValue();
+		}
+	}
+
+	void readValues(String puzzle) {
+		if (puzzle.length() != mValues.length) {
+			throw new IllegalArgumentException("Puzzle must have " + mValues.length + " characters.");
+		}
+		int size = mLayout.getSize();
+		for (int i = 0; i < mValues.length; i++) {
+			int value = BoardLayout.parseValue(puzzle.charAt(i));
+			mValues[i] = (byte) (value > 0 && value <= size ? value : 0);
+		}
+	}
+}
@@ -0,0 +1,462 @@
+package org.moire.opensudoku.game.solver;
+
+/**
+ * Chaining techniques of {@link LogicalSolver}: X-Chains, XY-Chains, alternating inference
+ * chains (AIC) and ALS-XZ.
+ * <p/>
+ * Chains are searched breadth first over the {@link LinkGraph}, alternating strong links
+ * (candidate is off, so the linked one is on) and weak links (candidate is on, so the linked
+ * one is off). Each chain starting with a candidate which is off and ending with a candidate
+ * which is on proves that one of them is true, so candidates seeing both of them can be
+ * eliminated. Queues and visit marks are primitive arrays allocated once, and the number of
+ * links followed per search is limited, so the cost per position stays bounded even on large
+ * boards.
+ * <p/>
+ * Finder only reads candidates, found chain and eliminations are left in result arrays to be
+ * applied by the solver.
+ */
+final class ChainFinder {
+
+	static final int MODE_X_CHAIN = 0;
+	static final int MODE_XY_CHAIN = 1;
+	static final int MODE_AIC = 2;
+
+	// Maximum number of links in a chain.
+	private static final int MAX_CHAIN_LENGTH = 16;
+	// Maximum number of links followed by one search for chains (all start nodes together).
+	private static final int MAX_LINKS_PER_SEARCH = 200000;
+
+	// ALS of at most this number of cells are used.
+	private static final int MAX_ALS_SIZE = 4;
+	private static final int MAX_ALS_COUNT = 512;
+
+	private final CompiledLayout mLayout;
+	private final LinkGraph mGraph;
+	private final int[] mCandidates;
+	private final byte[] mValues;
+	private final int mSize;
+
+	// search state indexed by state = node * 2 + (1 if candidate is on)
+	private final int[] mQueue;
+	private final int[] mParent;
+	private final int[] mDepth;
+	private final int[] mVisited;
+	private int mStamp;
+	private int mLinkCount;
+
+	// result of the last successful search
+	private final int[] mResultCells;
+	private int mResultCellCount;
+	private int mResultDigits;
+	private final int[] mEliminations;
+	private int mEliminationCount;
+
+	// almost locked sets, cells of ALS a are mAlsCells[mAlsStart[a]] .. mAlsCells[mAlsStart[a + 1] - 1]
+	private int mAlsCount;
+	private final int[] mAlsStart;
+	private final int[] mAlsCells;
+	private final int[] mAlsMasks;
+	private final int[] mSubset;
+	private final int[] mMark;
+	private int mMarkStamp;
+
+	ChainFinder(CompiledLayout layout, LinkGraph graph, int[] candidates, byte[] values) {
+		mLayout = layout;
+		mGraph = graph;
+		mCandidates = candidates;
+		mValues = values;
+		mSize = layout.mSize;
+
+		int stateCount = layout.mCellCount * mSize * 2;
+		mQueue = new int[stateCount];
+		mParent = new int[stateCount];
+		mDepth = new int[stateCount];
+		mVisited = new int[stateCount];
+		mResultCells = new int[MAX_CHAIN_LENGTH + 2 * MAX_ALS_SIZE + 1];
+		mEliminations = new int[layout.mCellCount * mSize];
+
+		mAlsStart = new int[MAX_ALS_COUNT + 1];
+		mAlsCells = new int[MAX_ALS_COUNT * MAX_ALS_SIZE];
+		mAlsMasks = new int[MAX_ALS_COUNT];
+		mSubset = new int[MAX_ALS_SIZE];
+		mMark = new int[layout.mCellCount];
+	}
+
+	/**
+	 * Returns cells of the found chain (in order) or of both found ALS.
+	 */
+	int getResultCellCount() {
+		return mResultCellCount;
+	}
+
+	int getResultCell(int i) {
+		return mResultCells[i];
+	}
+
+	/**
+	 * Returns bit mask of values of the found chain or ALS.
+	 */
+	int getResultDigits() {
+		return mResultDigits;
+	}
+
+	int getEliminationCount() {
+		return mEliminationCount;
+	}
+
+	/**
+	 * Returns i-th eliminated candidate as node <code>cell * size + value - 1</code>.
+	 */
+	int getElimination(int i) {
+		return mEliminations[i];
+	}
+
+	/**
+	 * Looks for a chain of the given kind, which eliminates some candidate.
+	 *
+	 * @param mode One of MODE_* constants.
+	 * @return True, if such chain has been found.
+	 */
+	boolean findChain(int mode) {
+		mLinkCount = 0;
+		for (int cell = 0; cell < mLayout.mCellCount; cell++) {
+			int candidates = mCandidates[cell];
+			if (mValues[cell] != 0 || (mode == MODE_XY_CHAIN && Integer.bitCount(candidates) != 2)) {
+				continue;
+			}
+			while (candidates != 0) {
+				int value = Integer.numberOfTrailingZeros(candidates) + 1;
+				candidates &= candidates - 1;
+				if (search(cell * mSize + value - 1, mode)) {
+					return true;
+				}
+				if (mLinkCount > MAX_LINKS_PER_SEARCH) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean search(int start, int mode) {
+		if (++mStamp == 0) {
+			for (int i = 0; i < mVisited.length; i++) {
+				mVisited[i] = 0;
+			}
+			mStamp = 1;
+		}
+		int head = 0;
+		int tail = 0;
+		int startState = start * 2;
+		mVisited[startState] = mStamp;
+		mParent[startState] = -1;
+		mDepth[startState] = 0;
+		mQueue[tail++] = startState;
+
+		while (head < tail) {
+			int state = mQueue[head++];
+			if (mDepth[state] >= MAX_CHAIN_LENGTH || mLinkCount > MAX_LINKS_PER_SEARCH) {
+				continue;
+			}
+			int node = state >> 1;
+			int cell = node / mSize;
+			int value = node % mSize + 1;
+
+			if ((state & 1) == 0) {
+				// candidate is off, strongly linked candidates are on
+				if (mode != MODE_X_CHAIN) {
+					int candidates = mCandidates[cell];
+					if (Integer.bitCount(candidates) == 2) {
+						int other = Integer.numberOfTrailingZeros(candidates & ~(1 << (value - 1))) + 1;
+						if (visitOn(cell * mSize + other - 1, state, start, mode)) {
+							return true;
+						}
+						tail = enqueue(cell * mSize + other - 1, 1, state, tail);
+					}
+				}
+				if (mode != MODE_XY_CHAIN) {
+					for (int k = 0; k < mGraph.getHouseCount(cell); k++) {
+						int partner = mGraph.getHousePartner(cell, k, value);
+						if (partner >= 0) {
+							if (visitOn(partner * mSize + value - 1, state, start, mode)) {
+								return true;
+							}
+							tail = enqueue(partner * mSize + value - 1, 1, state, tail);
+						}
+					}
+				}
+			} else {
+				// candidate is on, weakly linked candidates are off
+				int bit = 1 << (value - 1);
+				for (int p = mLayout.mPeerStart[cell]; p < mLayout.mPeerStart[cell + 1]; p++) {
+					int peer = mLayout.mPeers[p];
+					if (mValues[peer] == 0 && (mCandidates[peer] & bit) != 0
+							&& (mode != MODE_XY_CHAIN || Integer.bitCount(mCandidates[peer]) == 2)) {
+						tail = enqueue(peer * mSize + value - 1, 0, state, tail);
+					}
+				}
+				if (mode == MODE_AIC) {
+					int others = mCandidates[cell] & ~bit;
+					while (others != 0) {
+						int other = Integer.numberOfTrailingZeros(others) + 1;
+						others &= others - 1;
+						tail = enqueue(cell * mSize + other - 1, 0, state, tail);
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private int enqueue(int node, int on, int parent, int tail) {
+		mLinkCount++;
+		int state = node * 2 + on;
+		if (mVisited[state] == mStamp) {
+			return tail;
+		}
+		mVisited[state] = mStamp;
+		mParent[state] = parent;
+		mDepth[state] = mDepth[parent] + 1;
+		mQueue[tail] = state;
+		return tail + 1;
+	}
+
+	/**
+	 * Checks chain from the start (off) to the node (on), before the node is queued.
+	 */
+	private boolean visitOn(int end, int parent, int start, int mode) {
+		if (end == start || mVisited[end * 2 + 1] == mStamp) {
+			return false;
+		}
+		int startValue = start % mSize + 1;
+		int endValue = end % mSize + 1;
+		if (mode != MODE_AIC && startValue != endValue) {
+			return false;
+		}
+		mEliminationCount = 0;
+		collectChainEliminations(start / mSize, startValue, end / mSize, endValue);
+		if (mEliminationCount == 0) {
+			return false;
+		}
+
+		// cells of the chain from the start to the end
+		mResultCellCount = 0;
+		mResultDigits = 1 << (endValue - 1);
+		mResultCells[mResultCellCount++] = end / mSize;
+		for (int state = parent; state >= 0; state = mParent[state]) {
+			int node = state >> 1;
+			mResultDigits |= 1 << (node % mSize);
+			if (mResultCells[mResultCellCount - 1] != node / mSize) {
+				mResultCells[mResultCellCount++] = node / mSize;
+			}
+		}
+		for (int i = 0, j = mResultCellCount - 1; i < j; i++, j--) {
+			int cell = mResultCells[i];
+			mResultCells[i] = mResultCells[j];
+			mResultCells[j] = cell;
+		}
+		return true;
+	}
+
+	/**
+	 * Collects candidates, which see both of the candidates, at least one of which is true.
+	 */
+	private void collectChainEliminations(int cell1, int value1, int cell2, int value2) {
+		if (value1 == value2) {
+			int bit = 1 << (value1 - 1);
+			for (int p = mLayout.mPeerStart[cell1]; p < mLayout.mPeerStart[cell1 + 1]; p++) {
+				int peer = mLayout.mPeers[p];
+				if (peer != cell2 && mValues[peer] == 0 && (mCandidates[peer] & bit) != 0
+						&& mLayout.mLayout.isPeer(peer, cell2)) {
+					mEliminations[mEliminationCount++] = peer * mSize + value1 - 1;
+				}
+			}
+		} else if (cell1 == cell2) {
+			int others = mCandidates[cell1] & ~(1 << (value1 - 1)) & ~(1 << (value2 - 1));
+			while (others != 0) {
+				mEliminations[mEliminationCount++] = cell1 * mSize + Integer.numberOfTrailingZeros(others);
+				others &= others - 1;
+			}
+		} else if (mLayout.mLayout.isPeer(cell1, cell2)) {
+			if ((mCandidates[cell1] & (1 << (value2 - 1))) != 0) {
+				mEliminations[mEliminationCount++] = cell1 * mSize + value2 - 1;
+			}
+			if ((mCandidates[cell2] & (1 << (value1 - 1))) != 0) {
+				mEliminations[mEliminationCount++] = cell2 * mSize + value1 - 1;
+			}
+		}
+	}
+
+	/**
+	 * Looks for two almost locked sets (n cells of a house with n + 1 candidates) with
+	 * restricted common value X (all its places in both sets see each other), so X is true in
+	 * at most one of them. Any other common value Z is then true in at least one of them and
+	 * can be eliminated from cells seeing all its places in both sets.
+	 *
+	 * @return True, if some candidate can be eliminated.
+	 */
+	boolean findAlsXz() {
+		collectAls();
+		for (int a = 0; a < mAlsCount; a++) {
+			markAls(a);
+			for (int b = a + 1; b < mAlsCount; b++) {
+				int common = mAlsMasks[a] & mAlsMasks[b];
+				if (Integer.bitCount(common) < 2 || overlaps(b)) {
+					continue;
+				}
+				int restricted = 0;
+				int values = common;
+				while (values != 0) {
+					int bit = values & -values;
+					values &= values - 1;
+					if (isRestrictedCommon(a, b, bit)) {
+						restricted |= bit;
+					}
+				}
+				while (restricted != 0) {
+					int x = restricted & -restricted;
+					restricted &= restricted - 1;
+					mEliminationCount = 0;
+					int others = common & ~x;
+					while (others != 0) {
+						int z = others & -others;
+						others &= others - 1;
+						collectAlsEliminations(a, b, z);
+					}
+					if (mEliminationCount > 0) {
+						mResultCellCount = 0;
+						for (int i = mAlsStart[a]; i < mAlsStart[a + 1]; i++) {
+							mResultCells[mResultCellCount++] = mAlsCells[i];
+						}
+						for (int i = mAlsStart[b]; i < mAlsStart[b + 1]; i++) {
+							mResultCells[mResultCellCount++] = mAlsCells[i];
+						}
+						mResultDigits = common;
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private void collectAls() {
+		mAlsCount = 0;
+		mAlsStart[0] = 0;
+		for (int u = 0; u < mLayout.mUnitCount && mAlsCount < MAX_ALS_COUNT; u++) {
+			if (mLayout.mUnitStart[u + 1] - mLayout.mUnitStart[u] == mSize) {
+				collectAls(u, mLayout.mUnitStart[u], 0, 0);
+			}
+		}
+	}
+
+	private void collectAls(int unit, int from, int depth, int union) {
+		if (depth > 0 && Integer.bitCount(union) == depth + 1 && !isKnownAls(depth, union)) {
+			int start = mAlsStart[mAlsCount];
+			for (int k = 0; k < depth; k++) {
+				mAlsCells[start + k] = mSubset[k];
+			}
+			mAlsMasks[mAlsCount] = union;
+			mAlsCount++;
+			mAlsStart[mAlsCount] = start + depth;
+		}
+		if (depth == MAX_ALS_SIZE) {
+			return;
+		}
+		int end = mLayout.mUnitStart[unit + 1];
+		for (int i = from; i < end && mAlsCount < MAX_ALS_COUNT; i++) {
+			int cell = mLayout.mUnitCells[i];
+			if (mValues[cell] != 0) {
+				continue;
+			}
+			int next = union | mCandidates[cell];
+			if (Integer.bitCount(next) > MAX_ALS_SIZE + 1) {
+				continue;
+			}
+			mSubset[depth] = cell;
+			collectAls(unit, i + 1, depth + 1, next);
+		}
+	}
+
+	/**
+	 * Returns true, if ALS of the same cells has been already found in another house.
+	 */
+	private boolean isKnownAls(int size, int mask) {
+		for (int a = 0; a < mAlsCount; a++) {
+			if (mAlsMasks[a] != mask || mAlsStart[a + 1] - mAlsStart[a] != size) {
+				continue;
+			}
+			boolean same = true;
+			for (int k = 0; k < size && same; k++) {
+				same = mAlsCells[mAlsStart[a] + k] == mSubset[k];
+			}
+			if (same) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void markAls(int a) {
+		mMarkStamp++;
+		for (int i = mAlsStart[a]; i < mAlsStart[a + 1]; i++) {
+			mMark[mAlsCells[i]] = mMarkStamp;
+		}
+	}
+
+	private boolean overlaps(int b) {
+		for (int i = mAlsStart[b]; i < mAlsStart[b + 1]; i++) {
+			if (mMark[mAlsCells[i]] == mMarkStamp) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isRestrictedCommon(int a, int b, int bit) {
+		for (int i = mAlsStart[a]; i < mAlsStart[a + 1]; i++) {
+			int cellA = mAlsCells[i];
+			if ((mCandidates[cellA] & bit) == 0) {
+				continue;
+			}
+			for (int j = mAlsStart[b]; j < mAlsStart[b + 1]; j++) {
+				int cellB = mAlsCells[j];
+				if ((mCandidates[cellB] & bit) != 0 && !mLayout.mLayout.isPeer(cellA, cellB)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void collectAlsEliminations(int a, int b, int bit) {
+		// cells seeing the first place of Z are candidates, the rest of places is checked
+		int first = -1;
+		for (int i = mAlsStart[a]; i < mAlsStart[a + 1] && first < 0; i++) {
+			if ((mCandidates[mAlsCells[i]] & bit) != 0) {
+				first = mAlsCells[i];
+			}
+		}
+		for (int p = mLayout.mPeerStart[first]; p < mLayout.mPeerStart[first + 1]; p++) {
+			int cell = mLayout.mPeers[p];
+			if (mValues[cell] != 0 || (mCandidates[cell] & bit) == 0 || mMark[cell] == mMarkStamp
+					|| !seesAll(cell, a, bit) || !seesAll(cell, b, bit)) {
+				continue;
+			}
+			mEliminations[mEliminationCount++] = cell * mSize + Integer.numberOfTrailingZeros(bit);
+		}
+	}
+
+	private boolean seesAll(int cell, int als, int bit) {
+		for (int i = mAlsStart[als]; i < mAlsStart[als + 1]; i++) {
+			int other = mAlsCells[i];
+			if (other == cell) {
+				return false;
+			}
+			if ((mCandidates[other] & bit) != 0 && !mLayout.mLayout.isPeer(cell, other)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
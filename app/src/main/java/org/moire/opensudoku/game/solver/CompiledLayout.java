@@ -0,0 +1,129 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.moire.opensudoku.game.BoardLayout;
+
+/**
+ * Board layout flattened into plain int arrays for solvers: peers, units and cages of all
+ * cells are stored one after another, with start offsets of each cell (unit, cage). Solvers
+ * then touch only primitive arrays in their inner loops.
+ * <p/>
+ * Tables are built once per layout and shared, see {@link #get(BoardLayout)}. Layouts with
+ * killer cages are different for each puzzle, their tables are not shared.
+ */
+final class CompiledLayout {
+
+	private static final Map<BoardLayout, CompiledLayout> sCache = new HashMap<BoardLayout, CompiledLayout>();
+
+	final BoardLayout mLayout;
+	final int mSize;
+	final int mCellCount;
+	final int mAllValues;
+
+	// peers of cell i are mPeers[mPeerStart[i]] .. mPeers[mPeerStart[i + 1] - 1]
+	final int[] mPeerStart;
+	final int[] mPeers;
+
+	// cells of unit u are mUnitCells[mUnitStart[u]] .. mUnitCells[mUnitStart[u + 1] - 1]
+	final int mUnitCount;
+	final int[] mUnitStart;
+	final int[] mUnitCells;
+
+	// units containing all values (not killer cages), which contain cell i are
+	// mCellUnits[mCellUnitStart[i]] .. mCellUnits[mCellUnitStart[i + 1] - 1]
+	final int[] mCellUnitStart;
+	final int[] mCellUnits;
+
+	// killer cages, cells of cage c are mCageCells[mCageStart[c]] .. mCageCells[mCageStart[c + 1] - 1]
+	final int mCageCount;
+	final int[] mCageStart;
+	final int[] mCageCells;
+	final int[] mCageSums;
+	final int[] mCellCages;
+
+	/**
+	 * Returns tables for given layout.
+	 *
+	 * @param layout
+	 * @return
+	 */
+	static CompiledLayout get(BoardLayout layout) {
+		if (layout.getCageCount() > 0) {
+			// not cached by BoardLayout either, the same layout will hardly be used again
+			return new CompiledLayout(layout);
+		}
+		synchronized (sCache) {
+			CompiledLayout compiled = sCache.get(layout);
+			if (compiled == null) {
+				compiled = new CompiledLayout(layout);
+				sCache.put(layout, compiled);
+			}
+			return compiled;
+		}
+	}
+
+	private CompiledLayout(BoardLayout layout) {
+		mLayout = layout;
+		mSize = layout.getSize();
+		mCellCount = layout.getCellCount();
+		mAllValues = layout.getAllValuesMask();
+
+		mPeerStart = new int[mCellCount + 1];
+		for (int i = 0; i < mCellCount; i++) {
+			mPeerStart[i + 1] = mPeerStart[i] + layout.getPeerCount(i);
+		}
+		mPeers = new int[mPeerStart[mCellCount]];
+		for (int i = 0; i < mCellCount; i++) {
+			for (int p = 0; p < layout.getPeerCount(i); p++) {
+				mPeers[mPeerStart[i] + p] = layout.getPeer(i, p);
+			}
+		}
+
+		mUnitCount = layout.getUnitCount();
+		mUnitStart = new int[mUnitCount + 1];
+		for (int u = 0; u < mUnitCount; u++) {
+			mUnitStart[u + 1] = mUnitStart[u] + layout.getUnitSize(u);
+		}
+		mUnitCells = new int[mUnitStart[mUnitCount]];
+		for (int u = 0; u < mUnitCount; u++) {
+			for (int c = 0; c < layout.getUnitSize(u); c++) {
+				mUnitCells[mUnitStart[u] + c] = layout.getUnitCell(u, c);
+			}
+		}
+
+		mCellUnitStart = new int[mCellCount + 1];
+		int[] units = new int[mUnitStart[mUnitCount]];
+		int count = 0;
+		for (int i = 0; i < mCellCount; i++) {
+			for (int k = 0; k < layout.getCellUnitCount(i); k++) {
+				int unit = layout.getCellUnitAt(i, k);
+				if (layout.getUnitSize(unit) == mSize) {
+					units[count++] = unit;
+				}
+			}
+			mCellUnitStart[i + 1] = count;
+		}
+		mCellUnits = new int[count];
+		System.arraycopy(units, 0, mCellUnits, 0, count);
+
+		mCageCount = layout.getCageCount();
+		mCageStart = new int[mCageCount + 1];
+		mCageSums = new int[mCageCount];
+		for (int c = 0; c < mCageCount; c++) {
+			mCageStart[c + 1] = mCageStart[c] + layout.getCageSize(c);
+			mCageSums[c] = layout.getCageSum(c);
+		}
+		mCageCells = new int[mCageStart[mCageCount]];
+		for (int c = 0; c < mCageCount; c++) {
+			for (int i = 0; i < layout.getCageSize(c); i++) {
+				mCageCells[mCageStart[c] + i] = layout.getCageCell(c, i);
+			}
+		}
+		mCellCages = new int[mCellCount];
+		for (int i = 0; i < mCellCount; i++) {
+			mCellCages[i] = layout.getCellCage(i);
+		}
+	}
+}
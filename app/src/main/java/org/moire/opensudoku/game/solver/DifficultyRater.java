@@ -0,0 +1,185 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Rates difficulty of puzzles by solving them with {@link LogicalSolver}.
+ * <p/>
+ * Rating is <code>rank * 1000 + weight</code>, where rank is the hardest technique needed
+ * (<code>technique + 1</code>, or {@link #RANK_GUESSING} when techniques of the solver are
+ * not enough) and weight is the sum of weights of all steps (at most 999), so puzzles are
+ * ordered by the hardest technique first and by amount of work then. Ratings can be sorted
+ * and compared directly, levels correspond to ranges of ratings (see {@link #getMinRating(int)}
+ * and {@link #getMaxRating(int)}).
+ * <p/>
+ * Rater keeps one solver per board layout (except of killer layouts, which are different
+ * for each puzzle). Instance is not thread safe.
+ */
+public class DifficultyRater {
+
+	/**
+	 * Rating of puzzles without solution or with more than one solution.
+	 */
+	public static final int RATING_INVALID = 0;
+
+	public static final int LEVEL_INVALID = 0;
+	public static final int LEVEL_EASY = 1;
+	public static final int LEVEL_MEDIUM = 2;
+	public static final int LEVEL_HARD = 3;
+	public static final int LEVEL_EXPERT = 4;
+	public static final int LEVEL_EXTREME = 5;
+
+	/**
+	 * Rank of puzzles, which cannot be solved without guessing.
+	 */
+	static final int RANK_GUESSING = LogicalSolver.TECHNIQUE_ALS_XZ + 2;
+
+	private static final int RANK_FACTOR = 1000;
+	private static final int MAX_WEIGHT = RANK_FACTOR - 1;
+
+	// weight of one step made by each technique
+	private static final int[] TECHNIQUE_WEIGHTS = {
+			1, // naked single
+			2, // hidden single
+			3, // cage combination
+			5, // locked candidates
+			8, // naked pair
+			10, // hidden pair
+			12, // naked triple
+			14, // hidden triple
+			16, // naked quad
+			18, // hidden quad
+			20, // X-Wing
+			25, // Swordfish
+			30, // Jellyfish
+			35, // X-Chain
+			40, // XY-Chain
+			50, // AIC
+			55, // ALS-XZ
+	};
+
+	// the lowest rank of each level
+	private static final int[] LEVEL_MIN_RANKS = {
+			0,
+			LogicalSolver.TECHNIQUE_NAKED_SINGLE + 1,
+			LogicalSolver.TECHNIQUE_LOCKED_CANDIDATES + 1,
+			LogicalSolver.TECHNIQUE_NAKED_TRIPLE + 1,
+			LogicalSolver.TECHNIQUE_X_CHAIN + 1,
+			RANK_GUESSING,
+	};
+
+	private final Map<BoardLayout, LogicalSolver> mSolvers = new HashMap<BoardLayout, LogicalSolver>();
+	private final SolutionCounter mSolutionCounter = new SolutionCounter();
+
+	/**
+	 * Rates puzzle given by read-only cells of the collection.
+	 *
+	 * @param cells
+	 * @return Rating of the puzzle, {@link #RATING_INVALID} if it does not have unique solution.
+	 */
+	public int rate(CellCollection cells) {
+		LogicalSolver solver = getSolver(cells.getLayout());
+		solver.loadPuzzle(cells);
+		int result = solver.solve();
+		if (result == LogicalSolver.RESULT_STUCK && mSolutionCounter.check(cells) != SolutionCounter.UNIQUE) {
+			return RATING_INVALID;
+		}
+		return getRating(solver.getTrace(), result);
+	}
+
+	/**
+	 * Rates puzzle, which is already known to have unique solution.
+	 *
+	 * @param layout
+	 * @param givens Values of the puzzle indexed by cell index, 0 for empty cell.
+	 * @return
+	 */
+	int rateUnique(BoardLayout layout, byte[] givens) {
+		LogicalSolver solver = getSolver(layout);
+		solver.load(givens);
+		return getRating(solver.getTrace(), solver.solve());
+	}
+
+	/**
+	 * Rates puzzle serialized by {@link CellCollection#serialize()} (or in any other format
+	 * accepted by {@link CellCollection#deserialize(String)}).
+	 *
+	 * @param data
+	 * @return Rating of the puzzle, {@link #RATING_INVALID} if it does not have unique solution.
+	 */
+	public int rate(String data) {
+		return rate(CellCollection.deserialize(data));
+	}
+
+	/**
+	 * Returns level (one of LEVEL_* constants) of given rating.
+	 *
+	 * @param rating
+	 * @return
+	 */
+	public static int getLevel(int rating) {
+		int rank = rating / RANK_FACTOR;
+		for (int level = LEVEL_EXTREME; level > LEVEL_INVALID; level--) {
+			if (rank >= LEVEL_MIN_RANKS[level]) {
+				return level;
+			}
+		}
+		return LEVEL_INVALID;
+	}
+
+	/**
+	 * Returns the lowest rating of given level.
+	 *
+	 * @param level
+	 * @return
+	 */
+	public static int getMinRating(int level) {
+		return level == LEVEL_INVALID ? RATING_INVALID : LEVEL_MIN_RANKS[level] * RANK_FACTOR;
+	}
+
+	/**
+	 * Returns the highest rating of given level.
+	 *
+	 * @param level
+	 * @return
+	 */
+	public static int getMaxRating(int level) {
+		return level == LEVEL_EXTREME ? (RANK_GUESSING + 1) * RANK_FACTOR - 1
+				: getMinRating(level + 1) - 1;
+	}
+
+	private static int getRating(SolveTrace trace, int result) {
+		if (result == LogicalSolver.RESULT_INVALID) {
+			return RATING_INVALID;
+		}
+
+		int weight = 0;
+		for (int i = 0; i < trace.getStepCount() && weight < MAX_WEIGHT; i++) {
+			weight += TECHNIQUE_WEIGHTS[trace.getTechnique(i)];
+		}
+		weight = Math.min(weight, MAX_WEIGHT);
+
+		if (result == LogicalSolver.RESULT_SOLVED) {
+			// logical solution is always the only one
+			return (Math.max(trace.getHardestTechnique(), 0) + 1) * RANK_FACTOR + weight;
+		}
+		return RANK_GUESSING * RANK_FACTOR + weight;
+	}
+
+	private LogicalSolver getSolver(BoardLayout layout) {
+		LogicalSolver solver = mSolvers.get(layout);
+		if (solver == null) {
+			solver = new LogicalSolver(layout);
+			// killer layouts are different for each puzzle, keeping their solvers would
+			// only hold memory
+			if (layout.getCageCount() == 0) {
+				mSolvers.put(layout, solver);
+			}
+		}
+		return solver;
+	}
+}
@@ -0,0 +1,433 @@
+package org.moire.opensudoku.game.solver;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.KillerCombinations;
+
+/**
+ * Solves puzzles as an exact cover problem by Knuth's Algorithm X with Dancing Links.
+ * <p/>
+ * Each row of the matrix is one (cell, value) pair, columns are constraints derived from the
+ * layout: every cell has exactly one value and every value is exactly once in every unit of
+ * the board size (rows, columns, boxes, extra regions). Units smaller than the board (killer
+ * cages) are secondary columns, their values must not repeat, but don't have to be all
+ * present. Relations between two cells outside of any common unit (anti-knight, anti-king)
+ * are secondary columns too, one for each pair of cells and value. Any variant expressed
+ * as units or relations of the {@link BoardLayout} thus becomes extra columns without any
+ * change of the solver. Sums of killer cages are not an exact cover
+ * constraint, they are only checked when a row is chosen, so {@link SudokuSolver} (which
+ * propagates them) is much faster on killer puzzles.
+ * <p/>
+ * The matrix is built once, when the solver is created, as arrays of links between nodes
+ * (no node objects). Solving covers columns of given values and searches; all covered
+ * columns are uncovered afterwards, so the same matrix is used for the next puzzle.
+ */
+public final class DlxSolver extends AbstractSolverEngine {
+
+	private static final int ROOT = 0;
+
+	private final int mSize;
+	private final int mAllValues;
+	private final int mCellCount;
+
+	// Node 0 is the root, nodes 1 .. column count are column headers, row nodes follow.
+	private final int[] mLeft;
+	private final int[] mRight;
+	private final int[] mUp;
+	private final int[] mDown;
+	// header of the node's column
+	private final int[] mColumn;
+	// row of the node (cell * size + value - 1)
+	private final int[] mRow;
+	// number of nodes in column, indexed by header node
+	private final int[] mColumnSize;
+	private final boolean[] mCovered;
+	// first node of each row
+	private final int[] mRowStart;
+
+	// killer cages: sum remaining to be filled, number of empty cells and used values
+	private final int[] mCellCages;
+	private final int[] mCageSums;
+	private final int[] mCageCellCounts;
+	private final int[] mCageRemaining;
+	private final int[] mCageEmpty;
+	private final int[] mCageUsed;
+
+	// rows of given values and chosen rows
+	private final int[] mChosenRows;
+	private int mChosenCount;
+	private final byte[] mSolution;
+
+	private int mNodeCount;
+	private int mGuessCount;
+	private int mSearchNodeLimit;
+	private int mSolutionCount;
+	private int mSolutionLimit;
+
+	public DlxSolver() {
+		this(BoardLayout.CLASSIC);
+	}
+
+	public DlxSolver(BoardLayout layout) {
+		super(layout);
+		mSize = layout.getSize();
+		mAllValues = layout.getAllValuesMask();
+		mCellCount = layout.getCellCount();
+
+		// columns: one for each cell, then one for each value of each unit, then one for
+		// each value of each relation
+		int unitCount = layout.getUnitCount();
+		int[] unitColumns = new int[unitCount];
+		int columnCount = mCellCount;
+		for (int u = 0; u < unitCount; u++) {
+			unitColumns[u] = columnCount;
+			columnCount += mSize;
+		}
+		int relationStart = columnCount;
+
+		// relations of cell i are cellRelations[i][0 .. cellRelationCounts[i] - 1]
+		int[][] cellRelations = new int[mCellCount][];
+		int[] cellRelationCounts = new int[mCellCount];
+		int relationCount = 0;
+		for (int i = 0; i < mCellCount; i++) {
+			cellRelations[i] = new int[layout.getPeerCount(i)];
+		}
+		for (int i = 0; i < mCellCount; i++) {
+			for (int k = 0; k < layout.getPeerCount(i); k++) {
+				int peer = layout.getPeer(i, k);
+				if (peer > i && !shareUnit(layout, i, peer)) {
+					cellRelations[i][cellRelationCounts[i]++] = relationCount;
+					cellRelations[peer][cellRelationCounts[peer]++] = relationCount;
+					relationCount++;
+				}
+			}
+		}
+		columnCount += relationCount * mSize;
+
+		int nodeCount = 1 + columnCount;
+		for (int i = 0; i < mCellCount; i++) {
+			nodeCount += mSize * (1 + layout.getCellUnitCount(i) + cellRelationCounts[i]);
+		}
+		mLeft = new int[nodeCount];
+		mRight = new int[nodeCount];
+		mUp = new int[nodeCount];
+		mDown = new int[nodeCount];
+		mColumn = new int[nodeCount];
+		mRow = new int[nodeCount];
+		mColumnSize = new int[1 + columnCount];
+		mCovered = new boolean[1 + columnCount];
+		mRowStart = new int[mCellCount * mSize];
+
+		// primary column headers are linked to the root, secondary ones only to themselves
+		mLeft[ROOT] = ROOT;
+		mRight[ROOT] = ROOT;
+		for (int c = 0; c < columnCount; c++) {
+			int header = c + 1;
+			mUp[header] = header;
+			mDown[header] = header;
+			mColumn[header] = header;
+			mRow[header] = -1;
+			boolean primary = c < mCellCount
+					|| c < relationStart && layout.getUnitSize(unitOf(unitColumns, c)) == mSize;
+			if (primary) {
+				mLeft[header] = mLeft[ROOT];
+				mRight[header] = ROOT;
+				mRight[mLeft[ROOT]] = header;
+				mLeft[ROOT] = header;
+			} else {
+				mLeft[header] = header;
+				mRight[header] = header;
+			}
+		}
+
+		int node = 1 + columnCount;
+		for (int i = 0; i < mCellCount; i++) {
+			for (int value = 1; value <= mSize; value++) {
+				int row = i * mSize + value - 1;
+				int first = node;
+				mRowStart[row] = first;
+				addNode(node++, row, first, 1 + i);
+				for (int k = 0; k < layout.getCellUnitCount(i); k++) {
+					int unit = layout.getCellUnitAt(i, k);
+					addNode(node++, row, first, 1 + unitColumns[unit] + value - 1);
+				}
+				for (int k = 0; k < cellRelationCounts[i]; k++) {
+					addNode(node++, row, first, 1 + relationStart + cellRelations[i][k] * mSize + value - 1);
+				}
+			}
+		}
+
+		mCellCages = new int[mCellCount];
+		for (int i = 0; i < mCellCount; i++) {
+			mCellCages[i] = layout.getCellCage(i);
+		}
+		int cageCount = layout.getCageCount();
+		mCageSums = new int[cageCount];
+		mCageCellCounts = new int[cageCount];
+		for (int c = 0; c < cageCount; c++) {
+			mCageSums[c] = layout.getCageSum(c);
+			mCageCellCounts[c] = layout.getCageSize(c);
+		}
+		mCageRemaining = new int[cageCount];
+		mCageEmpty = new int[cageCount];
+		mCageUsed = new int[cageCount];
+
+		mChosenRows = new int[mCellCount];
+		mSolution = new byte[mCellCount];
+	}
+
+	private static int unitOf(int[] unitColumns, int column) {
+		int unit = unitColumns.length - 1;
+		while (unitColumns[unit] > column) {
+			unit--;
+		}
+		return unit;
+	}
+
+	private static boolean shareUnit(BoardLayout layout, int cell1, int cell2) {
+		for (int k = 0; k < layout.getCellUnitCount(cell1); k++) {
+			int unit = layout.getCellUnitAt(cell1, k);
+			for (int l = 0; l < layout.getCellUnitCount(cell2); l++) {
+				if (layout.getCellUnitAt(cell2, l) == unit) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Appends node to the bottom of the column and to the end of the row starting by
+	 * the first node.
+	 */
+	private void addNode(int node, int row, int first, int header) {
+		mRow[node] = row;
+		mColumn[node] = header;
+		mUp[node] = mUp[header];
+		mDown[node] = header;
+		mDown[mUp[header]] = node;
+		mUp[header] = node;
+		mColumnSize[header]++;
+		if (node == first) {
+			mLeft[node] = node;
+			mRight[node] = node;
+		} else {
+			mLeft[node] = mLeft[first];
+			mRight[node] = first;
+			mRight[mLeft[first]] = node;
+			mLeft[first] = node;
+		}
+	}
+
+	@Override
+	SolverResult solve(byte[] values, long startTime) {
+		int count = countSolutions(values, 1);
+		int status = count < 0 ? SolverResult.STATUS_GAVE_UP
+				: (count == 0 ? SolverResult.STATUS_NO_SOLUTION : SolverResult.STATUS_SOLVED);
+		return new SolverResult(status, status == SolverResult.STATUS_SOLVED ? mSolution.clone() : null,
+				mNodeCount, mGuessCount, System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Counts solutions of the puzzle up to given limit, the first one is stored in mSolution.
+	 *
+	 * @return Number of solutions, -1 if search has given up.
+	 */
+	@Override
+	int countSolutions(byte[] values, int solutionLimit) {
+		mNodeCount = 0;
+		mGuessCount = 0;
+		mSolutionCount = 0;
+		mSolutionLimit = solutionLimit;
+		mSearchNodeLimit = getNodeLimit();
+		mChosenCount = 0;
+		for (int c = 0; c < mCageSums.length; c++) {
+			mCageRemaining[c] = mCageSums[c];
+			mCageEmpty[c] = mCageCellCounts[c];
+			mCageUsed[c] = 0;
+		}
+
+		boolean possible = true;
+		for (int i = 0; i < mCellCount && possible; i++) {
+			int value = values[i];
+			if (value != 0) {
+				int row = mRowStart[i * mSize + value - 1];
+				possible = isRowAvailable(row) && enterCage(i, value);
+				if (possible) {
+					coverRow(row);
+					mChosenRows[mChosenCount++] = row;
+				}
+			}
+		}
+
+		if (possible) {
+			search();
+		}
+
+		// return the matrix to its initial state
+		while (mChosenCount > 0) {
+			int row = mChosenRows[--mChosenCount];
+			uncoverRow(row);
+		}
+		return mNodeCount > mSearchNodeLimit ? -1 : mSolutionCount;
+	}
+
+	/**
+	 * Returns true, if search should stop (enough solutions have been found or node limit
+	 * has been reached).
+	 */
+	private boolean search() {
+		if (mRight[ROOT] == ROOT) {
+			if (mSolutionCount == 0) {
+				for (int i = 0; i < mChosenCount; i++) {
+					int row = mRow[mChosenRows[i]];
+					mSolution[row / mSize] = (byte) (row % mSize + 1);
+				}
+			}
+			return ++mSolutionCount >= mSolutionLimit;
+		}
+		if (++mNodeCount > mSearchNodeLimit) {
+			return true;
+		}
+
+		// choose primary column with the fewest rows, rows of cells in killer cages are
+		// counted only if their value can still complete the cage
+		int column = ROOT;
+		int best = Integer.MAX_VALUE;
+		for (int c = mRight[ROOT]; c != ROOT; c = mRight[c]) {
+			int size = mColumnSize[c];
+			if (c <= mCellCount && mCellCages[c - 1] >= 0 && size < best) {
+				size = countCageRows(c);
+			}
+			if (size < best) {
+				column = c;
+				best = size;
+				if (best <= 1) {
+					break;
+				}
+			}
+		}
+		if (best == 0) {
+			return false;
+		}
+
+		cover(column);
+		boolean stop = false;
+		for (int node = mDown[column]; node != column && !stop; node = mDown[node]) {
+			int cell = mRow[node] / mSize;
+			int value = mRow[node] % mSize + 1;
+			if (!enterCage(cell, value)) {
+				continue;
+			}
+			mGuessCount++;
+			mChosenRows[mChosenCount++] = node;
+			for (int j = mRight[node]; j != node; j = mRight[j]) {
+				cover(mColumn[j]);
+			}
+			stop = search();
+			for (int j = mLeft[node]; j != node; j = mLeft[j]) {
+				uncover(mColumn[j]);
+			}
+			mChosenCount--;
+			leaveCage(cell, value);
+		}
+		uncover(column);
+		return stop;
+	}
+
+	/**
+	 * Returns number of rows in the column of the cell, whose values can complete the cell's
+	 * cage.
+	 */
+	private int countCageRows(int header) {
+		int cage = mCellCages[header - 1];
+		int count = 0;
+		for (int node = mDown[header]; node != header; node = mDown[node]) {
+			int value = mRow[node] % mSize + 1;
+			if (KillerCombinations.isPossible(mCageEmpty[cage] - 1, mCageRemaining[cage] - value,
+					mCageUsed[cage] | (1 << (value - 1)), mAllValues)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private boolean isRowAvailable(int first) {
+		int node = first;
+		do {
+			if (mCovered[mColumn[node]]) {
+				return false;
+			}
+			node = mRight[node];
+		} while (node != first);
+		return true;
+	}
+
+	private void coverRow(int first) {
+		int node = first;
+		do {
+			cover(mColumn[node]);
+			node = mRight[node];
+		} while (node != first);
+	}
+
+	private void uncoverRow(int first) {
+		int node = first;
+		do {
+			node = mLeft[node];
+			uncover(mColumn[node]);
+		} while (node != first);
+	}
+
+	private void cover(int header) {
+		mCovered[header] = true;
+		mRight[mLeft[header]] = mRight[header];
+		mLeft[mRight[header]] = mLeft[header];
+		for (int i = mDown[header]; i != header; i = mDown[i]) {
+			for (int j = mRight[i]; j != i; j = mRight[j]) {
+				mDown[mUp[j]] = mDown[j];
+				mUp[mDown[j]] = mUp[j];
+				mColumnSize[mColumn[j]]--;
+			}
+		}
+	}
+
+	private void uncover(int header) {
+		for (int i = mUp[header]; i != header; i = mUp[i]) {
+			for (int j = mLeft[i]; j != i; j = mLeft[j]) {
+				mColumnSize[mColumn[j]]++;
+				mDown[mUp[j]] = j;
+				mUp[mDown[j]] = j;
+			}
+		}
+		mRight[mLeft[header]] = header;
+		mLeft[mRight[header]] = header;
+		mCovered[header] = false;
+	}
+
+	/**
+	 * Adds value to the cage of the cell, if the cage can still be completed with it.
+	 */
+	private boolean enterCage(int cell, int value) {
+		int cage = mCellCages[cell];
+		if (cage < 0) {
+			return true;
+		}
+		int used = mCageUsed[cage] | (1 << (value - 1));
+		if (!KillerCombinations.isPossible(mCageEmpty[cage] - 1, mCageRemaining[cage] - value, used, mAllValues)) {
+			return false;
+		}
+		mCageUsed[cage] = used;
+		mCageEmpty[cage]--;
+		mCageRemaining[cage] -= value;
+		return true;
+	}
+
+	private void leaveCage(int cell, int value) {
+		int cage = mCellCages[cell];
+		if (cage >= 0) {
+			mCageUsed[cage] &= ~(1 << (value - 1));
+			mCageEmpty[cage]++;
+			mCageRemaining[cage] += value;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package org.moire.opensudoku.game.solver;
+
+/**
+ * Strong links between candidates of the board, used by chaining techniques.
+ * <p/>
+ * Candidate is a node <code>cell * size + value - 1</code>. Two candidates are strongly
+ * linked when at least one of them must be true: they are the only candidates of a cell
+ * (bivalue cell), or the only places of a value in a house (bilocal value). Graph keeps bit
+ * mask of positions of each value in each house and it is updated as candidates are
+ * removed, so strong links of a node are found in constant time per house without scanning
+ * the board. Weak links (at most one of two candidates can be true) follow directly from
+ * candidates and peers of cells.
+ */
+final class LinkGraph {
+
+	private final CompiledLayout mLayout;
+	private final int mSize;
+
+	// houses (units containing all values) of cell i are mCellHouses[mCellHouseStart[i]] ..
+	// mCellHouses[mCellHouseStart[i + 1] - 1], with the position of the cell in each house
+	// stored in mCellHousePositions
+	private final int[] mCellHouseStart;
+	private final int[] mCellHouses;
+	private final int[] mCellHousePositions;
+
+	// positions of value v in unit u are bits of mPositions[u * size + v - 1], 0 once the
+	// value has been placed in the unit
+	private final int[] mPositions;
+
+	LinkGraph(CompiledLayout layout) {
+		mLayout = layout;
+		mSize = layout.mSize;
+		mCellHouseStart = layout.mCellUnitStart;
+		mCellHouses = layout.mCellUnits;
+		mCellHousePositions = new int[mCellHouses.length];
+		for (int cell = 0; cell < layout.mCellCount; cell++) {
+			for (int k = mCellHouseStart[cell]; k < mCellHouseStart[cell + 1]; k++) {
+				int unit = mCellHouses[k];
+				for (int i = layout.mUnitStart[unit]; i < layout.mUnitStart[unit + 1]; i++) {
+					if (layout.mUnitCells[i] == cell) {
+						mCellHousePositions[k] = i - layout.mUnitStart[unit];
+					}
+				}
+			}
+		}
+		mPositions = new int[layout.mUnitCount * mSize];
+	}
+
+	/**
+	 * Returns graph to empty board, where every value can be placed anywhere.
+	 */
+	void reset() {
+		for (int u = 0; u < mLayout.mUnitCount; u++) {
+			int size = mLayout.mUnitStart[u + 1] - mLayout.mUnitStart[u];
+			int all = size == mSize ? (int) ((1L << size) - 1) : 0;
+			for (int v = 0; v < mSize; v++) {
+				mPositions[u * mSize + v] = all;
+			}
+		}
+	}
+
+	/**
+	 * Updates the graph after candidates of given mask have been removed from the cell.
+	 *
+	 * @param cell
+	 * @param removed
+	 */
+	void remove(int cell, int removed) {
+		for (int k = mCellHouseStart[cell]; k < mCellHouseStart[cell + 1]; k++) {
+			int base = mCellHouses[k] * mSize;
+			int bit = ~(1 << mCellHousePositions[k]);
+			int values = removed;
+			while (values != 0) {
+				mPositions[base + Integer.numberOfTrailingZeros(values)] &= bit;
+				values &= values - 1;
+			}
+		}
+	}
+
+	/**
+	 * Updates the graph after value has been placed in the cell (and removed from its peers).
+	 *
+	 * @param cell
+	 * @param value
+	 */
+	void place(int cell, int value) {
+		for (int k = mCellHouseStart[cell]; k < mCellHouseStart[cell + 1]; k++) {
+			mPositions[mCellHouses[k] * mSize + value - 1] = 0;
+		}
+	}
+
+	/**
+	 * Returns number of houses containing the cell.
+	 */
+	int getHouseCount(int cell) {
+		return mCellHouseStart[cell + 1] - mCellHouseStart[cell];
+	}
+
+	/**
+	 * Returns the other place of the value in k-th house of the cell, if value has just two
+	 * places there (bilocal), -1 otherwise.
+	 */
+	int getHousePartner(int cell, int k, int value) {
+		int entry = mCellHouseStart[cell] + k;
+		int unit = mCellHouses[entry];
+		int positions = mPositions[unit * mSize + value - 1];
+		int own = 1 << mCellHousePositions[entry];
+		if ((positions & own) == 0 || Integer.bitCount(positions) != 2) {
+			return -1;
+		}
+		return mLayout.mUnitCells[mLayout.mUnitStart[unit] + Integer.numberOfTrailingZeros(positions & ~own)];
+	}
+
+	/**
+	 * Returns bit mask of positions of the value in the unit.
+	 */
+	int getPositions(int unit, int value) {
+		return mPositions[unit * mSize + value - 1];
+	}
+}
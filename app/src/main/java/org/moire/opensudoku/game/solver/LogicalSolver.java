@@ -0,0 +1,913 @@
+package org.moire.opensudoku.game.solver;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.Cell;
+import org.moire.opensudoku.game.CellCollection;
+import org.moire.opensudoku.game.CellNote;
+import org.moire.opensudoku.game.KillerCombinations;
+
+/**
+ * Solves puzzles the way a human would, by applying solving techniques one step at a time.
+ * <p/>
+ * Each step uses the easiest technique which makes some progress (techniques are tried in
+ * order of TECHNIQUE_* constants) and is recorded in the {@link SolveTrace}. Trace of the
+ * whole solution can be used to grade difficulty of the puzzle, the first step found for the
+ * current board can be shown as a hint.
+ * <p/>
+ * Solver works on candidate bit masks of all cells. Fish are looked for on per-value row
+ * masks (bit for each column containing the candidate) and on their transposition, so
+ * row-based and column-based fish share the same code. Fish are looked for only on layouts
+ * without gaps, where each row and column of the board is one unit. Chains and ALS are
+ * looked for by {@link ChainFinder} on the {@link LinkGraph}, which is updated together with
+ * candidates.
+ * <p/>
+ * Solver instance can be reused for any number of puzzles of its layout, it allocates nothing
+ * while solving (except of growing the trace). It is not thread safe.
+ */
+public final class LogicalSolver {
+
+	public static final int TECHNIQUE_NAKED_SINGLE = 0;
+	public static final int TECHNIQUE_HIDDEN_SINGLE = 1;
+	public static final int TECHNIQUE_CAGE_COMBINATION = 2;
+	public static final int TECHNIQUE_LOCKED_CANDIDATES = 3;
+	public static final int TECHNIQUE_NAKED_PAIR = 4;
+	public static final int TECHNIQUE_HIDDEN_PAIR = 5;
+	public static final int TECHNIQUE_NAKED_TRIPLE = 6;
+	public static final int TECHNIQUE_HIDDEN_TRIPLE = 7;
+	public static final int TECHNIQUE_NAKED_QUAD = 8;
+	public static final int TECHNIQUE_HIDDEN_QUAD = 9;
+	public static final int TECHNIQUE_X_WING = 10;
+	public static final int TECHNIQUE_SWORDFISH = 11;
+	public static final int TECHNIQUE_JELLYFISH = 12;
+	public static final int TECHNIQUE_X_CHAIN = 13;
+	public static final int TECHNIQUE_XY_CHAIN = 14;
+	public static final int TECHNIQUE_AIC = 15;
+	public static final int TECHNIQUE_ALS_XZ = 16;
+
+	/**
+	 * Board has been solved.
+	 */
+	public static final int RESULT_SOLVED = 0;
+	/**
+	 * No technique can make any further progress.
+	 */
+	public static final int RESULT_STUCK = 1;
+	/**
+	 * Board contains contradiction (some cell has no candidate or some value has no place
+	 * in a unit).
+	 */
+	public static final int RESULT_INVALID = 2;
+
+	private final CompiledLayout mLayout;
+	private final int mCellCount;
+	private final int mAllValues;
+
+	private final int[] mCandidates;
+	private final byte[] mValues;
+	private int mAssignedCount;
+	private boolean mInvalid;
+	private final SolveTrace mTrace = new SolveTrace();
+	private final LinkGraph mGraph;
+	private final ChainFinder mChainFinder;
+
+	// units containing all values
+	private final int[] mHouses;
+
+	// pairs of houses sharing at least two cells, cells of the pair p are stored in
+	// mPairCells from mPairStart[p]: first those of both houses (mPairSplit[3 * p] of them),
+	// then those of the first house only (mPairSplit[3 * p + 1]) and then those of the
+	// second house only (mPairSplit[3 * p + 2])
+	private final int mPairCount;
+	private final int[] mPairHouses;
+	private final int[] mPairStart;
+	private final int[] mPairSplit;
+	private final int[] mPairCells;
+
+	// fish are looked for only when rows and columns are complete lines of the board
+	private final boolean mFishEnabled;
+	private final int mLineCount;
+	private final int[] mCellRows;
+	private final int[] mCellColumns;
+	private final int[] mLineCells;
+	private final int[] mRowMasks;
+	private final int[] mColumnMasks;
+
+	// scratch arrays for subsets and fish
+	private final int[] mSubsetCells;
+	private final int[] mSubsetMasks;
+	private final int[] mChosen;
+
+	public LogicalSolver() {
+		this(BoardLayout.CLASSIC);
+	}
+
+	public LogicalSolver(BoardLayout layout) {
+		mLayout = CompiledLayout.get(layout);
+		mCellCount = mLayout.mCellCount;
+		mAllValues = mLayout.mAllValues;
+		mCandidates = new int[mCellCount];
+		mValues = new byte[mCellCount];
+
+		int houseCount = 0;
+		for (int u = 0; u < mLayout.mUnitCount; u++) {
+			if (unitSize(u) == mLayout.mSize) {
+				houseCount++;
+			}
+		}
+		mHouses = new int[houseCount];
+		houseCount = 0;
+		for (int u = 0; u < mLayout.mUnitCount; u++) {
+			if (unitSize(u) == mLayout.mSize) {
+				mHouses[houseCount++] = u;
+			}
+		}
+
+		// find intersections of houses
+		int[] mark = new int[mCellCount];
+		int[] pairHouses = new int[16];
+		int[] pairCells = new int[64];
+		int pairCount = 0;
+		int cellCount = 0;
+		for (int a = 0; a < houseCount; a++) {
+			int unitA = mHouses[a];
+			for (int i = mLayout.mUnitStart[unitA]; i < mLayout.mUnitStart[unitA + 1]; i++) {
+				mark[mLayout.mUnitCells[i]] = a + 1;
+			}
+			for (int b = a + 1; b < houseCount; b++) {
+				int unitB = mHouses[b];
+				int shared = 0;
+				for (int i = mLayout.mUnitStart[unitB]; i < mLayout.mUnitStart[unitB + 1]; i++) {
+					if (mark[mLayout.mUnitCells[i]] == a + 1) {
+						shared++;
+					}
+				}
+				if (shared < 2 || shared == mLayout.mSize) {
+					continue;
+				}
+				if (pairCount * 2 + 2 > pairHouses.length) {
+					pairHouses = grow(pairHouses, pairHouses.length * 2);
+				}
+				pairHouses[pairCount * 2] = unitA;
+				pairHouses[pairCount * 2 + 1] = unitB;
+				pairCount++;
+				if (cellCount + 2 * mLayout.mSize > pairCells.length) {
+					pairCells = grow(pairCells, pairCells.length * 2 + 2 * mLayout.mSize);
+				}
+				// cells of both houses, then cells of the house A only, then of the house B only
+				for (int i = mLayout.mUnitStart[unitB]; i < mLayout.mUnitStart[unitB + 1]; i++) {
+					if (mark[mLayout.mUnitCells[i]] == a + 1) {
+						pairCells[cellCount++] = mLayout.mUnitCells[i];
+					}
+				}
+				for (int i = mLayout.mUnitStart[unitA]; i < mLayout.mUnitStart[unitA + 1]; i++) {
+					if (!contains(unitB, mLayout.mUnitCells[i])) {
+						pairCells[cellCount++] = mLayout.mUnitCells[i];
+					}
+				}
+				for (int i = mLayout.mUnitStart[unitB]; i < mLayout.mUnitStart[unitB + 1]; i++) {
+					if (mark[mLayout.mUnitCells[i]] != a + 1) {
+						pairCells[cellCount++] = mLayout.mUnitCells[i];
+					}
+				}
+			}
+		}
+		mPairCount = pairCount;
+		mPairHouses = pairHouses;
+		mPairCells = pairCells;
+		mPairStart = new int[pairCount + 1];
+		mPairSplit = new int[pairCount * 3];
+		int start = 0;
+		for (int p = 0; p < pairCount; p++) {
+			int shared = 0;
+			int unitA = pairHouses[p * 2];
+			int unitB = pairHouses[p * 2 + 1];
+			for (int i = mLayout.mUnitStart[unitB]; i < mLayout.mUnitStart[unitB + 1]; i++) {
+				if (contains(unitA, mLayout.mUnitCells[i])) {
+					shared++;
+				}
+			}
+			int onlyA = unitSize(unitA) - shared;
+			int onlyB = unitSize(unitB) - shared;
+			mPairStart[p] = start;
+			mPairSplit[p * 3] = shared;
+			mPairSplit[p * 3 + 1] = onlyA;
+			mPairSplit[p * 3 + 2] = onlyB;
+			start += shared + onlyA + onlyB;
+		}
+		mPairStart[pairCount] = start;
+
+		mFishEnabled = !layout.isSparse() && layout.getRowCount() == mLayout.mSize
+				&& layout.getColumnCount() == mLayout.mSize;
+		mLineCount = mFishEnabled ? mLayout.mSize : 0;
+		mCellRows = new int[mCellCount];
+		mCellColumns = new int[mCellCount];
+		mLineCells = new int[mLineCount * mLineCount];
+		for (int i = 0; i < mCellCount; i++) {
+			mCellRows[i] = layout.getCellRow(i);
+			mCellColumns[i] = layout.getCellColumn(i);
+			if (mFishEnabled) {
+				mLineCells[mCellRows[i] * mLineCount + mCellColumns[i]] = i;
+			}
+		}
+		mRowMasks = new int[mLineCount];
+		mColumnMasks = new int[mLineCount];
+
+		mSubsetCells = new int[mLayout.mSize];
+		mSubsetMasks = new int[mLayout.mSize];
+		mChosen = new int[4];
+
+		mGraph = new LinkGraph(mLayout);
+		mChainFinder = new ChainFinder(mLayout, mGraph, mCandidates, mValues);
+	}
+
+	/**
+	 * Loads all values of the collection (entered values included), candidates are computed
+	 * from values, notes of the player are ignored. Trace is cleared.
+	 *
+	 * @param cells Cells with the same layout as the solver's.
+	 */
+	public void load(CellCollection cells) {
+		load(cells, false);
+	}
+
+	/**
+	 * Loads read-only values (givens) of the collection only. Trace is cleared.
+	 *
+	 * @param cells Cells with the same layout as the solver's.
+	 */
+	public void loadPuzzle(CellCollection cells) {
+		load(cells, true);
+	}
+
+	private void load(CellCollection cells, boolean givensOnly) {
+		if (cells.getLayout() != mLayout.mLayout) {
+			throw new IllegalArgumentException("Board layout " + cells.getLayout().getDescriptor()
+					+ " does not match solver's layout " + mLayout.mLayout.getDescriptor() + ".");
+		}
+		byte[] values = new byte[mCellCount];
+		for (int i = 0; i < mCellCount; i++) {
+			Cell cell = cells.getCell(i);
+			if (!givensOnly || !cell.isEditable()) {
+				values[i] = (byte) cell.getValue();
+			}
+		}
+		load(values);
+	}
+
+	/**
+	 * Loads values indexed by cell index, 0 for empty cell. Trace is cleared.
+	 *
+	 * @param values
+	 */
+	void load(byte[] values) {
+		for (int i = 0; i < mCellCount; i++) {
+			mCandidates[i] = mAllValues;
+			mValues[i] = 0;
+		}
+		mAssignedCount = 0;
+		mInvalid = false;
+		mTrace.clear();
+		mGraph.reset();
+		for (int i = 0; i < mCellCount; i++) {
+			if (values[i] != 0) {
+				place(i, values[i]);
+			}
+		}
+	}
+
+	public SolveTrace getTrace() {
+		return mTrace;
+	}
+
+	public int getValue(int cell) {
+		return mValues[cell];
+	}
+
+	/**
+	 * Returns bit mask of candidates of the cell (value <code>v</code> is represented by bit
+	 * <code>1 << (v - 1)</code>, same as in {@link org.moire.opensudoku.game.CellNote}).
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public int getCandidates(int cell) {
+		return mCandidates[cell];
+	}
+
+	/**
+	 * Returns candidates of the cell as a note, e.g. to fill in notes of the player.
+	 *
+	 * @param cell
+	 * @return
+	 */
+	public CellNote getCandidatesNote(int cell) {
+		return mValues[cell] != 0 ? CellNote.EMPTY : CellNote.valueOf(mCandidates[cell]);
+	}
+
+	public boolean isSolved() {
+		return !mInvalid && mAssignedCount == mCellCount;
+	}
+
+	/**
+	 * Applies steps until the board is solved or no technique can make progress.
+	 *
+	 * @return One of RESULT_* constants.
+	 */
+	public int solve() {
+		return solve(TECHNIQUE_ALS_XZ);
+	}
+
+	/**
+	 * Applies steps using techniques up to (and including) the given one, until the board is
+	 * solved or no such technique can make progress.
+	 *
+	 * @param hardestTechnique
+	 * @return One of RESULT_* constants.
+	 */
+	public int solve(int hardestTechnique) {
+		while (!mInvalid && mAssignedCount < mCellCount && step(hardestTechnique)) {
+		}
+		return getResult();
+	}
+
+	/**
+	 * Applies single step using the easiest technique, which makes some progress. The step
+	 * is appended to the trace.
+	 *
+	 * @return False, if no step has been found (board is solved, invalid or too hard).
+	 */
+	public boolean step() {
+		return step(TECHNIQUE_ALS_XZ);
+	}
+
+	/**
+	 * Applies single step using the easiest technique up to the given one, which makes
+	 * some progress.
+	 *
+	 * @param hardestTechnique
+	 * @return False, if no step has been found.
+	 */
+	public boolean step(int hardestTechnique) {
+		if (mInvalid || mAssignedCount == mCellCount) {
+			return false;
+		}
+		for (int technique = TECHNIQUE_NAKED_SINGLE; technique <= hardestTechnique; technique++) {
+			if (apply(technique)) {
+				return true;
+			}
+			if (mInvalid) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns state of the board, one of RESULT_* constants.
+	 *
+	 * @return
+	 */
+	public int getResult() {
+		if (mInvalid) {
+			return RESULT_INVALID;
+		}
+		return mAssignedCount == mCellCount ? RESULT_SOLVED : RESULT_STUCK;
+	}
+
+	private boolean apply(int technique) {
+		switch (technique) {
+			case TECHNIQUE_NAKED_SINGLE:
+				return findNakedSingle();
+			case TECHNIQUE_HIDDEN_SINGLE:
+				return findHiddenSingle();
+			case TECHNIQUE_CAGE_COMBINATION:
+				return findCageCombination();
+			case TECHNIQUE_LOCKED_CANDIDATES:
+				return findLockedCandidates();
+			case TECHNIQUE_NAKED_PAIR:
+				return findNakedSubset(2, technique);
+			case TECHNIQUE_HIDDEN_PAIR:
+				return findHiddenSubset(2, technique);
+			case TECHNIQUE_NAKED_TRIPLE:
+				return findNakedSubset(3, technique);
+			case TECHNIQUE_HIDDEN_TRIPLE:
+				return findHiddenSubset(3, technique);
+			case TECHNIQUE_NAKED_QUAD:
+				return findNakedSubset(4, technique);
+			case TECHNIQUE_HIDDEN_QUAD:
+				return findHiddenSubset(4, technique);
+			case TECHNIQUE_X_WING:
+				return findFish(2, technique);
+			case TECHNIQUE_SWORDFISH:
+				return findFish(3, technique);
+			case TECHNIQUE_JELLYFISH:
+				return findFish(4, technique);
+			case TECHNIQUE_X_CHAIN:
+				return recordChain(mChainFinder.findChain(ChainFinder.MODE_X_CHAIN), technique);
+			case TECHNIQUE_XY_CHAIN:
+				return recordChain(mChainFinder.findChain(ChainFinder.MODE_XY_CHAIN), technique);
+			case TECHNIQUE_AIC:
+				return recordChain(mChainFinder.findChain(ChainFinder.MODE_AIC), technique);
+			case TECHNIQUE_ALS_XZ:
+				return recordChain(mChainFinder.findAlsXz(), technique);
+			default:
+				return false;
+		}
+	}
+
+	private boolean findNakedSingle() {
+		for (int i = 0; i < mCellCount; i++) {
+			int candidates = mCandidates[i];
+			if (mValues[i] == 0 && candidates != 0 && (candidates & (candidates - 1)) == 0) {
+				int value = Integer.numberOfTrailingZeros(candidates) + 1;
+				mTrace.beginStep(TECHNIQUE_NAKED_SINGLE, -1, value, candidates);
+				mTrace.addCell(i);
+				place(i, value);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean findHiddenSingle() {
+		for (int h = 0; h < mHouses.length; h++) {
+			int unit = mHouses[h];
+			int start = mLayout.mUnitStart[unit];
+			int end = mLayout.mUnitStart[unit + 1];
+			int once = 0;
+			int twice = 0;
+			int placed = 0;
+			for (int i = start; i < end; i++) {
+				int cell = mLayout.mUnitCells[i];
+				if (mValues[cell] != 0) {
+					placed |= mCandidates[cell];
+				} else {
+					twice |= once & mCandidates[cell];
+					once |= mCandidates[cell];
+				}
+			}
+			if ((once | placed) != mAllValues) {
+				mInvalid = true;
+				return false;
+			}
+			int singles = once & ~twice & ~placed;
+			if (singles != 0) {
+				int bit = singles & -singles;
+				for (int i = start; i < end; i++) {
+					int cell = mLayout.mUnitCells[i];
+					if (mValues[cell] == 0 && (mCandidates[cell] & bit) != 0) {
+						int value = Integer.numberOfTrailingZeros(bit) + 1;
+						mTrace.beginStep(TECHNIQUE_HIDDEN_SINGLE, unit, value, bit);
+						mTrace.addCell(cell);
+						place(cell, value);
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes candidates, which are not part of any combination completing a killer cage.
+	 */
+	private boolean findCageCombination() {
+		for (int cage = 0; cage < mLayout.mCageCount; cage++) {
+			int start = mLayout.mCageStart[cage];
+			int end = mLayout.mCageStart[cage + 1];
+			int remaining = mLayout.mCageSums[cage];
+			int empty = 0;
+			int used = 0;
+			for (int i = start; i < end; i++) {
+				int value = mValues[mLayout.mCageCells[i]];
+				if (value == 0) {
+					empty++;
+				} else {
+					used |= 1 << (value - 1);
+					remaining -= value;
+				}
+			}
+			if (empty == 0) {
+				continue;
+			}
+			if (!KillerCombinations.isPossible(empty, remaining, used, mAllValues)) {
+				mInvalid = true;
+				return false;
+			}
+			int allowed = KillerCombinations.getAllowedValues(empty, remaining, used, mAllValues);
+			mTrace.beginStep(TECHNIQUE_CAGE_COMBINATION, -1, 0, allowed);
+			boolean eliminated = false;
+			for (int i = start; i < end; i++) {
+				int cell = mLayout.mCageCells[i];
+				if (mValues[cell] == 0) {
+					mTrace.addCell(cell);
+					eliminated |= eliminate(cell, ~allowed);
+				}
+			}
+			if (eliminated) {
+				return true;
+			}
+			mTrace.discardStep();
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for values, which are limited to the intersection of two houses in one of them
+	 * (pointing and claiming), they can be eliminated from the rest of the other house.
+	 */
+	private boolean findLockedCandidates() {
+		for (int p = 0; p < mPairCount; p++) {
+			int start = mPairStart[p];
+			int shared = mPairSplit[p * 3];
+			int onlyA = mPairSplit[p * 3 + 1];
+			int onlyB = mPairSplit[p * 3 + 2];
+			int sharedMask = unionOfCandidates(start, shared);
+			if (sharedMask == 0) {
+				continue;
+			}
+			int onlyAMask = unionOfCandidates(start + shared, onlyA);
+			int onlyBMask = unionOfCandidates(start + shared + onlyA, onlyB);
+
+			// values of house A in the intersection only are removed from the rest of house B
+			int locked = sharedMask & ~onlyAMask & onlyBMask;
+			if (locked != 0) {
+				recordLocked(p, mPairHouses[p * 2], locked & -locked, start + shared + onlyA, onlyB);
+				return true;
+			}
+			locked = sharedMask & ~onlyBMask & onlyAMask;
+			if (locked != 0) {
+				recordLocked(p, mPairHouses[p * 2 + 1], locked & -locked, start + shared, onlyA);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void recordLocked(int pair, int unit, int bit, int targetStart, int targetCount) {
+		mTrace.beginStep(TECHNIQUE_LOCKED_CANDIDATES, unit, 0, bit);
+		int start = mPairStart[pair];
+		for (int i = start; i < start + mPairSplit[pair * 3]; i++) {
+			int cell = mPairCells[i];
+			if (mValues[cell] == 0 && (mCandidates[cell] & bit) != 0) {
+				mTrace.addCell(cell);
+			}
+		}
+		for (int i = targetStart; i < targetStart + targetCount; i++) {
+			int cell = mPairCells[i];
+			if (mValues[cell] == 0) {
+				eliminate(cell, bit);
+			}
+		}
+	}
+
+	private int unionOfCandidates(int start, int count) {
+		int mask = 0;
+		for (int i = start; i < start + count; i++) {
+			int cell = mPairCells[i];
+			if (mValues[cell] == 0) {
+				mask |= mCandidates[cell];
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Looks for n cells of a house, which together have just n candidates. These values can
+	 * be eliminated from other cells of the house.
+	 */
+	private boolean findNakedSubset(int n, int technique) {
+		for (int h = 0; h < mHouses.length; h++) {
+			int unit = mHouses[h];
+			int count = 0;
+			int empty = 0;
+			for (int i = mLayout.mUnitStart[unit]; i < mLayout.mUnitStart[unit + 1]; i++) {
+				int cell = mLayout.mUnitCells[i];
+				if (mValues[cell] == 0) {
+					empty++;
+					if (Integer.bitCount(mCandidates[cell]) <= n) {
+						mSubsetCells[count] = cell;
+						mSubsetMasks[count] = mCandidates[cell];
+						count++;
+					}
+				}
+			}
+			// subset of all empty cells would eliminate nothing
+			if (count < n || empty <= n) {
+				continue;
+			}
+			if (findNakedSubset(unit, n, technique, count, 0, 0, 0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean findNakedSubset(int unit, int n, int technique, int count, int from, int depth, int union) {
+		if (depth == n) {
+			if (Integer.bitCount(union) != n) {
+				return false;
+			}
+			mTrace.beginStep(technique, unit, 0, union);
+			for (int k = 0; k < n; k++) {
+				mTrace.addCell(mSubsetCells[mChosen[k]]);
+			}
+			boolean eliminated = false;
+			for (int i = mLayout.mUnitStart[unit]; i < mLayout.mUnitStart[unit + 1]; i++) {
+				int cell = mLayout.mUnitCells[i];
+				if (mValues[cell] == 0 && !isChosenCell(cell, n)) {
+					eliminated |= eliminate(cell, union);
+				}
+			}
+			if (!eliminated) {
+				mTrace.discardStep();
+			}
+			return eliminated;
+		}
+		for (int k = from; k <= count - (n - depth); k++) {
+			int next = union | mSubsetMasks[k];
+			if (Integer.bitCount(next) > n) {
+				continue;
+			}
+			mChosen[depth] = k;
+			if (findNakedSubset(unit, n, technique, count, k + 1, depth + 1, next)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isChosenCell(int cell, int n) {
+		for (int k = 0; k < n; k++) {
+			if (mSubsetCells[mChosen[k]] == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for n values, which have together just n places in a house. Other candidates can
+	 * be eliminated from these cells.
+	 */
+	private boolean findHiddenSubset(int n, int technique) {
+		for (int h = 0; h < mHouses.length; h++) {
+			int unit = mHouses[h];
+			int start = mLayout.mUnitStart[unit];
+			int end = mLayout.mUnitStart[unit + 1];
+
+			// positions of each value in the house, bit i for i-th cell of the house
+			int count = 0;
+			int empty = 0;
+			for (int v = 0; v < mLayout.mSize; v++) {
+				int bit = 1 << v;
+				int positions = 0;
+				for (int i = start; i < end; i++) {
+					int cell = mLayout.mUnitCells[i];
+					if (mValues[cell] == 0 && (mCandidates[cell] & bit) != 0) {
+						positions |= 1 << (i - start);
+					}
+				}
+				if (positions != 0) {
+					empty++;
+					if (Integer.bitCount(positions) <= n) {
+						mSubsetCells[count] = v;
+						mSubsetMasks[count] = positions;
+						count++;
+					}
+				}
+			}
+			if (count < n || empty <= n) {
+				continue;
+			}
+			if (findHiddenSubset(unit, n, technique, count, 0, 0, 0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean findHiddenSubset(int unit, int n, int technique, int count, int from, int depth, int union) {
+		if (depth == n) {
+			if (Integer.bitCount(union) != n) {
+				return false;
+			}
+			int digits = 0;
+			for (int k = 0; k < n; k++) {
+				digits |= 1 << mSubsetCells[mChosen[k]];
+			}
+			int start = mLayout.mUnitStart[unit];
+			mTrace.beginStep(technique, unit, 0, digits);
+			boolean eliminated = false;
+			int positions = union;
+			while (positions != 0) {
+				int cell = mLayout.mUnitCells[start + Integer.numberOfTrailingZeros(positions)];
+				positions &= positions - 1;
+				mTrace.addCell(cell);
+				eliminated |= eliminate(cell, ~digits);
+			}
+			if (!eliminated) {
+				mTrace.discardStep();
+			}
+			return eliminated;
+		}
+		for (int k = from; k <= count - (n - depth); k++) {
+			int next = union | mSubsetMasks[k];
+			if (Integer.bitCount(next) > n) {
+				continue;
+			}
+			mChosen[depth] = k;
+			if (findHiddenSubset(unit, n, technique, count, k + 1, depth + 1, next)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for fish of size n (X-Wing, Swordfish, Jellyfish) of each value, first with rows
+	 * as base lines and then with columns.
+	 */
+	private boolean findFish(int n, int technique) {
+		if (!mFishEnabled) {
+			return false;
+		}
+		for (int v = 0; v < mLayout.mSize; v++) {
+			int bit = 1 << v;
+			for (int line = 0; line < mLineCount; line++) {
+				mRowMasks[line] = 0;
+				mColumnMasks[line] = 0;
+			}
+			for (int i = 0; i < mCellCount; i++) {
+				if (mValues[i] == 0 && (mCandidates[i] & bit) != 0) {
+					mRowMasks[mCellRows[i]] |= 1 << mCellColumns[i];
+				}
+			}
+			// transpose row masks into column masks
+			for (int row = 0; row < mLineCount; row++) {
+				int columns = mRowMasks[row];
+				while (columns != 0) {
+					int column = Integer.numberOfTrailingZeros(columns);
+					columns &= columns - 1;
+					mColumnMasks[column] |= 1 << row;
+				}
+			}
+			if (findFish(mRowMasks, mColumnMasks, true, n, technique, bit, 0, 0, 0, 0)
+					|| findFish(mColumnMasks, mRowMasks, false, n, technique, bit, 0, 0, 0, 0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Chooses n base lines, whose candidates lie in n cover lines together. Candidates of the
+	 * cover lines outside of the base lines are eliminated.
+	 */
+	private boolean findFish(int[] baseMasks, int[] coverMasks, boolean rows, int n, int technique, int bit,
+							 int from, int depth, int baseLines, int coverLines) {
+		if (depth == n) {
+			if (Integer.bitCount(coverLines) != n) {
+				return false;
+			}
+			// anything to eliminate in cover lines outside of base lines?
+			int covers = coverLines;
+			boolean found = false;
+			while (covers != 0 && !found) {
+				found = (coverMasks[Integer.numberOfTrailingZeros(covers)] & ~baseLines) != 0;
+				covers &= covers - 1;
+			}
+			if (!found) {
+				return false;
+			}
+
+			mTrace.beginStep(technique, -1, 0, bit);
+			int bases = baseLines;
+			while (bases != 0) {
+				int base = Integer.numberOfTrailingZeros(bases);
+				bases &= bases - 1;
+				int columns = baseMasks[base];
+				while (columns != 0) {
+					int cover = Integer.numberOfTrailingZeros(columns);
+					columns &= columns - 1;
+					mTrace.addCell(lineCell(rows, base, cover));
+				}
+			}
+			covers = coverLines;
+			while (covers != 0) {
+				int cover = Integer.numberOfTrailingZeros(covers);
+				covers &= covers - 1;
+				int others = coverMasks[cover] & ~baseLines;
+				while (others != 0) {
+					int base = Integer.numberOfTrailingZeros(others);
+					others &= others - 1;
+					eliminate(lineCell(rows, base, cover), bit);
+				}
+			}
+			return true;
+		}
+		for (int line = from; line < mLineCount; line++) {
+			int mask = baseMasks[line];
+			int count = Integer.bitCount(mask);
+			if (count < 2 || count > n) {
+				continue;
+			}
+			int next = coverLines | mask;
+			if (Integer.bitCount(next) > n) {
+				continue;
+			}
+			if (findFish(baseMasks, coverMasks, rows, n, technique, bit, line + 1, depth + 1,
+					baseLines | (1 << line), next)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records and applies result of the chain finder.
+	 */
+	private boolean recordChain(boolean found, int technique) {
+		if (!found) {
+			return false;
+		}
+		mTrace.beginStep(technique, -1, 0, mChainFinder.getResultDigits());
+		for (int i = 0; i < mChainFinder.getResultCellCount(); i++) {
+			mTrace.addCell(mChainFinder.getResultCell(i));
+		}
+		int size = mLayout.mSize;
+		for (int i = 0; i < mChainFinder.getEliminationCount(); i++) {
+			int node = mChainFinder.getElimination(i);
+			eliminate(node / size, 1 << (node % size));
+		}
+		return true;
+	}
+
+	private int lineCell(boolean rows, int base, int cover) {
+		return rows ? mLineCells[base * mLineCount + cover] : mLineCells[cover * mLineCount + base];
+	}
+
+	private void place(int cell, int value) {
+		int bit = 1 << (value - 1);
+		if (mValues[cell] != 0 || (mCandidates[cell] & bit) == 0) {
+			mInvalid = true;
+			return;
+		}
+		mGraph.remove(cell, mCandidates[cell] & ~bit);
+		mValues[cell] = (byte) value;
+		mCandidates[cell] = bit;
+		mAssignedCount++;
+		for (int p = mLayout.mPeerStart[cell]; p < mLayout.mPeerStart[cell + 1]; p++) {
+			int peer = mLayout.mPeers[p];
+			if (mValues[peer] == 0 && (mCandidates[peer] & bit) != 0) {
+				mCandidates[peer] &= ~bit;
+				mGraph.remove(peer, bit);
+				if (mCandidates[peer] == 0) {
+					mInvalid = true;
+				}
+			}
+		}
+		mGraph.place(cell, value);
+	}
+
+	/**
+	 * Removes candidates of given mask from the cell and records them in the current step.
+	 *
+	 * @return True, if some candidate has been removed.
+	 */
+	private boolean eliminate(int cell, int mask) {
+		int removed = mCandidates[cell] & mask;
+		if (removed == 0) {
+			return false;
+		}
+		mCandidates[cell] &= ~mask;
+		mGraph.remove(cell, removed);
+		if (mCandidates[cell] == 0) {
+			mInvalid = true;
+		}
+		while (removed != 0) {
+			mTrace.addElimination(cell, Integer.numberOfTrailingZeros(removed) + 1);
+			removed &= removed - 1;
+		}
+		return true;
+	}
+
+	private int unitSize(int unit) {
+		return mLayout.mUnitStart[unit + 1] - mLayout.mUnitStart[unit];
+	}
+
+	private boolean contains(int unit, int cell) {
+		for (int i = mLayout.mUnitStart[unit]; i < mLayout.mUnitStart[unit + 1]; i++) {
+			if (mLayout.mUnitCells[i] == cell) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -0,0 +1,188 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Generates puzzles of given level on all CPU cores.
+ * <p/>
+ * Every worker thread has its own {@link PuzzleGenerator} and makes attempts until enough
+ * puzzles have been generated. Puzzles are serialized by the workers and handed over to
+ * the thread which called {@link #generate(int, OnPuzzleGeneratedListener)}, so the caller
+ * can store them (e.g. into the database) while the workers continue. Generation can be
+ * cancelled from any thread by {@link #cancel()}.
+ * <p/>
+ * Example:
+ * <pre>
+ * ParallelGenerator generator = new ParallelGenerator(BoardLayout.CLASSIC, DifficultyRater.LEVEL_HARD);
+ * generator.generate(100, new ParallelGenerator.OnPuzzleGeneratedListener() {
+ *     public void onPuzzleGenerated(String data, int rating) {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ */
+public class ParallelGenerator {
+
+	// How often the waiting caller checks for cancellation, in milliseconds.
+	private static final int POLL_INTERVAL = 100;
+
+	private final BoardLayout mLayout;
+	private final int mLevel;
+	private int mThreadCount = Runtime.getRuntime().availableProcessors();
+	private int mThreadPriority = Thread.NORM_PRIORITY;
+
+	private volatile boolean mCancelled;
+
+	/**
+	 * @param layout Layout of generated puzzles, killer cages are not supported.
+	 * @param level  One of LEVEL_* constants of {@link DifficultyRater} except LEVEL_INVALID.
+	 */
+	public ParallelGenerator(BoardLayout layout, int level) {
+		if (layout.getCageCount() > 0) {
+			throw new IllegalArgumentException("Puzzles with killer cages cannot be generated.");
+		}
+		if (level <= DifficultyRater.LEVEL_INVALID || level > DifficultyRater.LEVEL_EXTREME) {
+			throw new IllegalArgumentException("Invalid level: " + level);
+		}
+		mLayout = layout;
+		mLevel = level;
+	}
+
+	/**
+	 * Sets number of worker threads, number of CPU cores by default.
+	 *
+	 * @param threadCount
+	 */
+	public void setThreadCount(int threadCount) {
+		mThreadCount = Math.max(threadCount, 1);
+	}
+
+	/**
+	 * Sets priority of worker threads (see {@link Thread#setPriority(int)}), normal by default.
+	 *
+	 * @param priority
+	 */
+	public void setThreadPriority(int priority) {
+		mThreadPriority = priority;
+	}
+
+	/**
+	 * Generates given number of puzzles. Method blocks until all puzzles have been generated
+	 * or generation has been cancelled.
+	 *
+	 * @param count    Number of puzzles to generate.
+	 * @param listener Listener called for each generated puzzle, on the calling thread.
+	 * @return Number of generated puzzles, less than count if generation has been cancelled.
+	 */
+	public int generate(int count, OnPuzzleGeneratedListener listener) {
+		mCancelled = false;
+		// workers of this call finish, when stopped is set
+		AtomicBoolean stopped = new AtomicBoolean();
+		AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+		AtomicInteger remaining = new AtomicInteger(count);
+		BlockingQueue<Puzzle> queue = new LinkedBlockingQueue<Puzzle>();
+		ExecutorService executor = Executors.newFixedThreadPool(mThreadCount);
+		int generated = 0;
+		try {
+			long seed = System.nanoTime();
+			for (int i = 0; i < mThreadCount; i++) {
+				executor.execute(new Worker(new Random(seed + i), remaining, queue, stopped, failure));
+			}
+
+			while (generated < count && !mCancelled && !stopped.get()) {
+				Puzzle puzzle = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (puzzle != null) {
+					generated++;
+					listener.onPuzzleGenerated(puzzle.mData, puzzle.mRating);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			stopped.set(true);
+			executor.shutdown();
+		}
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return generated;
+	}
+
+	/**
+	 * Stops generation, can be called from any thread.
+	 */
+	public void cancel() {
+		mCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return mCancelled;
+	}
+
+	private class Worker implements Runnable {
+		private final Random mRandom;
+		private final AtomicInteger mRemaining;
+		private final BlockingQueue<Puzzle> mQueue;
+		private final AtomicBoolean mStopped;
+		private final AtomicReference<RuntimeException> mFailure;
+
+		Worker(Random random, AtomicInteger remaining, BlockingQueue<Puzzle> queue,
+			   AtomicBoolean stopped, AtomicReference<RuntimeException> failure) {
+			mRandom = random;
+			mRemaining = remaining;
+			mQueue = queue;
+			mStopped = stopped;
+			mFailure = failure;
+		}
+
+		@Override
+		public void run() {
+			Thread.currentThread().setPriority(mThreadPriority);
+			try {
+				PuzzleGenerator generator = new PuzzleGenerator(mLayout, mRandom);
+				while (!mStopped.get() && mRemaining.get() > 0) {
+					CellCollection cells = generator.generate(mLevel);
+					// the last puzzles can be found by several workers at once
+					if (cells != null && mRemaining.getAndDecrement() > 0) {
+						mQueue.add(new Puzzle(cells.serialize(), generator.getRating()));
+					}
+				}
+			} catch (RuntimeException e) {
+				mFailure.compareAndSet(null, e);
+				mStopped.set(true);
+			}
+		}
+	}
+
+	private static class Puzzle {
+		final String mData;
+		final int mRating;
+
+		Puzzle(String data, int rating) {
+			mData = data;
+			mRating = rating;
+		}
+	}
+
+	public interface OnPuzzleGeneratedListener {
+		/**
+		 * Called on the thread, which has started generation, for each generated puzzle.
+		 *
+		 * @param data   Puzzle serialized by {@link CellCollection#serialize()}.
+		 * @param rating Difficulty rating of the puzzle (see {@link DifficultyRater}).
+		 */
+		void onPuzzleGenerated(String data, int rating);
+	}
+}
@@ -0,0 +1,513 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.Random;
+
+import org.moire.opensudoku.game.KillerCombinations;
+
+/**
+ * Candidates of all cells of the board kept consistent by constraint propagation: value
+ * assigned to a cell is removed from its peers, cells with single candidate (naked singles)
+ * and values with single place in a unit (hidden singles) are assigned immediately, killer
+ * cages are limited to values of their possible combinations.
+ * <p/>
+ * Every change of the state is recorded on a trail, so the state can be returned back to any
+ * earlier point by {@link #undo(int)} in time proportional to number of changes made since
+ * then. This makes the propagator cheap to update incrementally and to use for backtracking
+ * search. Nothing is allocated after construction.
+ * <p/>
+ * Not thread safe.
+ */
+final class Propagator {
+
+	static final int SOLVED = 0;
+	static final int UNSOLVABLE = 1;
+	static final int LIMIT = 2;
+
+	private final CompiledLayout mLayout;
+
+	// Candidates of each cell, assigned cell has only the bit of its value.
+	private final int[] mCandidates;
+	private final byte[] mValues;
+	private int mAssignedCount;
+	private boolean mContradiction;
+
+	// Trail of previous states of changed cells, cell -1 marks where contradiction was found.
+	private final int[] mTrailCells;
+	private final int[] mTrailCandidates;
+	private final byte[] mTrailValues;
+	private int mTrailTop;
+
+	// Assignments waiting for propagation, each cell is queued at most once.
+	private final int[] mQueue;
+	private final byte[] mPending;
+	private int mQueueSize;
+
+	// Units whose cells have changed since they have been checked for hidden singles.
+	private final int[] mDirtyUnits;
+	private final boolean[] mUnitDirty;
+	private int mDirtyCount;
+
+	private int mNodeCount;
+	private int mGuessCount;
+	private int mNodeLimit;
+	private int mSolutionCount;
+	private int mSolutionLimit;
+	// when set, search tries values in random order
+	private Random mRandom;
+
+	Propagator(CompiledLayout layout) {
+		mLayout = layout;
+		int cellCount = layout.mCellCount;
+		mCandidates = new int[cellCount];
+		mValues = new byte[cellCount];
+		// each change removes at least one candidate or assigns the cell, plus one contradiction mark
+		int trailSize = cellCount * (layout.mSize + 1) + 1;
+		mTrailCells = new int[trailSize];
+		mTrailCandidates = new int[trailSize];
+		mTrailValues = new byte[trailSize];
+		mQueue = new int[cellCount];
+		mPending = new byte[cellCount];
+		mDirtyUnits = new int[layout.mUnitCount];
+		mUnitDirty = new boolean[layout.mUnitCount];
+		reset();
+	}
+
+	CompiledLayout getLayout() {
+		return mLayout;
+	}
+
+	/**
+	 * Returns propagator to empty board (with killer cages applied).
+	 */
+	void reset() {
+		int cellCount = mLayout.mCellCount;
+		for (int i = 0; i < cellCount; i++) {
+			mCandidates[i] = mLayout.mAllValues;
+			mValues[i] = 0;
+			mPending[i] = 0;
+		}
+		mAssignedCount = 0;
+		mContradiction = false;
+		mTrailTop = 0;
+		mQueueSize = 0;
+		while (mDirtyCount > 0) {
+			mUnitDirty[mDirtyUnits[--mDirtyCount]] = false;
+		}
+
+		for (int cage = 0; cage < mLayout.mCageCount; cage++) {
+			updateCage(cage);
+		}
+		propagate();
+	}
+
+	/**
+	 * Returns current position on the trail, to be passed to {@link #undo(int)} later.
+	 *
+	 * @return
+	 */
+	int mark() {
+		return mTrailTop;
+	}
+
+	/**
+	 * Returns state to the one at the time given mark was taken.
+	 *
+	 * @param mark
+	 */
+	void undo(int mark) {
+		while (mTrailTop > mark) {
+			mTrailTop--;
+			int cell = mTrailCells[mTrailTop];
+			if (cell < 0) {
+				mContradiction = false;
+				continue;
+			}
+			if (mValues[cell] != 0 && mTrailValues[mTrailTop] == 0) {
+				mAssignedCount--;
+			}
+			mCandidates[cell] = mTrailCandidates[mTrailTop];
+			mValues[cell] = mTrailValues[mTrailTop];
+		}
+	}
+
+	/**
+	 * Assigns value to the cell and propagates all consequences.
+	 *
+	 * @param cell
+	 * @param value
+	 * @return False, if contradiction has been found (now or earlier).
+	 */
+	boolean assign(int cell, int value) {
+		enqueue(cell, value);
+		return propagate();
+	}
+
+	/**
+	 * Assigns all non-zero values of the array (indexed by cell) and propagates them
+	 * together, which is faster than assigning them one by one.
+	 *
+	 * @param values
+	 * @return False, if contradiction has been found (now or earlier).
+	 */
+	boolean assign(byte[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != 0) {
+				enqueue(i, values[i]);
+			}
+		}
+		return propagate();
+	}
+
+	/**
+	 * Removes value from candidates of the cell and propagates all consequences.
+	 *
+	 * @param cell
+	 * @param value
+	 * @return False, if contradiction has been found (now or earlier).
+	 */
+	boolean exclude(int cell, int value) {
+		if (!mContradiction) {
+			eliminate(cell, 1 << (value - 1));
+		}
+		return propagate();
+	}
+
+	boolean hasContradiction() {
+		return mContradiction;
+	}
+
+	boolean isComplete() {
+		return !mContradiction && mAssignedCount == mLayout.mCellCount;
+	}
+
+	int getValue(int cell) {
+		return mValues[cell];
+	}
+
+	int getCandidates(int cell) {
+		return mCandidates[cell];
+	}
+
+	/**
+	 * Searches for a solution of the current state. State is not changed.
+	 *
+	 * @param solution  Array for values of found solution, can be null.
+	 * @param nodeLimit Maximum number of search nodes, after which search gives up.
+	 * @return One of SOLVED, UNSOLVABLE or LIMIT.
+	 */
+	int solve(byte[] solution, int nodeLimit) {
+		int count = countSolutions(solution, 1, nodeLimit);
+		return count < 0 ? LIMIT : (count == 0 ? UNSOLVABLE : SOLVED);
+	}
+
+	/**
+	 * Searches for a random solution of the current state, values of search nodes are tried
+	 * in random order. State is not changed.
+	 *
+	 * @param solution  Array for values of found solution.
+	 * @param random
+	 * @param nodeLimit Maximum number of search nodes, after which search gives up.
+	 * @return One of SOLVED, UNSOLVABLE or LIMIT.
+	 */
+	int solveRandomly(byte[] solution, Random random, int nodeLimit) {
+		mRandom = random;
+		try {
+			return solve(solution, nodeLimit);
+		} finally {
+			mRandom = null;
+		}
+	}
+
+	/**
+	 * Counts solutions of the current state, up to given limit. State is not changed.
+	 *
+	 * @param solution      Array for values of the first found solution, can be null.
+	 * @param solutionLimit Search stops after this number of solutions has been found.
+	 * @param nodeLimit     Maximum number of search nodes, after which search gives up.
+	 * @return Number of found solutions, -1 if search has given up.
+	 */
+	int countSolutions(byte[] solution, int solutionLimit, int nodeLimit) {
+		mNodeCount = 0;
+		mGuessCount = 0;
+		mSolutionCount = 0;
+		if (mContradiction) {
+			return 0;
+		}
+		mNodeLimit = nodeLimit;
+		mSolutionLimit = solutionLimit;
+		search(solution);
+		return mNodeCount > mNodeLimit ? -1 : mSolutionCount;
+	}
+
+	/**
+	 * Returns number of search nodes visited by the last search.
+	 *
+	 * @return
+	 */
+	int getNodeCount() {
+		return mNodeCount;
+	}
+
+	/**
+	 * Returns number of values tried in search nodes by the last search.
+	 *
+	 * @return
+	 */
+	int getGuessCount() {
+		return mGuessCount;
+	}
+
+	/**
+	 * Returns true, if search should stop (enough solutions have been found or node limit
+	 * has been reached).
+	 */
+	private boolean search(byte[] solution) {
+		int cellCount = mLayout.mCellCount;
+		if (mAssignedCount == cellCount) {
+			if (mSolutionCount == 0 && solution != null) {
+				System.arraycopy(mValues, 0, solution, 0, cellCount);
+			}
+			return ++mSolutionCount >= mSolutionLimit;
+		}
+		if (++mNodeCount > mNodeLimit) {
+			return true;
+		}
+
+		// branch on the cell with fewest candidates
+		int best = -1;
+		int bestCount = Integer.MAX_VALUE;
+		for (int i = 0; i < cellCount; i++) {
+			if (mValues[i] == 0) {
+				int count = Integer.bitCount(mCandidates[i]);
+				if (count < bestCount) {
+					best = i;
+					bestCount = count;
+					if (count <= 2) {
+						break;
+					}
+				}
+			}
+		}
+
+		int candidates = mCandidates[best];
+		int mark = mTrailTop;
+		while (candidates != 0) {
+			int bit = mRandom == null ? candidates & -candidates : randomBit(candidates);
+			int value = Integer.numberOfTrailingZeros(bit) + 1;
+			candidates &= ~bit;
+			mGuessCount++;
+			boolean stop = assign(best, value) && search(solution);
+			undo(mark);
+			if (stop) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int randomBit(int mask) {
+		for (int n = mRandom.nextInt(Integer.bitCount(mask)); n > 0; n--) {
+			mask &= mask - 1;
+		}
+		return mask & -mask;
+	}
+
+	private void enqueue(int cell, int value) {
+		if (mContradiction) {
+			return;
+		}
+		if (mValues[cell] != 0 || mPending[cell] != 0) {
+			if (mValues[cell] != value && mPending[cell] != value) {
+				fail();
+			}
+			return;
+		}
+		if ((mCandidates[cell] & (1 << (value - 1))) == 0) {
+			fail();
+			return;
+		}
+		mPending[cell] = (byte) value;
+		mQueue[mQueueSize++] = cell;
+	}
+
+	/**
+	 * Places queued values. Hidden singles are looked for only when there is nothing left
+	 * in the queue, once per each unit changed since the last check.
+	 */
+	private boolean propagate() {
+		while (!mContradiction) {
+			if (mQueueSize > 0) {
+				int cell = mQueue[--mQueueSize];
+				int value = mPending[cell];
+				mPending[cell] = 0;
+				place(cell, value);
+			} else if (mDirtyCount > 0) {
+				int unit = mDirtyUnits[--mDirtyCount];
+				mUnitDirty[unit] = false;
+				checkHiddenSingles(unit);
+			} else {
+				break;
+			}
+		}
+		if (mContradiction) {
+			while (mQueueSize > 0) {
+				mPending[mQueue[--mQueueSize]] = 0;
+			}
+			while (mDirtyCount > 0) {
+				mUnitDirty[mDirtyUnits[--mDirtyCount]] = false;
+			}
+		}
+		return !mContradiction;
+	}
+
+	private void place(int cell, int value) {
+		int bit = 1 << (value - 1);
+		int candidates = mCandidates[cell];
+		if ((candidates & bit) == 0) {
+			fail();
+			return;
+		}
+
+		save(cell);
+		mCandidates[cell] = bit;
+		mValues[cell] = (byte) value;
+		mAssignedCount++;
+		if (candidates != bit) {
+			markUnitsDirty(cell);
+		}
+
+		for (int p = mLayout.mPeerStart[cell]; p < mLayout.mPeerStart[cell + 1] && !mContradiction; p++) {
+			eliminate(mLayout.mPeers[p], bit);
+		}
+		int cage = mLayout.mCellCages[cell];
+		if (cage >= 0 && !mContradiction) {
+			updateCage(cage);
+		}
+	}
+
+	private void eliminate(int cell, int mask) {
+		int candidates = mCandidates[cell];
+		if ((candidates & mask) == 0) {
+			return;
+		}
+		if (mValues[cell] != 0) {
+			// value of assigned cell is not possible any more
+			fail();
+			return;
+		}
+
+		save(cell);
+		candidates &= ~mask;
+		mCandidates[cell] = candidates;
+		if (candidates == 0) {
+			fail();
+			return;
+		}
+		if ((candidates & (candidates - 1)) == 0) {
+			enqueue(cell, Integer.numberOfTrailingZeros(candidates) + 1);
+		}
+		markUnitsDirty(cell);
+	}
+
+	private void markUnitsDirty(int cell) {
+		for (int k = mLayout.mCellUnitStart[cell]; k < mLayout.mCellUnitStart[cell + 1]; k++) {
+			int unit = mLayout.mCellUnits[k];
+			if (!mUnitDirty[unit]) {
+				mUnitDirty[unit] = true;
+				mDirtyUnits[mDirtyCount++] = unit;
+			}
+		}
+	}
+
+	/**
+	 * Checks the unit for values, which have no place left in it (contradiction) or just one
+	 * place in an unassigned cell (hidden single).
+	 */
+	private void checkHiddenSingles(int unit) {
+		int start = mLayout.mUnitStart[unit];
+		int end = mLayout.mUnitStart[unit + 1];
+		int once = 0;
+		int twice = 0;
+		int assigned = 0;
+		for (int i = start; i < end; i++) {
+			int cell = mLayout.mUnitCells[i];
+			int candidates = mCandidates[cell];
+			twice |= once & candidates;
+			once |= candidates;
+			if (mValues[cell] != 0) {
+				assigned |= candidates;
+			}
+		}
+		if (once != mLayout.mAllValues) {
+			fail();
+			return;
+		}
+
+		int singles = once & ~twice & ~assigned;
+		while (singles != 0 && !mContradiction) {
+			int bit = singles & -singles;
+			singles &= singles - 1;
+			for (int i = start; i < end; i++) {
+				int cell = mLayout.mUnitCells[i];
+				if ((mCandidates[cell] & bit) != 0) {
+					enqueue(cell, Integer.numberOfTrailingZeros(bit) + 1);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Limits empty cells of the cage to values of combinations, which can still complete it.
+	 */
+	private void updateCage(int cage) {
+		int remaining = mLayout.mCageSums[cage];
+		int empty = 0;
+		int used = 0;
+		int start = mLayout.mCageStart[cage];
+		int end = mLayout.mCageStart[cage + 1];
+		for (int i = start; i < end; i++) {
+			int value = mValues[mLayout.mCageCells[i]];
+			if (value == 0) {
+				empty++;
+			} else {
+				int bit = 1 << (value - 1);
+				if ((used & bit) != 0) {
+					fail();
+					return;
+				}
+				used |= bit;
+				remaining -= value;
+			}
+		}
+
+		if (!KillerCombinations.isPossible(empty, remaining, used, mLayout.mAllValues)) {
+			fail();
+			return;
+		}
+		if (empty > 0) {
+			int forbidden = mLayout.mAllValues & ~KillerCombinations.getAllowedValues(empty, remaining, used, mLayout.mAllValues);
+			for (int i = start; i < end && !mContradiction; i++) {
+				int cell = mLayout.mCageCells[i];
+				if (mValues[cell] == 0) {
+					eliminate(cell, forbidden);
+				}
+			}
+		}
+	}
+
+	private void save(int cell) {
+		mTrailCells[mTrailTop] = cell;
+		mTrailCandidates[mTrailTop] = mCandidates[cell];
+		mTrailValues[mTrailTop] = mValues[cell];
+		mTrailTop++;
+	}
+
+	private void fail() {
+		if (!mContradiction) {
+			mContradiction = true;
+			mTrailCells[mTrailTop] = -1;
+			mTrailTop++;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.Random;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Generates new puzzles of given difficulty level (see {@link DifficultyRater}).
+ * <p/>
+ * Random full grid is found by the {@link Propagator} search trying values in random order.
+ * Clues are then removed one by one in random order, clue is kept only when the puzzle
+ * without it would have another solution, which gives minimal puzzle with unique solution.
+ * Each check is a single search for a solution with the removed value excluded from its
+ * cell, which is cheaper than counting solutions. When the minimal puzzle is harder than
+ * requested, removed clues are given back until it falls into the level; puzzles easier
+ * than requested are thrown away.
+ * <p/>
+ * Layouts with killer cages are not supported. Instance is not thread safe, use one
+ * generator per thread (see {@link ParallelGenerator}).
+ */
+public class PuzzleGenerator {
+
+	// Search nodes after which generation of the full grid starts again.
+	private static final int FULL_GRID_NODE_LIMIT = 10000;
+	// Search nodes after which the clue is kept, because uniqueness cannot be decided.
+	private static final int UNIQUE_CHECK_NODE_LIMIT = 10000;
+
+	private final BoardLayout mLayout;
+	private final Random mRandom;
+	private final Propagator mPropagator;
+	private final DifficultyRater mRater = new DifficultyRater();
+
+	private final byte[] mSolution;
+	private final byte[] mPuzzle;
+	// cells in the order in which their clues are removed
+	private final int[] mOrder;
+
+	private int mRating;
+
+	public PuzzleGenerator(BoardLayout layout) {
+		this(layout, new Random());
+	}
+
+	public PuzzleGenerator(BoardLayout layout, Random random) {
+		if (layout.getCageCount() > 0) {
+			throw new IllegalArgumentException("Puzzles with killer cages cannot be generated.");
+		}
+		mLayout = layout;
+		mRandom = random;
+		mPropagator = new Propagator(CompiledLayout.get(layout));
+		int cellCount = layout.getCellCount();
+		mSolution = new byte[cellCount];
+		mPuzzle = new byte[cellCount];
+		mOrder = new int[cellCount];
+	}
+
+	public BoardLayout getLayout() {
+		return mLayout;
+	}
+
+	/**
+	 * Makes one attempt to generate puzzle of given level. Attempt takes few milliseconds
+	 * for classic sudoku, but number of attempts needed depends on level (puzzles, which
+	 * cannot be solved without guessing, are the rarest ones).
+	 *
+	 * @param level One of LEVEL_* constants of {@link DifficultyRater} except LEVEL_INVALID.
+	 * @return Generated puzzle, null if the attempt has not hit the level.
+	 */
+	public CellCollection generate(int level) {
+		if (level <= DifficultyRater.LEVEL_INVALID || level > DifficultyRater.LEVEL_EXTREME) {
+			throw new IllegalArgumentException("Invalid level: " + level);
+		}
+
+		fillGrid();
+		int removed = removeClues();
+		mRating = mRater.rateUnique(mLayout, mPuzzle);
+		// give clues back in reverse order of removal, until the puzzle is easy enough
+		while (DifficultyRater.getLevel(mRating) > level && removed > 0) {
+			int cell = mOrder[--removed];
+			mPuzzle[cell] = mSolution[cell];
+			mRating = mRater.rateUnique(mLayout, mPuzzle);
+		}
+		if (DifficultyRater.getLevel(mRating) != level) {
+			return null;
+		}
+
+		CellCollection cells = CellCollection.createEmpty(mLayout);
+		cells.beginChange();
+		for (int i = 0; i < mPuzzle.length; i++) {
+			if (mPuzzle[i] != 0) {
+				cells.getCell(i).setValue(mPuzzle[i]);
+				cells.getCell(i).setEditable(false);
+			}
+		}
+		cells.endChange();
+		return cells;
+	}
+
+	/**
+	 * Returns difficulty rating of the last generated puzzle.
+	 *
+	 * @return
+	 */
+	public int getRating() {
+		return mRating;
+	}
+
+	private void fillGrid() {
+		do {
+			mPropagator.reset();
+		} while (mPropagator.solveRandomly(mSolution, mRandom, FULL_GRID_NODE_LIMIT) != Propagator.SOLVED);
+	}
+
+	/**
+	 * Removes clues from the full grid in random order, while the puzzle keeps unique
+	 * solution. Removed cells are at the beginning of mOrder.
+	 *
+	 * @return Number of removed clues.
+	 */
+	private int removeClues() {
+		int cellCount = mPuzzle.length;
+		System.arraycopy(mSolution, 0, mPuzzle, 0, cellCount);
+		for (int i = 0; i < cellCount; i++) {
+			int j = mRandom.nextInt(i + 1);
+			mOrder[i] = mOrder[j];
+			mOrder[j] = i;
+		}
+
+		int removed = 0;
+		for (int i = 0; i < cellCount; i++) {
+			int cell = mOrder[i];
+			mPuzzle[cell] = 0;
+			if (hasOtherSolution(cell)) {
+				mPuzzle[cell] = mSolution[cell];
+			} else {
+				mOrder[i] = mOrder[removed];
+				mOrder[removed++] = cell;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns true, if the current puzzle has solution with other value in the cell than
+	 * the full grid has (or if it cannot be decided in time).
+	 */
+	private boolean hasOtherSolution(int cell) {
+		mPropagator.reset();
+		if (!mPropagator.assign(mPuzzle) || !mPropagator.exclude(cell, mSolution[cell])) {
+			return false;
+		}
+		return mPropagator.solve(null, UNIQUE_CHECK_NODE_LIMIT) != Propagator.UNSOLVABLE;
+	}
+}
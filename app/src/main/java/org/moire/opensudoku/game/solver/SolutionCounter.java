@@ -0,0 +1,93 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Checks whether puzzles have exactly one solution. Only read-only cells (givens) are taken
+ * into account, so saved games can be checked as well.
+ * <p/>
+ * Counter keeps one {@link SudokuSolver} per board layout, so checking many puzzles (e.g. the
+ * whole imported collection) allocates nothing per puzzle except of deserialized cells.
+ * Killer puzzles are the exception, each of them has its own layout and solver.
+ * Instance is not thread safe.
+ */
+public class SolutionCounter {
+
+	/**
+	 * Search has been given up before the answer was found.
+	 */
+	public static final int UNKNOWN = -1;
+	public static final int NO_SOLUTION = 0;
+	public static final int UNIQUE = 1;
+	public static final int MULTIPLE = 2;
+
+	private final Map<BoardLayout, SudokuSolver> mSolvers = new HashMap<BoardLayout, SudokuSolver>();
+	private int mNodeLimit = SolverEngine.DEFAULT_NODE_LIMIT;
+
+	/**
+	 * Sets number of search nodes per puzzle after which check gives up and returns
+	 * {@link #UNKNOWN}.
+	 *
+	 * @param nodeLimit
+	 */
+	public void setNodeLimit(int nodeLimit) {
+		mNodeLimit = nodeLimit;
+		for (SudokuSolver solver : mSolvers.values()) {
+			solver.setNodeLimit(nodeLimit);
+		}
+	}
+
+	/**
+	 * Checks puzzle given by read-only cells of the collection.
+	 *
+	 * @param cells
+	 * @return One of {@link #NO_SOLUTION}, {@link #UNIQUE}, {@link #MULTIPLE} and {@link #UNKNOWN}.
+	 */
+	public int check(CellCollection cells) {
+		return getSolver(cells.getLayout()).countPuzzleSolutions(cells, 2);
+	}
+
+	/**
+	 * Checks puzzle serialized by {@link CellCollection#serialize()} (or in any other format
+	 * accepted by {@link CellCollection#deserialize(String)}).
+	 *
+	 * @param data
+	 * @return One of {@link #NO_SOLUTION}, {@link #UNIQUE}, {@link #MULTIPLE} and {@link #UNKNOWN}.
+	 */
+	public int check(String data) {
+		return check(CellCollection.deserialize(data));
+	}
+
+	/**
+	 * Checks all given puzzles.
+	 *
+	 * @param data Serialized puzzles, see {@link #check(String)}.
+	 * @return Result of the check of each puzzle in the same order as puzzles.
+	 */
+	public int[] checkAll(List<String> data) {
+		int[] results = new int[data.size()];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = check(data.get(i));
+		}
+		return results;
+	}
+
+	private SudokuSolver getSolver(BoardLayout layout) {
+		SudokuSolver solver = mSolvers.get(layout);
+		if (solver == null) {
+			solver = new SudokuSolver(layout);
+			solver.setNodeLimit(mNodeLimit);
+			// killer layouts are different for each puzzle, keeping their solvers would
+			// only hold memory
+			if (layout.getCageCount() == 0) {
+				mSolvers.put(layout, solver);
+			}
+		}
+		return solver;
+	}
+}
@@ -0,0 +1,337 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.moire.opensudoku.game.BoardSnapshot;
+import org.moire.opensudoku.game.CellCollection;
+import org.moire.opensudoku.game.CellCollection.ChangeSet;
+
+/**
+ * Watches values entered into the {@link CellCollection} and checks on a background thread,
+ * whether the board can still be solved.
+ * <p/>
+ * Monitor keeps a {@link Propagator} mirroring the board. Entered values are kept on a stack
+ * together with the propagator's trail mark taken before each of them, so when a value is
+ * entered only its consequences are propagated, and when a value is changed or removed the
+ * propagator is returned to the mark of that value and only the values entered after it are
+ * applied again. Full search is needed only when propagation alone does not decide and the
+ * board does not agree with the last known solution, and it is bounded by a node limit.
+ */
+public class SolvabilityMonitor {
+
+	public static final int STATE_UNKNOWN = 0;
+	public static final int STATE_SOLVABLE = 1;
+	public static final int STATE_UNSOLVABLE = 2;
+
+	private static final int SEARCH_NODE_LIMIT = 20000;
+
+	private final CellCollection mCells;
+	private final AtomicReference<Move> mPendingMove = new AtomicReference<Move>();
+	private ExecutorService mExecutor;
+	private volatile OnResultListener mListener;
+	private int mMoveCount;
+
+	// State below is accessed only by the background thread.
+	private final Propagator mPropagator;
+	private final int[] mStackCells;
+	private final byte[] mStackValues;
+	private final int[] mStackMarks;
+	private final int[] mStackPos;
+	private int mStackSize;
+	private final int[] mSurvivors;
+	private boolean mInitialized;
+	private byte[] mBaseSolution;
+	private byte[] mSolution;
+	private final byte[] mSearchSolution;
+	private int mLastSolvableMove;
+
+	private final CellCollection.OnChangeListener mChangeListener = new CellCollection.OnChangeListener() {
+		@Override
+		public void onChange(ChangeSet changes) {
+			if (changes.hasChanges(ChangeSet.CHANGE_VALUE)) {
+				submit(++mMoveCount);
+			}
+		}
+	};
+
+	public SolvabilityMonitor(CellCollection cells) {
+		mCells = cells;
+		mPropagator = new Propagator(CompiledLayout.get(cells.getLayout()));
+
+		int cellCount = cells.getCellCount();
+		mStackCells = new int[cellCount];
+		mStackValues = new byte[cellCount];
+		mStackMarks = new int[cellCount];
+		mStackPos = new int[cellCount];
+		for (int i = 0; i < cellCount; i++) {
+			mStackPos[i] = -1;
+		}
+		mSurvivors = new int[cellCount];
+		mSearchSolution = new byte[cellCount];
+	}
+
+	/**
+	 * Sets listener notified after each check. Listener is called on the background thread.
+	 *
+	 * @param listener
+	 */
+	public void setOnResultListener(OnResultListener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Starts watching the board and checks its current state. Must be called on the thread
+	 * which modifies the board.
+	 */
+	public void start() {
+		if (mExecutor != null) {
+			return;
+		}
+		mExecutor = Executors.newSingleThreadExecutor();
+		mCells.addOnChangeListener(mChangeListener);
+		submit(mMoveCount);
+	}
+
+	/**
+	 * Stops watching the board. Propagation state is kept, so checks after next {@link #start()}
+	 * continue from it.
+	 */
+	public void stop() {
+		if (mExecutor == null) {
+			return;
+		}
+		mCells.removeOnChangeListener(mChangeListener);
+		mExecutor.shutdownNow();
+		mExecutor = null;
+		mPendingMove.set(null);
+	}
+
+	private void submit(int moveNumber) {
+		// only the latest state is checked, tasks submitted for older states find nothing to do
+		mPendingMove.set(new Move(mCells.createSnapshot(), moveNumber));
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Move move = mPendingMove.getAndSet(null);
+				if (move != null) {
+					Result result = check(move);
+					OnResultListener listener = mListener;
+					if (listener != null) {
+						listener.onResult(result);
+					}
+				}
+			}
+		});
+	}
+
+	private synchronized Result check(Move move) {
+		BoardSnapshot snapshot = move.mSnapshot;
+		if (!mInitialized) {
+			initialize(snapshot);
+		}
+		update(snapshot);
+
+		int state;
+		if (mPropagator.hasContradiction()) {
+			state = STATE_UNSOLVABLE;
+		} else if (mPropagator.isComplete() || agreesWith(mSolution)) {
+			state = STATE_SOLVABLE;
+		} else {
+			int result = mPropagator.solve(mSearchSolution, SEARCH_NODE_LIMIT);
+			if (result == Propagator.SOLVED) {
+				if (mSolution == null) {
+					mSolution = new byte[mSearchSolution.length];
+				}
+				System.arraycopy(mSearchSolution, 0, mSolution, 0, mSearchSolution.length);
+				state = STATE_SOLVABLE;
+			} else {
+				state = result == Propagator.UNSOLVABLE ? STATE_UNSOLVABLE : STATE_UNKNOWN;
+			}
+		}
+
+		if (state == STATE_SOLVABLE) {
+			mLastSolvableMove = move.mNumber;
+		}
+		int movesSinceSolvable = state == STATE_UNSOLVABLE ? move.mNumber - mLastSolvableMove : 0;
+		return new Result(snapshot, state, movesSinceSolvable, findContradictingCells(snapshot, state));
+	}
+
+	/**
+	 * Applies given values and computes solution of the puzzle itself, which is used to find
+	 * wrong values later.
+	 */
+	private void initialize(BoardSnapshot snapshot) {
+		mPropagator.reset();
+		int cellCount = mStackPos.length;
+		byte[] givens = new byte[cellCount];
+		for (int i = 0; i < cellCount; i++) {
+			if (!snapshot.isEditable(i)) {
+				givens[i] = (byte) snapshot.getValue(i);
+			}
+		}
+		mPropagator.assign(givens);
+		if (mPropagator.solve(mSearchSolution, SEARCH_NODE_LIMIT * 10) == Propagator.SOLVED) {
+			mBaseSolution = new byte[cellCount];
+			System.arraycopy(mSearchSolution, 0, mBaseSolution, 0, cellCount);
+			mSolution = new byte[cellCount];
+			System.arraycopy(mSearchSolution, 0, mSolution, 0, cellCount);
+		}
+		mInitialized = true;
+	}
+
+	/**
+	 * Brings propagator in line with entered values of the snapshot.
+	 */
+	private void update(BoardSnapshot snapshot) {
+		// find the lowest entry of the stack, which has been changed or removed
+		int lowest = mStackSize;
+		for (int i = 0; i < mStackSize; i++) {
+			if (snapshot.getValue(mStackCells[i]) != mStackValues[i]) {
+				lowest = i;
+				break;
+			}
+		}
+
+		if (lowest < mStackSize) {
+			mPropagator.undo(mStackMarks[lowest]);
+			int survivorCount = 0;
+			for (int i = lowest; i < mStackSize; i++) {
+				int cell = mStackCells[i];
+				mStackPos[cell] = -1;
+				if (snapshot.getValue(cell) == mStackValues[i]) {
+					mSurvivors[survivorCount++] = cell;
+				}
+			}
+			mStackSize = lowest;
+			for (int i = 0; i < survivorCount; i++) {
+				push(mSurvivors[i], snapshot.getValue(mSurvivors[i]));
+			}
+		}
+
+		int cellCount = mStackPos.length;
+		for (int i = 0; i < cellCount; i++) {
+			int value = snapshot.getValue(i);
+			if (value != 0 && mStackPos[i] < 0 && snapshot.isEditable(i)) {
+				push(i, value);
+			}
+		}
+	}
+
+	private void push(int cell, int value) {
+		mStackCells[mStackSize] = cell;
+		mStackValues[mStackSize] = (byte) value;
+		mStackMarks[mStackSize] = mPropagator.mark();
+		mStackPos[cell] = mStackSize;
+		mStackSize++;
+		mPropagator.assign(cell, value);
+	}
+
+	private boolean agreesWith(byte[] solution) {
+		if (solution == null) {
+			return false;
+		}
+		for (int i = 0; i < mStackSize; i++) {
+			if (solution[mStackCells[i]] != mStackValues[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int[] findContradictingCells(BoardSnapshot snapshot, int state) {
+		if (state != STATE_UNSOLVABLE || mBaseSolution == null) {
+			return new int[0];
+		}
+		int count = 0;
+		for (int i = 0; i < mStackSize; i++) {
+			if (mBaseSolution[mStackCells[i]] != mStackValues[i]) {
+				count++;
+			}
+		}
+		int[] cells = new int[count];
+		count = 0;
+		for (int i = 0; i < mStackSize; i++) {
+			if (mBaseSolution[mStackCells[i]] != mStackValues[i]) {
+				cells[count++] = mStackCells[i];
+			}
+		}
+		return cells;
+	}
+
+	private static class Move {
+		final BoardSnapshot mSnapshot;
+		final int mNumber;
+
+		Move(BoardSnapshot snapshot, int number) {
+			mSnapshot = snapshot;
+			mNumber = number;
+		}
+	}
+
+	/**
+	 * Result of the check of one state of the board.
+	 */
+	public static class Result {
+		private final BoardSnapshot mSnapshot;
+		private final int mState;
+		private final int mMovesSinceSolvable;
+		private final int[] mContradictingCells;
+
+		Result(BoardSnapshot snapshot, int state, int movesSinceSolvable, int[] contradictingCells) {
+			mSnapshot = snapshot;
+			mState = state;
+			mMovesSinceSolvable = movesSinceSolvable;
+			mContradictingCells = contradictingCells;
+		}
+
+		/**
+		 * Returns checked state of the board.
+		 *
+		 * @return
+		 */
+		public BoardSnapshot getSnapshot() {
+			return mSnapshot;
+		}
+
+		/**
+		 * Returns one of STATE_* constants. STATE_UNKNOWN means that search has been given up
+		 * before the answer was found.
+		 *
+		 * @return
+		 */
+		public int getState() {
+			return mState;
+		}
+
+		/**
+		 * Returns number of moves made since the board was solvable for the last time (1 means
+		 * that the last move made the board unsolvable), 0 if the board is not unsolvable.
+		 *
+		 * @return
+		 */
+		public int getMovesSinceSolvable() {
+			return mMovesSinceSolvable;
+		}
+
+		/**
+		 * Returns indexes (see {@link org.moire.opensudoku.game.BoardLayout}) of entered values,
+		 * which differ from the solution of the puzzle, when the board is unsolvable.
+		 *
+		 * @return
+		 */
+		public int[] getContradictingCells() {
+			return mContradictingCells;
+		}
+	}
+
+	public interface OnResultListener {
+		/**
+		 * Called on the background thread after each check.
+		 *
+		 * @param result
+		 */
+		void onResult(Result result);
+	}
+}
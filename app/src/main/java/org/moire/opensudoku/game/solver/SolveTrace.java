@@ -0,0 +1,201 @@
+package org.moire.opensudoku.game.solver;
+
+/**
+ * Steps made by {@link LogicalSolver}, in the order they were applied.
+ * <p/>
+ * Each step records used technique, cells which prove it (e.g. cells of a naked pair or
+ * base cells of a fish), values involved and candidates it eliminated. Placed value is
+ * recorded for singles only, eliminations it causes in peers are not listed. All steps are
+ * stored in a few primitive arrays, which grow as needed and are reused after
+ * {@link #clear()}.
+ */
+public final class SolveTrace {
+
+	private int mStepCount;
+	private int[] mTechniques = new int[64];
+	private int[] mUnits = new int[64];
+	private int[] mValues = new int[64];
+	private int[] mDigits = new int[64];
+	private int[] mCellStart = new int[65];
+	private int[] mEliminationStart = new int[65];
+
+	private int[] mCells = new int[256];
+	// eliminated candidate is stored as cell << 5 | (value - 1)
+	private int[] mEliminations = new int[256];
+
+	/**
+	 * Removes all steps.
+	 */
+	public void clear() {
+		mStepCount = 0;
+	}
+
+	public int getStepCount() {
+		return mStepCount;
+	}
+
+	/**
+	 * Returns technique used by the step, one of {@link LogicalSolver} TECHNIQUE_* constants.
+	 *
+	 * @param step
+	 * @return
+	 */
+	public int getTechnique(int step) {
+		return mTechniques[step];
+	}
+
+	/**
+	 * Returns unit (see {@link org.moire.opensudoku.game.BoardLayout#getUnitCell(int, int)})
+	 * the step works in, or -1 if the step uses several units (fish).
+	 *
+	 * @param step
+	 * @return
+	 */
+	public int getUnit(int step) {
+		return mUnits[step];
+	}
+
+	/**
+	 * Returns value placed by the step, 0 if the step only eliminates candidates.
+	 *
+	 * @param step
+	 * @return
+	 */
+	public int getValue(int step) {
+		return mValues[step];
+	}
+
+	/**
+	 * Returns bit mask of values the step works with (value <code>v</code> is represented
+	 * by bit <code>1 << (v - 1)</code>).
+	 *
+	 * @param step
+	 * @return
+	 */
+	public int getDigits(int step) {
+		return mDigits[step];
+	}
+
+	public int getCellCount(int step) {
+		return mCellStart[step + 1] - mCellStart[step];
+	}
+
+	public int getCell(int step, int i) {
+		return mCells[mCellStart[step] + i];
+	}
+
+	public int getEliminationCount(int step) {
+		return mEliminationStart[step + 1] - mEliminationStart[step];
+	}
+
+	/**
+	 * Returns cell, from which i-th candidate has been eliminated.
+	 *
+	 * @param step
+	 * @param i
+	 * @return
+	 */
+	public int getEliminationCell(int step, int i) {
+		return mEliminations[mEliminationStart[step] + i] >>> 5;
+	}
+
+	/**
+	 * Returns i-th eliminated candidate value.
+	 *
+	 * @param step
+	 * @param i
+	 * @return
+	 */
+	public int getEliminationValue(int step, int i) {
+		return (mEliminations[mEliminationStart[step] + i] & 31) + 1;
+	}
+
+	/**
+	 * Returns the hardest (highest) technique used by any step, -1 if there are no steps.
+	 *
+	 * @return
+	 */
+	public int getHardestTechnique() {
+		int hardest = -1;
+		for (int i = 0; i < mStepCount; i++) {
+			if (mTechniques[i] > hardest) {
+				hardest = mTechniques[i];
+			}
+		}
+		return hardest;
+	}
+
+	/**
+	 * Returns number of steps, which used given technique.
+	 *
+	 * @param technique
+	 * @return
+	 */
+	public int getTechniqueCount(int technique) {
+		int count = 0;
+		for (int i = 0; i < mStepCount; i++) {
+			if (mTechniques[i] == technique) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Starts new step, its cells and eliminations are added by following calls of
+	 * {@link #addCell(int)} and {@link #addElimination(int, int)}.
+	 */
+	void beginStep(int technique, int unit, int value, int digits) {
+		if (mStepCount == mTechniques.length) {
+			int capacity = mStepCount * 2;
+			mTechniques = grow(mTechniques, capacity);
+			mUnits = grow(mUnits, capacity);
+			mValues = grow(mValues, capacity);
+			mDigits = grow(mDigits, capacity);
+			mCellStart = grow(mCellStart, capacity + 1);
+			mEliminationStart = grow(mEliminationStart, capacity + 1);
+		}
+		mTechniques[mStepCount] = technique;
+		mUnits[mStepCount] = unit;
+		mValues[mStepCount] = value;
+		mDigits[mStepCount] = digits;
+		int cellEnd = mStepCount == 0 ? 0 : mCellStart[mStepCount];
+		int eliminationEnd = mStepCount == 0 ? 0 : mEliminationStart[mStepCount];
+		mStepCount++;
+		mCellStart[mStepCount - 1] = cellEnd;
+		mCellStart[mStepCount] = cellEnd;
+		mEliminationStart[mStepCount - 1] = eliminationEnd;
+		mEliminationStart[mStepCount] = eliminationEnd;
+	}
+
+	void addCell(int cell) {
+		int end = mCellStart[mStepCount];
+		if (end == mCells.length) {
+			mCells = grow(mCells, end * 2);
+		}
+		mCells[end] = cell;
+		mCellStart[mStepCount] = end + 1;
+	}
+
+	void addElimination(int cell, int value) {
+		int end = mEliminationStart[mStepCount];
+		if (end == mEliminations.length) {
+			mEliminations = grow(mEliminations, end * 2);
+		}
+		mEliminations[end] = cell << 5 | (value - 1);
+		mEliminationStart[mStepCount] = end + 1;
+	}
+
+	/**
+	 * Removes the last step (used when a candidate step turns out to eliminate nothing).
+	 */
+	void discardStep() {
+		mStepCount--;
+	}
+
+	private static int[] grow(int[] array, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -0,0 +1,73 @@
+package org.moire.opensudoku.game.solver;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Solver of puzzles of one {@link BoardLayout}. Implementations differ in the algorithm,
+ * so callers can choose the one which is the fastest for their workload:
+ * <ul>
+ * <li>{@link SudokuSolver} - constraint propagation on candidate bit masks with backtracking,
+ * the default choice.</li>
+ * <li>{@link DlxSolver} - Dancing Links exact cover search.</li>
+ * </ul>
+ * Engines can be reused for any number of puzzles, but they are not thread safe.
+ */
+public interface SolverEngine {
+
+	/**
+	 * Default maximum number of search nodes, see {@link #setNodeLimit(int)}.
+	 */
+	int DEFAULT_NODE_LIMIT = 1000000;
+
+	BoardLayout getLayout();
+
+	/**
+	 * Sets maximum number of search nodes, after which solver gives up.
+	 *
+	 * @param nodeLimit
+	 */
+	void setNodeLimit(int nodeLimit);
+
+	int getNodeLimit();
+
+	/**
+	 * Solves puzzle given by all values of the collection (both read-only and entered).
+	 * Collection is not changed.
+	 *
+	 * @param cells Cells with the same layout as the solver's.
+	 * @return
+	 */
+	SolverResult solve(CellCollection cells);
+
+	/**
+	 * Solves puzzle given as a string with one character per cell (81 characters for classic
+	 * board), in order of cell indexes (see {@link BoardLayout}). Values are represented as
+	 * in {@link BoardLayout#parseValue(char)}, any other character (usually '0' or '.') is
+	 * an empty cell.
+	 *
+	 * @param puzzle
+	 * @return
+	 */
+	SolverResult solve(String puzzle);
+
+	/**
+	 * Counts solutions of the puzzle given by all values of the collection, search stops
+	 * as soon as limit is reached. Use limit 2 to find out whether puzzle has unique solution.
+	 *
+	 * @param cells Cells with the same layout as the solver's.
+	 * @param limit
+	 * @return Number of solutions (at most limit), -1 if node limit has been reached before.
+	 */
+	int countSolutions(CellCollection cells, int limit);
+
+	/**
+	 * Counts solutions of the puzzle given as a string (see {@link #solve(String)}), search
+	 * stops as soon as limit is reached.
+	 *
+	 * @param puzzle
+	 * @param limit
+	 * @return Number of solutions (at most limit), -1 if node limit has been reached before.
+	 */
+	int countSolutions(String puzzle, int limit);
+}
@@ -0,0 +1,94 @@
+package org.moire.opensudoku.game.solver;
+
+import org.moire.opensudoku.game.BoardLayout;
+
+/**
+ * Result of solving one puzzle together with search statistics.
+ */
+public class SolverResult {
+
+	public static final int STATUS_SOLVED = 0;
+	public static final int STATUS_NO_SOLUTION = 1;
+	/**
+	 * Search has been given up after node limit has been reached.
+	 */
+	public static final int STATUS_GAVE_UP = 2;
+
+	private final int mStatus;
+	private final byte[] mSolution;
+	private final int mNodeCount;
+	private final int mGuessCount;
+	private final long mTimeNanos;
+
+	SolverResult(int status, byte[] solution, int nodeCount, int guessCount, long timeNanos) {
+		mStatus = status;
+		mSolution = solution;
+		mNodeCount = nodeCount;
+		mGuessCount = guessCount;
+		mTimeNanos = timeNanos;
+	}
+
+	/**
+	 * Returns one of STATUS_* constants.
+	 *
+	 * @return
+	 */
+	public int getStatus() {
+		return mStatus;
+	}
+
+	/**
+	 * Returns values of the solution indexed by cell index, null if puzzle has not been
+	 * solved.
+	 *
+	 * @return
+	 */
+	public byte[] getSolution() {
+		return mSolution;
+	}
+
+	/**
+	 * Returns solution in the same format as the solved string, null if puzzle has not
+	 * been solved.
+	 *
+	 * @return
+	 */
+	public String getSolutionString() {
+		if (mSolution == null) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(mSolution.length);
+		for (byte value : mSolution) {
+			sb.append(BoardLayout.getValueLabel(value));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns number of search nodes (cells where search had to guess), 0 for puzzles
+	 * solved by singles alone.
+	 *
+	 * @return
+	 */
+	public int getNodeCount() {
+		return mNodeCount;
+	}
+
+	/**
+	 * Returns number of values tried in search nodes.
+	 *
+	 * @return
+	 */
+	public int getGuessCount() {
+		return mGuessCount;
+	}
+
+	/**
+	 * Returns time spent by solving, in nanoseconds.
+	 *
+	 * @return
+	 */
+	public long getTimeNanos() {
+		return mTimeNanos;
+	}
+}
@@ -0,0 +1,120 @@
+package org.moire.opensudoku.game.solver;
+
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.Cell;
+import org.moire.opensudoku.game.CellCollection;
+
+/**
+ * Solves puzzles of any {@link BoardLayout}.
+ * <p/>
+ * Solver works on candidate bit masks of the {@link Propagator}: values are propagated to
+ * peers, naked and hidden singles are filled in, and when nothing more can be deduced, search
+ * branches on the cell with the fewest candidates. Search backtracks by undoing the
+ * propagator's trail, so nothing is allocated inside the search loop. Solver instance can
+ * be reused for any number of puzzles of its layout, but it is not thread safe.
+ * <p/>
+ * Example:
+ * <pre>
+ * SudokuSolver solver = new SudokuSolver(BoardLayout.CLASSIC);
+ * SolverResult result = solver.solve("003020600900305001001806400...");
+ * if (result.getStatus() == SolverResult.STATUS_SOLVED) {
+ *     String solution = result.getSolutionString();
+ * }
+ * </pre>
+ */
+public final class SudokuSolver extends AbstractSolverEngine {
+
+	// Search nodes after which the puzzle is considered too hard to be solved.
+	private static final int UNIQUE_SOLUTION_NODE_LIMIT = 100000;
+
+	private final Propagator mPropagator;
+	private final byte[] mSolution;
+
+	public SudokuSolver() {
+		this(BoardLayout.CLASSIC);
+	}
+
+	public SudokuSolver(BoardLayout layout) {
+		super(layout);
+		mPropagator = new Propagator(CompiledLayout.get(layout));
+		mSolution = new byte[layout.getCellCount()];
+	}
+
+	@Override
+	SolverResult solve(byte[] values, long startTime) {
+		mPropagator.reset();
+		mPropagator.assign(values);
+		int status;
+		switch (mPropagator.solve(mSolution, getNodeLimit())) {
+			case Propagator.SOLVED:
+				status = SolverResult.STATUS_SOLVED;
+				break;
+			case Propagator.UNSOLVABLE:
+				status = SolverResult.STATUS_NO_SOLUTION;
+				break;
+			default:
+				status = SolverResult.STATUS_GAVE_UP;
+				break;
+		}
+		return new SolverResult(status, status == SolverResult.STATUS_SOLVED ? mSolution.clone() : null,
+				mPropagator.getNodeCount(), mPropagator.getGuessCount(), System.nanoTime() - startTime);
+	}
+
+	@Override
+	int countSolutions(byte[] values, int limit) {
+		mPropagator.reset();
+		mPropagator.assign(values);
+		return mPropagator.countSolutions(null, limit, getNodeLimit());
+	}
+
+	/**
+	 * Finds solution of the puzzle given by values of read-only cells of the collection
+	 * (values entered by the player are ignored).
+	 *
+	 * @param cells
+	 * @return Values of the solution indexed by cell index (see
+	 * {@link BoardLayout}), null if the puzzle has no solution, more than one solution or
+	 * it is too hard to be solved.
+	 */
+	public static byte[] findUniqueSolution(CellCollection cells) {
+		return findUniqueSolution(cells.getLayout(), getGivens(cells));
+	}
+
+	/**
+	 * Finds solution of the puzzle given by values of the layout's cells. Method does not
+	 * touch any {@link CellCollection}, so it can be called on a background thread.
+	 *
+	 * @param layout
+	 * @param givens Values of the puzzle indexed by cell index, 0 for empty cells.
+	 * @return Values of the solution, null if the puzzle has no solution, more than one
+	 * solution or it is too hard to be solved.
+	 */
+	public static byte[] findUniqueSolution(BoardLayout layout, byte[] givens) {
+		Propagator propagator = new Propagator(CompiledLayout.get(layout));
+		if (!propagator.assign(givens)) {
+			return null;
+		}
+
+		byte[] solution = new byte[givens.length];
+		return propagator.countSolutions(solution, 2, UNIQUE_SOLUTION_NODE_LIMIT) == 1 ? solution : null;
+	}
+
+	/**
+	 * Returns values of read-only cells of the collection indexed by cell index, values
+	 * entered by the player are 0.
+	 *
+	 * @param cells
+	 * @return
+	 */
+	public static byte[] getGivens(CellCollection cells) {
+		int cellCount = cells.getCellCount();
+		byte[] givens = new byte[cellCount];
+		for (int i = 0; i < cellCount; i++) {
+			Cell cell = cells.getCell(i);
+			if (!cell.isEditable()) {
+				givens[i] = (byte) cell.getValue();
+			}
+		}
+		return givens;
+	}
+}
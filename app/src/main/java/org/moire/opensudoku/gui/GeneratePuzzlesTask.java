@@ -0,0 +1,122 @@
+package org.moire.opensudoku.gui;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Process;
+import android.util.Log;
+import org.moire.opensudoku.db.SudokuDatabase;
+import org.moire.opensudoku.game.BoardLayout;
+import org.moire.opensudoku.game.solver.ParallelGenerator;
+import org.moire.opensudoku.utils.Const;
+
+/**
+ * Generates new puzzles of given level into the folder. Puzzles are generated on all CPU
+ * cores by {@link ParallelGenerator} and stored as they come, in transactions of
+ * {@link #BATCH_SIZE} puzzles, so puzzles generated before the task is cancelled are kept.
+ * <p/>
+ * Task should be cancelled by <code>cancel(true)</code>, generator stops when this thread
+ * is interrupted.
+ */
+public class GeneratePuzzlesTask extends AsyncTask<Void, Integer, Integer> {
+
+	private static final int BATCH_SIZE = 10;
+
+	private Context mContext;
+	private long mFolderID;
+	private int mLevel;
+	private int mCount;
+	private volatile int mGeneratedCount;
+
+	private OnGenerationFinishedListener mOnGenerationFinishedListener;
+
+	/**
+	 * @param context
+	 * @param folderID Primary key of folder, into which puzzles are stored.
+	 * @param level    One of LEVEL_* constants of {@link org.moire.opensudoku.game.solver.DifficultyRater}.
+	 * @param count    Number of puzzles to generate.
+	 */
+	public GeneratePuzzlesTask(Context context, long folderID, int level, int count) {
+		mContext = context.getApplicationContext();
+		mFolderID = folderID;
+		mLevel = level;
+		mCount = count;
+	}
+
+	public void setOnGenerationFinishedListener(OnGenerationFinishedListener listener) {
+		mOnGenerationFinishedListener = listener;
+	}
+
+	@Override
+	protected Integer doInBackground(Void... params) {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		long start = System.currentTimeMillis();
+
+		final SudokuDatabase database = new SudokuDatabase(mContext);
+		ParallelGenerator generator = new ParallelGenerator(BoardLayout.CLASSIC, mLevel);
+		generator.setThreadPriority(Thread.MIN_PRIORITY);
+		database.beginTransaction();
+		try {
+			generator.generate(mCount, new ParallelGenerator.OnPuzzleGeneratedListener() {
+				@Override
+				public void onPuzzleGenerated(String data, int rating) {
+					database.insertGeneratedSudoku(mFolderID, data, rating);
+					mGeneratedCount++;
+					if (mGeneratedCount % BATCH_SIZE == 0) {
+						database.setTransactionSuccessful();
+						database.endTransaction();
+						database.beginTransaction();
+					}
+					publishProgress(mGeneratedCount);
+				}
+			});
+			database.setTransactionSuccessful();
+		} catch (Exception e) {
+			Log.e(Const.TAG, "Exception occurred during generation of puzzles.", e);
+		} finally {
+			database.endTransaction();
+			database.close();
+		}
+
+		Log.i(Const.TAG, String.format("Generated %d puzzles in %f seconds.", mGeneratedCount,
+				(System.currentTimeMillis() - start) / 1000f));
+		return mGeneratedCount;
+	}
+
+	@Override
+	protected void onProgressUpdate(Integer... values) {
+		if (mOnGenerationFinishedListener != null) {
+			mOnGenerationFinishedListener.onProgress(values[0], mCount);
+		}
+	}
+
+	@Override
+	protected void onPostExecute(Integer result) {
+		if (mOnGenerationFinishedListener != null) {
+			mOnGenerationFinishedListener.onGenerationFinished(result);
+		}
+	}
+
+	@Override
+	protected void onCancelled() {
+		if (mOnGenerationFinishedListener != null) {
+			mOnGenerationFinishedListener.onGenerationFinished(mGeneratedCount);
+		}
+	}
+
+	public interface OnGenerationFinishedListener {
+		/**
+		 * Called on the main thread after each stored puzzle.
+		 *
+		 * @param generatedCount Number of puzzles generated so far.
+		 * @param count          Number of puzzles to generate.
+		 */
+		void onProgress(int generatedCount, int count);
+
+		/**
+		 * Called on the main thread when generation finishes or it is cancelled.
+		 *
+		 * @param generatedCount Number of generated puzzles.
+		 */
+		void onGenerationFinished(int generatedCount);
+	}
+}
@@ -20,19 +20,22 @@
 
 package org.moire.opensudoku.gui;
 
-import java.util.Collection;
-
 import org.moire.opensudoku.R;
+import org.moire.opensudoku.game.BoardConstraint;
+import org.moire.opensudoku.game.BoardLayout;
 import org.moire.opensudoku.game.Cell;
 import org.moire.opensudoku.game.CellCollection;
 import org.moire.opensudoku.game.CellNote;
 import org.moire.opensudoku.game.SudokuGame;
+import org.moire.opensudoku.game.CellCollection.ChangeSet;
 import org.moire.opensudoku.game.CellCollection.OnChangeListener;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.DashPathEffect;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -76,9 +79,37 @@ public class SudokuBoardView extends View {
 	private Paint mCellValuePaint;
 	private Paint mCellValueReadonlyPaint;
 	private Paint mCellNotePaint;
+	private Paint mCellCenterNotePaint;
+	private Paint mCellNoteInvalidPaint;
+	private Paint mCellCenterNoteInvalidPaint;
+	private float mCenterNoteTextSize;
+	// labels of centre notes of one cell, reused to avoid allocation while drawing
+	private final char[] mCenterNoteChars = new char[BoardLayout.MAX_SIZE];
 	private int mNumberLeft;
 	private int mNumberTop;
 	private float mNoteTop;
+	private int mNoteColumns = 3;
+	private Paint mCagePaint;
+	private Paint mCageSumPaint;
+
+	// labels of all possible killer cage sums, so no strings are created while drawing
+	private static final String[] CAGE_SUM_LABELS = new String[BoardLayout.MAX_SIZE * (BoardLayout.MAX_SIZE + 1) / 2 + 1];
+
+	static {
+		for (int i = 0; i < CAGE_SUM_LABELS.length; i++) {
+			CAGE_SUM_LABELS[i] = Integer.toString(i);
+		}
+	}
+
+	// Boards with more rows or columns than this are shown partially, the visible part
+	// (viewport) follows selected cell.
+	private static final int MAX_VISIBLE_CELLS = 16;
+	private static final int VIEWPORT_MARGIN = 2;
+	private int mViewportRow;
+	private int mViewportColumn;
+	private int mVisibleRows = CellCollection.SUDOKU_SIZE;
+	private int mVisibleColumns = CellCollection.SUDOKU_SIZE;
+	private final Rect mClipBounds = new Rect();
 	private int mSectorLineWidth;
 	private Paint mBackgroundColorSecondary;
 	private Paint mBackgroundColorReadOnly;
@@ -109,17 +140,30 @@ public class SudokuBoardView extends View {
 		mCellValueReadonlyPaint = new Paint();
 		mCellValueInvalidPaint = new Paint();
 		mCellNotePaint = new Paint();
+		mCellCenterNotePaint = new Paint();
+		mCellNoteInvalidPaint = new Paint();
+		mCellCenterNoteInvalidPaint = new Paint();
 		mBackgroundColorSecondary = new Paint();
 		mBackgroundColorReadOnly = new Paint();
 		mBackgroundColorTouched = new Paint();
 		mBackgroundColorSelected = new Paint();
 		mBackgroundColorHighlighted = new Paint();
+		mCagePaint = new Paint();
+		mCageSumPaint = new Paint();
 
+		mCagePaint.setStyle(Paint.Style.STROKE);
+		mCagePaint.setPathEffect(new DashPathEffect(new float[]{4, 4}, 0));
+		mCageSumPaint.setAntiAlias(true);
 		mCellValuePaint.setAntiAlias(true);
 		mCellValueReadonlyPaint.setAntiAlias(true);
 		mCellValueInvalidPaint.setAntiAlias(true);
 		mCellNotePaint.setAntiAlias(true);
+		mCellCenterNotePaint.setAntiAlias(true);
+		mCellNoteInvalidPaint.setAntiAlias(true);
+		mCellCenterNoteInvalidPaint.setAntiAlias(true);
 		mCellValueInvalidPaint.setColor(Color.RED);
+		mCellNoteInvalidPaint.setColor(Color.RED);
+		mCellCenterNoteInvalidPaint.setColor(Color.RED);
 
 		TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.SudokuBoardView/*, defStyle, 0*/);
 
@@ -176,6 +220,10 @@ public class SudokuBoardView extends View {
 
 	public void setTextColorNote(int color) {
 		mCellNotePaint.setColor(color);
+		mCellCenterNotePaint.setColor(color);
+		// killer cages are drawn in the same color as notes
+		mCagePaint.setColor(color);
+		mCageSumPaint.setColor(color);
 	}
 
 	public int getBackgroundColorSecondary() {
@@ -227,7 +275,14 @@ public class SudokuBoardView extends View {
 	}
 
 	public void setCells(CellCollection cells) {
+		BoardLayout oldLayout = getLayout();
 		mCells = cells;
+		if (getLayout() != oldLayout) {
+			// cell size depends on number of rows and columns
+			mViewportRow = 0;
+			mViewportColumn = 0;
+			requestLayout();
+		}
 
 		if (mCells != null) {
 			if (!mReadonly) {
@@ -237,8 +292,8 @@ public class SudokuBoardView extends View {
 
 			mCells.addOnChangeListener(new OnChangeListener() {
 				@Override
-				public void onChange() {
-					postInvalidate();
+				public void onChange(ChangeSet changes) {
+					invalidateCells(changes);
 				}
 			});
 		}
@@ -250,6 +305,41 @@ public class SudokuBoardView extends View {
 		return mCells;
 	}
 
+	private BoardLayout getLayout() {
+		return mCells != null ? mCells.getLayout() : BoardLayout.CLASSIC;
+	}
+
+	/**
+	 * Invalidates only the area of the board covered by changed cells.
+	 *
+	 * @param changes
+	 */
+	private void invalidateCells(ChangeSet changes) {
+		int minRow = Integer.MAX_VALUE, maxRow = -1;
+		int minCol = Integer.MAX_VALUE, maxCol = -1;
+		for (int i = 0; i < changes.size(); i++) {
+			Cell cell = changes.getCell(i);
+			if (cell == mSelectedCell && mHighlightSimilarCells
+					&& (changes.getChangeKinds(i) & ChangeSet.CHANGE_VALUE) != 0) {
+				// cells highlighted as similar to the selected one have changed too
+				postInvalidate();
+				return;
+			}
+			minRow = Math.min(minRow, cell.getRowIndex());
+			maxRow = Math.max(maxRow, cell.getRowIndex());
+			minCol = Math.min(minCol, cell.getColumnIndex());
+			maxCol = Math.max(maxCol, cell.getColumnIndex());
+		}
+
+		if (maxRow >= 0) {
+			postInvalidate(
+					(int) getCellLeft(minCol),
+					(int) getCellTop(minRow),
+					(int) Math.ceil(getCellLeft(maxCol + 1)),
+					(int) Math.ceil(getCellTop(maxRow + 1)));
+		}
+	}
+
 	public Cell getSelectedCell() {
 		return mSelectedCell;
 	}
@@ -383,16 +473,28 @@ public class SudokuBoardView extends View {
 			height = heightSize;
 		}
 
-		mCellWidth = (width - getPaddingLeft() - getPaddingRight()) / 9.0f;
-		mCellHeight = (height - getPaddingTop() - getPaddingBottom()) / 9.0f;
+		BoardLayout layout = getLayout();
+		mVisibleRows = Math.min(layout.getRowCount(), MAX_VISIBLE_CELLS);
+		mVisibleColumns = Math.min(layout.getColumnCount(), MAX_VISIBLE_CELLS);
+		mViewportRow = Math.min(mViewportRow, layout.getRowCount() - mVisibleRows);
+		mViewportColumn = Math.min(mViewportColumn, layout.getColumnCount() - mVisibleColumns);
+		mCellWidth = (width - getPaddingLeft() - getPaddingRight()) / (float) mVisibleColumns;
+		mCellHeight = (height - getPaddingTop() - getPaddingBottom()) / (float) mVisibleRows;
 
 		setMeasuredDimension(width, height);
 
+		// notes are arranged in a grid of (approximately) square shape, 3x3 on classic board
+		mNoteColumns = (int) Math.ceil(Math.sqrt(layout.getSize()));
+		int noteRows = (layout.getSize() + mNoteColumns - 1) / mNoteColumns;
+
 		float cellTextSize = mCellHeight * 0.75f;
 		mCellValuePaint.setTextSize(cellTextSize);
 		mCellValueReadonlyPaint.setTextSize(cellTextSize);
 		mCellValueInvalidPaint.setTextSize(cellTextSize);
-		mCellNotePaint.setTextSize(mCellHeight / 3.0f);
+		mCellNotePaint.setTextSize(mCellHeight / noteRows);
+		mCellNoteInvalidPaint.setTextSize(mCellHeight / noteRows);
+		mCenterNoteTextSize = mCellHeight / 3.0f;
+		mCageSumPaint.setTextSize(mCellHeight / 4.0f);
 		// compute offsets in each cell to center the rendered number
 		mNumberLeft = (int) ((mCellWidth - mCellValuePaint.measureText("9")) / 2);
 		mNumberTop = (int) ((mCellHeight - mCellValuePaint.getTextSize()) / 2);
@@ -431,38 +533,91 @@ public class SudokuBoardView extends View {
 		int paddingLeft = getPaddingLeft();
 		int paddingTop = getPaddingTop();
 
-		// draw secondary background
-		if (mBackgroundColorSecondary.getColor() != NO_COLOR) {
-			canvas.drawRect(3 * mCellWidth, 0, 6 * mCellWidth, 3 * mCellWidth, mBackgroundColorSecondary);
-			canvas.drawRect(0, 3 * mCellWidth, 3 * mCellWidth, 6 * mCellWidth, mBackgroundColorSecondary);
-			canvas.drawRect(6 * mCellWidth, 3 * mCellWidth, 9 * mCellWidth, 6 * mCellWidth, mBackgroundColorSecondary);
-			canvas.drawRect(3 * mCellWidth, 6 * mCellWidth, 6 * mCellWidth, 9 * mCellWidth, mBackgroundColorSecondary);
+		BoardLayout layout = getLayout();
+		int boxRows = layout.getBoxRows();
+		int boxColumns = layout.getBoxColumns();
+
+		// only cells in the viewport, which intersect area being redrawn, are drawn
+		canvas.getClipBounds(mClipBounds);
+		int firstRow = Math.max(mViewportRow, mViewportRow + (int) ((mClipBounds.top - paddingTop) / mCellHeight));
+		int lastRow = Math.min(mViewportRow + mVisibleRows - 1, mViewportRow + (int) ((mClipBounds.bottom - paddingTop) / mCellHeight));
+		int firstCol = Math.max(mViewportColumn, mViewportColumn + (int) ((mClipBounds.left - paddingLeft) / mCellWidth));
+		int lastCol = Math.min(mViewportColumn + mVisibleColumns - 1, mViewportColumn + (int) ((mClipBounds.right - paddingLeft) / mCellWidth));
+
+		// draw secondary background (windoku windows or every other box)
+		if (mBackgroundColorSecondary.getColor() != NO_COLOR && layout.hasConstraint(BoardConstraint.WINDOKU)) {
+			// windows are placed one cell apart from each other, see BoardConstraint.WINDOKU
+			for (int r = 1; r + boxRows < layout.getSize(); r += boxRows + 1) {
+				for (int c = 1; c + boxColumns < layout.getSize(); c += boxColumns + 1) {
+					canvas.drawRect(getCellLeft(c), getCellTop(r),
+							getCellLeft(c + boxColumns), getCellTop(r + boxRows),
+							mBackgroundColorSecondary);
+				}
+			}
+		} else if (mBackgroundColorSecondary.getColor() != NO_COLOR && layout.isSparse()) {
+			for (int r = firstRow; r <= lastRow; r++) {
+				for (int c = firstCol; c <= lastCol; c++) {
+					if (layout.getCellIndex(r, c) >= 0 && (r / boxRows + c / boxColumns) % 2 != 0) {
+						canvas.drawRect(getCellLeft(c), getCellTop(r),
+								getCellLeft(c) + mCellWidth, getCellTop(r) + mCellHeight,
+								mBackgroundColorSecondary);
+					}
+				}
+			}
+		} else if (mBackgroundColorSecondary.getColor() != NO_COLOR) {
+			for (int r = 0; r < layout.getRowCount(); r += boxRows) {
+				for (int c = 0; c < layout.getColumnCount(); c += boxColumns) {
+					if ((r / boxRows + c / boxColumns) % 2 != 0) {
+						canvas.drawRect(getCellLeft(c), getCellTop(r),
+								getCellLeft(c + boxColumns), getCellTop(r + boxRows),
+								mBackgroundColorSecondary);
+					}
+				}
+			}
 		}
 
 		// draw cells
 		int cellLeft, cellTop;
 		if (mCells != null) {
 
+			// highlight similar cells, under their values (cells holding the value are found
+			// through the position index, so the board is not scanned)
+			int highlightedValue = 0;
+			if (mHighlightSimilarCells && mSelectedCell != null && mSelectedCell.getValue() != 0
+					&& mBackgroundColorHighlighted.getColor() != NO_COLOR) {
+				highlightedValue = mSelectedCell.getValue();
+				Cell cell = mCells.findFirstCell(highlightedValue);
+				while (cell != null) {
+					cellLeft = Math.round(getCellLeft(cell.getColumnIndex()));
+					cellTop = Math.round(getCellTop(cell.getRowIndex()));
+					canvas.drawRect(
+							cellLeft, cellTop,
+							cellLeft + mCellWidth, cellTop + mCellHeight,
+							mBackgroundColorHighlighted);
+					cell = mCells.findNextCell(cell);
+				}
+			}
+
 			boolean hasBackgroundColorReadOnly = mBackgroundColorReadOnly.getColor() != NO_COLOR;
 
 			float numberAscent = mCellValuePaint.ascent();
 			float noteAscent = mCellNotePaint.ascent();
-			float noteWidth = mCellWidth / 3f;
-
-			int selectedValue = 0;
-			if (mHighlightSimilarCells && mSelectedCell != null) {
-				selectedValue = mSelectedCell.getValue();
-			}
+			float noteWidth = mCellWidth / mNoteColumns;
 
-			for (int row = 0; row < 9; row++) {
-				for (int col = 0; col < 9; col++) {
-					Cell cell = mCells.getCell(row, col);
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int col = firstCol; col <= lastCol; col++) {
+					int index = layout.getCellIndex(row, col);
+					if (index < 0) {
+						continue;
+					}
+					Cell cell = mCells.getCell(index);
 
-					cellLeft = Math.round((col * mCellWidth) + paddingLeft);
-					cellTop = Math.round((row * mCellHeight) + paddingTop);
+					cellLeft = Math.round(getCellLeft(col));
+					cellTop = Math.round(getCellTop(row));
 
-					// draw read-only field background
-					if (!cell.isEditable() && hasBackgroundColorReadOnly) {
+					// draw read-only field background (highlighted cells keep the highlight)
+					if (!cell.isEditable() && hasBackgroundColorReadOnly
+							&& (highlightedValue == 0 || cell.getValue() != highlightedValue)) {
 						if (mBackgroundColorReadOnly.getColor() != NO_COLOR) {
 							canvas.drawRect(
 									cellLeft, cellTop,
@@ -471,16 +626,6 @@ public class SudokuBoardView extends View {
 						}
 					}
 
-					// highlight similar cells
-					if (selectedValue != 0 && selectedValue == cell.getValue()) {
-						if (mBackgroundColorHighlighted.getColor() != NO_COLOR) {
-							canvas.drawRect(
-									cellLeft, cellTop,
-									cellLeft + mCellWidth, cellTop + mCellHeight,
-									mBackgroundColorHighlighted);
-						}
-					}
-
 					// draw cell Text
 					int value = cell.getValue();
 					if (value != 0) {
@@ -489,31 +634,43 @@ public class SudokuBoardView extends View {
 						if (mHighlightWrongVals && !cell.isValid()) {
 							cellValuePaint = mCellValueInvalidPaint;
 						}
-						canvas.drawText(Integer.toString(value),
+						canvas.drawText(BoardLayout.getValueLabel(value),
 								cellLeft + mNumberLeft,
 								cellTop + mNumberTop - numberAscent,
 								cellValuePaint);
 					} else {
-						if (!cell.getNote().isEmpty()) {
-							Collection<Integer> numbers = cell.getNote().getNotedNumbers();
-							for (Integer number : numbers) {
-								int n = number - 1;
-								int c = n % 3;
-								int r = n / 3;
-								//canvas.drawText(Integer.toString(number), cellLeft + c*noteWidth + 2, cellTop + noteAscent + r*noteWidth - 1, mNotePaint);
-								canvas.drawText(Integer.toString(number), cellLeft + c * noteWidth + 2, cellTop + mNoteTop - noteAscent + r * noteWidth - 1, mCellNotePaint);
-							}
+						// empty cell is not valid when its notes exclude the solution (see
+						// SudokuGame#setCheckAgainstSolution)
+						boolean notesInvalid = mHighlightWrongVals && !cell.isValid();
+						Paint notePaint = notesInvalid ? mCellNoteInvalidPaint : mCellNotePaint;
+						// notes are read as bit masks, so nothing is allocated
+						int notes = mCells.getNoteMask(index, CellNote.LAYER_CORNER);
+						while (notes != 0) {
+							int n = Integer.numberOfTrailingZeros(notes);
+							int c = n % mNoteColumns;
+							int r = n / mNoteColumns;
+							//canvas.drawText(Integer.toString(number), cellLeft + c*noteWidth + 2, cellTop + noteAscent + r*noteWidth - 1, mNotePaint);
+							canvas.drawText(BoardLayout.getValueLabel(n + 1), cellLeft + c * noteWidth + 2, cellTop + mNoteTop - noteAscent + r * noteWidth - 1, notePaint);
+							notes &= notes - 1;
 						}
-					}
-
 
+						int centerNotes = mCells.getNoteMask(index, CellNote.LAYER_CENTER);
+						if (centerNotes != 0) {
+							drawCenterNotes(canvas, centerNotes, cellLeft, cellTop,
+									notesInvalid ? mCellCenterNoteInvalidPaint : mCellCenterNotePaint);
+						}
+					}
 				}
 			}
 
+			if (layout.getCageCount() > 0) {
+				drawCages(canvas, layout, firstRow, lastRow, firstCol, lastCol);
+			}
+
 			// highlight selected cell
 			if (!mReadonly && mSelectedCell != null) {
-				cellLeft = Math.round(mSelectedCell.getColumnIndex() * mCellWidth) + paddingLeft;
-				cellTop = Math.round(mSelectedCell.getRowIndex() * mCellHeight) + paddingTop;
+				cellLeft = Math.round(getCellLeft(mSelectedCell.getColumnIndex()));
+				cellTop = Math.round(getCellTop(mSelectedCell.getRowIndex()));
 				canvas.drawRect(
 						cellLeft, cellTop,
 						cellLeft + mCellWidth, cellTop + mCellHeight,
@@ -523,8 +680,8 @@ public class SudokuBoardView extends View {
 			// visually highlight cell under the finger (to cope with touch screen
 			// imprecision)
 			if (mHighlightTouchedCell && mTouchedCell != null) {
-				cellLeft = Math.round(mTouchedCell.getColumnIndex() * mCellWidth) + paddingLeft;
-				cellTop = Math.round(mTouchedCell.getRowIndex() * mCellHeight) + paddingTop;
+				cellLeft = Math.round(getCellLeft(mTouchedCell.getColumnIndex()));
+				cellTop = Math.round(getCellTop(mTouchedCell.getRowIndex()));
 				canvas.drawRect(
 						cellLeft, paddingTop,
 						cellLeft + mCellWidth, height,
@@ -537,32 +694,212 @@ public class SudokuBoardView extends View {
 
 		}
 
-		// draw vertical lines
-		for (int c = 0; c <= 9; c++) {
-			float x = (c * mCellWidth) + paddingLeft;
-			canvas.drawLine(x, paddingTop, x, height, mLinePaint);
+		int sectorLineWidth1 = mSectorLineWidth / 2;
+		int sectorLineWidth2 = sectorLineWidth1 + (mSectorLineWidth % 2);
+
+		if (layout.isSparse()) {
+			drawSparseLines(canvas, layout, firstRow, lastRow, firstCol, lastCol, sectorLineWidth1, sectorLineWidth2);
+		} else {
+			// draw vertical lines
+			for (int c = mViewportColumn; c <= mViewportColumn + mVisibleColumns; c++) {
+				float x = getCellLeft(c);
+				canvas.drawLine(x, paddingTop, x, height, mLinePaint);
+			}
+
+			// draw horizontal lines
+			for (int r = mViewportRow; r <= mViewportRow + mVisibleRows; r++) {
+				float y = getCellTop(r);
+				canvas.drawLine(paddingLeft, y, width, y, mLinePaint);
+			}
 		}
 
-		// draw horizontal lines
-		for (int r = 0; r <= 9; r++) {
-			float y = r * mCellHeight + paddingTop;
-			canvas.drawLine(paddingLeft, y, width, y, mLinePaint);
+		// draw diagonals
+		if (layout.hasConstraint(BoardConstraint.DIAGONAL)) {
+			float left = getCellLeft(0);
+			float top = getCellTop(0);
+			float right = getCellLeft(layout.getColumnCount());
+			float bottom = getCellTop(layout.getRowCount());
+			canvas.drawLine(left, top, right, bottom, mLinePaint);
+			canvas.drawLine(right, top, left, bottom, mLinePaint);
 		}
 
-		int sectorLineWidth1 = mSectorLineWidth / 2;
-		int sectorLineWidth2 = sectorLineWidth1 + (mSectorLineWidth % 2);
+		if (!layout.isSparse()) {
+			// draw sector (thick) lines
+			for (int c = 0; c <= layout.getColumnCount(); c = c + boxColumns) {
+				float x = getCellLeft(c);
+				canvas.drawRect(x - sectorLineWidth1, paddingTop, x + sectorLineWidth2, height, mSectorLinePaint);
+			}
 
-		// draw sector (thick) lines
-		for (int c = 0; c <= 9; c = c + 3) {
-			float x = (c * mCellWidth) + paddingLeft;
-			canvas.drawRect(x - sectorLineWidth1, paddingTop, x + sectorLineWidth2, height, mSectorLinePaint);
+			for (int r = 0; r <= layout.getRowCount(); r = r + boxRows) {
+				float y = getCellTop(r);
+				canvas.drawRect(paddingLeft, y - sectorLineWidth1, width, y + sectorLineWidth2, mSectorLinePaint);
+			}
 		}
 
-		for (int r = 0; r <= 9; r = r + 3) {
-			float y = r * mCellHeight + paddingTop;
-			canvas.drawRect(paddingLeft, y - sectorLineWidth1, width, y + sectorLineWidth2, mSectorLinePaint);
+	}
+
+	/**
+	 * Draws cell borders of board with gaps between cells. Each border between cells
+	 * of different boxes, or between cell and gap, is drawn as sector line.
+	 */
+	private void drawSparseLines(Canvas canvas, BoardLayout layout, int firstRow, int lastRow,
+								 int firstCol, int lastCol, int sectorLineWidth1, int sectorLineWidth2) {
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = firstCol; col <= lastCol; col++) {
+				int index = layout.getCellIndex(row, col);
+				if (index < 0) {
+					continue;
+				}
+				float left = getCellLeft(col);
+				float top = getCellTop(row);
+				float right = left + mCellWidth;
+				float bottom = top + mCellHeight;
+				int box = layout.getCellUnit(index, BoardLayout.UNIT_BOX);
+
+				canvas.drawLine(left, top, right, top, mLinePaint);
+				canvas.drawLine(left, top, left, bottom, mLinePaint);
+				canvas.drawLine(left, bottom, right, bottom, mLinePaint);
+				canvas.drawLine(right, top, right, bottom, mLinePaint);
+
+				if (!isInBox(layout, row - 1, col, box)) {
+					canvas.drawRect(left - sectorLineWidth1, top - sectorLineWidth1, right + sectorLineWidth2, top + sectorLineWidth2, mSectorLinePaint);
+				}
+				if (!isInBox(layout, row + 1, col, box)) {
+					canvas.drawRect(left - sectorLineWidth1, bottom - sectorLineWidth1, right + sectorLineWidth2, bottom + sectorLineWidth2, mSectorLinePaint);
+				}
+				if (!isInBox(layout, row, col - 1, box)) {
+					canvas.drawRect(left - sectorLineWidth1, top - sectorLineWidth1, left + sectorLineWidth2, bottom + sectorLineWidth2, mSectorLinePaint);
+				}
+				if (!isInBox(layout, row, col + 1, box)) {
+					canvas.drawRect(right - sectorLineWidth1, top - sectorLineWidth1, right + sectorLineWidth2, bottom + sectorLineWidth2, mSectorLinePaint);
+				}
+			}
+		}
+	}
+
+	private static boolean isInBox(BoardLayout layout, int row, int col, int box) {
+		int index = layout.getCellIndex(row, col);
+		return index >= 0 && layout.getCellUnit(index, BoardLayout.UNIT_BOX) == box;
+	}
+
+	/**
+	 * Draws centre notes of the cell as a single line of numbers in the middle of the cell,
+	 * text is made smaller if they don't fit.
+	 */
+	private void drawCenterNotes(Canvas canvas, int notes, float cellLeft, float cellTop, Paint paint) {
+		int count = 0;
+		while (notes != 0) {
+			int n = Integer.numberOfTrailingZeros(notes);
+			mCenterNoteChars[count++] = BoardLayout.getValueLabel(n + 1).charAt(0);
+			notes &= notes - 1;
 		}
 
+		float maxWidth = mCellWidth * 0.9f;
+		paint.setTextSize(mCenterNoteTextSize);
+		float textWidth = paint.measureText(mCenterNoteChars, 0, count);
+		if (textWidth > maxWidth) {
+			paint.setTextSize(mCenterNoteTextSize * maxWidth / textWidth);
+			textWidth = maxWidth;
+		}
+		float baseline = cellTop + (mCellHeight - paint.ascent() - paint.descent()) / 2;
+		canvas.drawText(mCenterNoteChars, 0, count, cellLeft + (mCellWidth - textWidth) / 2, baseline, paint);
+	}
+
+	/**
+	 * Draws outlines of killer cages (inset into the cells) and their sums.
+	 */
+	private void drawCages(Canvas canvas, BoardLayout layout, int firstRow, int lastRow, int firstCol, int lastCol) {
+		float inset = mCellWidth / 12.0f;
+		float sumAscent = mCageSumPaint.ascent();
+
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int col = firstCol; col <= lastCol; col++) {
+				int i = layout.getCellIndex(row, col);
+				int cage = i < 0 ? -1 : layout.getCellCage(i);
+				if (cage < 0) {
+					continue;
+				}
+				float left = getCellLeft(col);
+				float top = getCellTop(row);
+				float right = left + mCellWidth;
+				float bottom = top + mCellHeight;
+
+				// outline continues to the neighbouring cell, if it is in the same cage
+				boolean sameTop = isInCage(layout, row - 1, col, cage);
+				boolean sameBottom = isInCage(layout, row + 1, col, cage);
+				boolean sameLeft = isInCage(layout, row, col - 1, cage);
+				boolean sameRight = isInCage(layout, row, col + 1, cage);
+				float x1 = sameLeft ? left : left + inset;
+				float x2 = sameRight ? right : right - inset;
+				float y1 = sameTop ? top : top + inset;
+				float y2 = sameBottom ? bottom : bottom - inset;
+
+				if (!sameTop) {
+					canvas.drawLine(x1, top + inset, x2, top + inset, mCagePaint);
+				}
+				if (!sameBottom) {
+					canvas.drawLine(x1, bottom - inset, x2, bottom - inset, mCagePaint);
+				}
+				if (!sameLeft) {
+					canvas.drawLine(left + inset, y1, left + inset, y2, mCagePaint);
+				}
+				if (!sameRight) {
+					canvas.drawLine(right - inset, y1, right - inset, y2, mCagePaint);
+				}
+
+				// sum is shown in the first cell of the cage
+				if (layout.getCageCell(cage, 0) == i) {
+					canvas.drawText(CAGE_SUM_LABELS[layout.getCageSum(cage)],
+							left + inset + 1, top + inset - sumAscent, mCageSumPaint);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns x coordinate of the left edge of cells in given column.
+	 */
+	private float getCellLeft(int col) {
+		return (col - mViewportColumn) * mCellWidth + getPaddingLeft();
+	}
+
+	/**
+	 * Returns y coordinate of the top edge of cells in given row.
+	 */
+	private float getCellTop(int row) {
+		return (row - mViewportRow) * mCellHeight + getPaddingTop();
+	}
+
+	/**
+	 * Moves the viewport (visible part of large board), so given cell is visible and not
+	 * at its very edge. If the cell is close to the edge, viewport is centered on it.
+	 */
+	private void scrollToCell(Cell cell) {
+		BoardLayout layout = getLayout();
+		int row = cell.getRowIndex();
+		int col = cell.getColumnIndex();
+		int viewportRow = mViewportRow;
+		int viewportColumn = mViewportColumn;
+
+		if (row < viewportRow + VIEWPORT_MARGIN || row >= viewportRow + mVisibleRows - VIEWPORT_MARGIN) {
+			viewportRow = row - mVisibleRows / 2;
+		}
+		if (col < viewportColumn + VIEWPORT_MARGIN || col >= viewportColumn + mVisibleColumns - VIEWPORT_MARGIN) {
+			viewportColumn = col - mVisibleColumns / 2;
+		}
+		viewportRow = Math.max(0, Math.min(viewportRow, layout.getRowCount() - mVisibleRows));
+		viewportColumn = Math.max(0, Math.min(viewportColumn, layout.getColumnCount() - mVisibleColumns));
+
+		if (viewportRow != mViewportRow || viewportColumn != mViewportColumn) {
+			mViewportRow = viewportRow;
+			mViewportColumn = viewportColumn;
+			postInvalidate();
+		}
+	}
+
+	private static boolean isInCage(BoardLayout layout, int row, int col, int cage) {
+		int index = layout.getCellIndex(row, col);
+		return index >= 0 && layout.getCellCage(index) == cage;
 	}
 
 	@Override
@@ -582,6 +919,7 @@ public class SudokuBoardView extends View {
 					invalidate(); // selected cell has changed, update board as soon as you can
 
 					if (mSelectedCell != null) {
+						scrollToCell(mSelectedCell);
 						onCellTapped(mSelectedCell);
 						onCellSelected(mSelectedCell);
 					}
@@ -633,8 +971,14 @@ public class SudokuBoardView extends View {
 					return true;
 			}
 
+			int selNumber = 0;
 			if (keyCode >= KeyEvent.KEYCODE_1 && keyCode <= KeyEvent.KEYCODE_9) {
-				int selNumber = keyCode - KeyEvent.KEYCODE_0;
+				selNumber = keyCode - KeyEvent.KEYCODE_0;
+			} else if (keyCode >= KeyEvent.KEYCODE_A && keyCode <= KeyEvent.KEYCODE_Z) {
+				// values above 9 are entered as letters
+				selNumber = 10 + keyCode - KeyEvent.KEYCODE_A;
+			}
+			if (selNumber != 0 && selNumber <= mCells.getSize()) {
 				Cell cell = mSelectedCell;
 
 				if (event.isShiftPressed() || event.isAltPressed()) {
@@ -659,13 +1003,10 @@ public class SudokuBoardView extends View {
 	 * skips on beginning of another line.
 	 */
 	public void moveCellSelectionRight() {
-		if (!moveCellSelection(1, 0)) {
-			int selRow = mSelectedCell.getRowIndex();
-			selRow++;
-			if (!moveCellSelectionTo(selRow, 0)) {
-				moveCellSelectionTo(0, 0);
-			}
-		}
+		// cells are numbered row by row
+		int index = (mSelectedCell.getIndex() + 1) % mCells.getCellCount();
+		BoardLayout layout = mCells.getLayout();
+		moveCellSelectionTo(layout.getCellRow(index), layout.getCellColumn(index));
 		postInvalidate();
 	}
 
@@ -702,8 +1043,16 @@ public class SudokuBoardView extends View {
 		int newCol = 0;
 
 		if (mSelectedCell != null) {
+			BoardLayout layout = mCells.getLayout();
 			newRow = mSelectedCell.getRowIndex() + vy;
 			newCol = mSelectedCell.getColumnIndex() + vx;
+			// skip gaps between grids
+			while (layout.getCellIndex(newRow, newCol) < 0
+					&& newRow >= 0 && newRow < layout.getRowCount()
+					&& newCol >= 0 && newCol < layout.getColumnCount()) {
+				newRow += vy;
+				newCol += vx;
+			}
 		}
 
 		return moveCellSelectionTo(newRow, newCol);
@@ -718,9 +1067,10 @@ public class SudokuBoardView extends View {
 	 * @return True, if cell was successfuly selected.
 	 */
 	public boolean moveCellSelectionTo(int row, int col) {
-		if (col >= 0 && col < CellCollection.SUDOKU_SIZE
-				&& row >= 0 && row < CellCollection.SUDOKU_SIZE) {
-			mSelectedCell = mCells.getCell(row, col);
+		int index = mCells.getLayout().getCellIndex(row, col);
+		if (index >= 0) {
+			mSelectedCell = mCells.getCell(index);
+			scrollToCell(mSelectedCell);
 			onCellSelected(mSelectedCell);
 
 			postInvalidate();
@@ -745,9 +1095,13 @@ public class SudokuBoardView extends View {
 		int row = (int) (ly / mCellHeight);
 		int col = (int) (lx / mCellWidth);
 
-		if (col >= 0 && col < CellCollection.SUDOKU_SIZE
-				&& row >= 0 && row < CellCollection.SUDOKU_SIZE) {
-			return mCells.getCell(row, col);
+		// conversion to int rounds small negative coordinates to 0, so they are checked separately
+		int index = -1;
+		if (lx >= 0 && ly >= 0 && row < mVisibleRows && col < mVisibleColumns) {
+			index = mCells.getLayout().getCellIndex(mViewportRow + row, mViewportColumn + col);
+		}
+		if (index >= 0) {
+			return mCells.getCell(index);
 		} else {
 			return null;
 		}
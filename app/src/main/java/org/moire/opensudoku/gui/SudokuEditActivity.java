@@ -241,6 +241,7 @@ public class SudokuEditActivity extends Activity {
 		switch (mState) {
 			case STATE_EDIT:
 				mDatabase.updateSudoku(mGame);
+				mDatabase.resetDifficulty(mGame.getId());
 				Toast.makeText(getApplicationContext(), R.string.puzzle_updated, Toast.LENGTH_SHORT).show();
 				break;
 			case STATE_INSERT:
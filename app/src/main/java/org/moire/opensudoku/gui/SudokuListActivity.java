@@ -26,6 +26,7 @@ import java.util.Date;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.ListActivity;
+import android.app.ProgressDialog;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.DialogInterface;
@@ -47,13 +48,17 @@ import android.widget.AdapterView;
 import android.widget.ListView;
 import android.widget.SimpleCursorAdapter;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.widget.SimpleCursorAdapter.ViewBinder;
 import org.moire.opensudoku.R;
+import org.moire.opensudoku.db.DifficultyRatingJob;
+import org.moire.opensudoku.db.PuzzlePool;
 import org.moire.opensudoku.db.SudokuColumns;
 import org.moire.opensudoku.db.SudokuDatabase;
 import org.moire.opensudoku.game.FolderInfo;
 import org.moire.opensudoku.game.CellCollection;
 import org.moire.opensudoku.game.SudokuGame;
+import org.moire.opensudoku.game.solver.DifficultyRater;
 import org.moire.opensudoku.gui.FolderDetailLoader.FolderDetailCallback;
 import org.moire.opensudoku.utils.AndroidUtils;
 
@@ -74,15 +79,28 @@ public class SudokuListActivity extends ListActivity {
 	public static final int MENU_ITEM_EDIT_NOTE = Menu.FIRST + 5;
 	public static final int MENU_ITEM_FILTER = Menu.FIRST + 6;
 	public static final int MENU_ITEM_FOLDERS = Menu.FIRST + 7;
+	public static final int MENU_ITEM_FILTER_DIFFICULTY = Menu.FIRST + 8;
+	public static final int MENU_ITEM_SORT = Menu.FIRST + 9;
+	public static final int MENU_ITEM_GENERATE = Menu.FIRST + 10;
+	public static final int MENU_ITEM_NEW_GAME = Menu.FIRST + 11;
 
 	private static final int DIALOG_DELETE_PUZZLE = 0;
 	private static final int DIALOG_RESET_PUZZLE = 1;
 	private static final int DIALOG_EDIT_NOTE = 2;
 	private static final int DIALOG_FILTER = 3;
+	private static final int DIALOG_FILTER_DIFFICULTY = 4;
+	private static final int DIALOG_GENERATE = 5;
+	private static final int DIALOG_GENERATING = 6;
+	private static final int DIALOG_NEW_GAME = 7;
+
+	// number of puzzles generated at once
+	private static final int GENERATE_COUNT = 20;
 
 	private static final String FILTER_STATE_NOT_STARTED = "filter" + SudokuGame.GAME_STATE_NOT_STARTED;
 	private static final String FILTER_STATE_PLAYING = "filter" + SudokuGame.GAME_STATE_PLAYING;
 	private static final String FILTER_STATE_SOLVED = "filter" + SudokuGame.GAME_STATE_COMPLETED;
+	private static final String FILTER_DIFFICULTY = "filter_difficulty";
+	private static final String SORT_BY_DIFFICULTY = "sort_by_difficulty";
 
 	private static final String TAG = "SudokuListActivity";
 
@@ -94,6 +112,9 @@ public class SudokuListActivity extends ListActivity {
 	private long mEditNotePuzzleID;
 	private TextView mEditNoteInput;
 	private SudokuListFilter mListFilter;
+	private boolean mSortByDifficulty;
+	private GeneratePuzzlesTask mGenerateTask;
+	private ProgressDialog mGeneratingDialog;
 
 	private TextView mFilterStatus;
 
@@ -102,6 +123,17 @@ public class SudokuListActivity extends ListActivity {
 	private SudokuDatabase mDatabase;
 	private FolderDetailLoader mFolderDetailLoader;
 
+	// refreshes the list when new ratings affect its order or filter
+	private final DifficultyRatingJob.OnFinishedListener mRatingFinishedListener = new DifficultyRatingJob.OnFinishedListener() {
+		@Override
+		public void onFinished(int ratedCount) {
+			if (ratedCount > 0 && !isFinishing() && (mSortByDifficulty
+					|| mListFilter.difficulty != SudokuListFilter.DIFFICULTY_ANY)) {
+				updateList();
+			}
+		}
+	};
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -132,6 +164,8 @@ public class SudokuListActivity extends ListActivity {
 		mListFilter.showStateNotStarted = settings.getBoolean(FILTER_STATE_NOT_STARTED, true);
 		mListFilter.showStatePlaying = settings.getBoolean(FILTER_STATE_PLAYING, true);
 		mListFilter.showStateCompleted = settings.getBoolean(FILTER_STATE_SOLVED, true);
+		mListFilter.difficulty = settings.getInt(FILTER_DIFFICULTY, SudokuListFilter.DIFFICULTY_ANY);
+		mSortByDifficulty = settings.getBoolean(SORT_BY_DIFFICULTY, false);
 
 		mAdapter = new SimpleCursorAdapter(this, R.layout.sudoku_list_item,
 				null, new String[]{SudokuColumns.DATA, SudokuColumns.STATE,
@@ -148,6 +182,13 @@ public class SudokuListActivity extends ListActivity {
 	protected void onDestroy() {
 		super.onDestroy();
 
+		if (mGenerateTask != null) {
+			// activity and its dialogs are gone (possibly just for configuration change),
+			// so the task must not report back
+			mGenerateTask.setOnGenerationFinishedListener(null);
+			mGenerateTask.cancel(true);
+			mGenerateTask = null;
+		}
 		mDatabase.close();
 		mFolderDetailLoader.destroy();
 	}
@@ -168,6 +209,10 @@ public class SudokuListActivity extends ListActivity {
 		mDeletePuzzleID = state.getLong("mDeletePuzzleID");
 		mResetPuzzleID = state.getLong("mResetPuzzleID");
 		mEditNotePuzzleID = state.getLong("mEditNotePuzzleID");
+
+		// generation has been cancelled when the previous instance was destroyed,
+		// don't show its progress
+		removeDialog(DIALOG_GENERATING);
 	}
 
 	@Override
@@ -176,6 +221,17 @@ public class SudokuListActivity extends ListActivity {
 		// the puzzle list is naturally refreshed when the window
 		// regains focus, so we only need to update the title
 		updateTitle();
+
+		// rate new puzzles, so that they can be sorted and filtered by difficulty
+		DifficultyRatingJob.addOnFinishedListener(mRatingFinishedListener);
+		DifficultyRatingJob.start(this);
+		PuzzlePool.startProducer(this);
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		DifficultyRatingJob.removeOnFinishedListener(mRatingFinishedListener);
 	}
 
 	@Override
@@ -203,11 +259,16 @@ public class SudokuListActivity extends ListActivity {
 				.setIcon(R.drawable.ic_sort);
 		menu.add(0, MENU_ITEM_FILTER, 1, R.string.filter).setShortcut('1', 'f')
 				.setIcon(R.drawable.ic_view);
-		menu.add(0, MENU_ITEM_INSERT, 2, R.string.add_sudoku).setShortcut('3', 'a')
+		menu.add(0, MENU_ITEM_FILTER_DIFFICULTY, 2, R.string.filter_by_difficulty)
+				.setIcon(R.drawable.ic_view);
+		menu.add(0, MENU_ITEM_SORT, 3, R.string.sort_by_difficulty)
+				.setIcon(R.drawable.ic_sort);
+		menu.add(0, MENU_ITEM_INSERT, 4, R.string.add_sudoku).setShortcut('3', 'a')
+				.setIcon(R.drawable.ic_add);
+		menu.add(0, MENU_ITEM_NEW_GAME, 5, R.string.new_game).setShortcut('5', 'n')
+				.setIcon(R.drawable.ic_add);
+		menu.add(0, MENU_ITEM_GENERATE, 6, R.string.generate_sudoku).setShortcut('4', 'g')
 				.setIcon(R.drawable.ic_add);
-		// I'm not sure this one is ready for release
-//		menu.add(0, MENU_ITEM_GENERATE, 3, R.string.generate_sudoku).setShortcut('4', 'g')
-//		.setIcon(R.drawable.ic_add);
 
 		// Generate any additional actions that can be performed on the
 		// overall list. In a normal install, there are no additional
@@ -223,6 +284,14 @@ public class SudokuListActivity extends ListActivity {
 
 	}
 
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		super.onPrepareOptionsMenu(menu);
+
+		menu.findItem(MENU_ITEM_SORT).setTitle(mSortByDifficulty ? R.string.sort_by_date : R.string.sort_by_difficulty);
+		return true;
+	}
+
 	@Override
 	protected Dialog onCreateDialog(int id) {
 		final SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
@@ -317,6 +386,57 @@ public class SudokuListActivity extends ListActivity {
 								/* User clicked No so do some stuff */
 							}
 						}).create();
+			case DIALOG_FILTER_DIFFICULTY:
+				// first item shows puzzles of any difficulty, the others are levels
+				return new AlertDialog.Builder(this)
+						.setIcon(R.drawable.ic_view)
+						.setTitle(R.string.filter_by_difficulty)
+						.setSingleChoiceItems(R.array.difficulty_levels, mListFilter.difficulty + 1,
+								new DialogInterface.OnClickListener() {
+									public void onClick(DialogInterface dialog, int whichButton) {
+										mListFilter.difficulty = whichButton - 1;
+										settings.edit()
+												.putInt(FILTER_DIFFICULTY, mListFilter.difficulty)
+												.commit();
+										dialog.dismiss();
+										updateList();
+									}
+								})
+						.setNegativeButton(android.R.string.cancel, null).create();
+			case DIALOG_GENERATE:
+				return new AlertDialog.Builder(this)
+						.setIcon(R.drawable.ic_add)
+						.setTitle(R.string.select_difficulty)
+						.setItems(R.array.generator_levels, new DialogInterface.OnClickListener() {
+							public void onClick(DialogInterface dialog, int which) {
+								generatePuzzles(DifficultyRater.LEVEL_EASY + which);
+							}
+						}).create();
+			case DIALOG_NEW_GAME:
+				return new AlertDialog.Builder(this)
+						.setIcon(R.drawable.ic_add)
+						.setTitle(R.string.select_difficulty)
+						.setItems(R.array.generator_levels, new DialogInterface.OnClickListener() {
+							public void onClick(DialogInterface dialog, int which) {
+								startNewGame(DifficultyRater.LEVEL_EASY + which);
+							}
+						}).create();
+			case DIALOG_GENERATING:
+				mGeneratingDialog = new ProgressDialog(this);
+				mGeneratingDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+				mGeneratingDialog.setTitle(R.string.generate_sudoku);
+				mGeneratingDialog.setMessage(getString(R.string.generating));
+				mGeneratingDialog.setMax(GENERATE_COUNT);
+				mGeneratingDialog.setCancelable(false);
+				mGeneratingDialog.setButton(getString(android.R.string.cancel), new DialogInterface.OnClickListener() {
+					public void onClick(DialogInterface dialog, int which) {
+						if (mGenerateTask != null) {
+							// puzzles generated so far are kept
+							mGenerateTask.cancel(true);
+						}
+					}
+				});
+				return mGeneratingDialog;
 		}
 		return null;
 	}
@@ -332,6 +452,9 @@ public class SudokuListActivity extends ListActivity {
 				mEditNoteInput.setText(game.getNote());
 				break;
 			}
+			case DIALOG_GENERATING:
+				mGeneratingDialog.setProgress(0);
+				break;
 		}
 	}
 
@@ -412,6 +535,22 @@ public class SudokuListActivity extends ListActivity {
 			case MENU_ITEM_FILTER:
 				showDialog(DIALOG_FILTER);
 				return true;
+			case MENU_ITEM_FILTER_DIFFICULTY:
+				showDialog(DIALOG_FILTER_DIFFICULTY);
+				return true;
+			case MENU_ITEM_GENERATE:
+				showDialog(DIALOG_GENERATE);
+				return true;
+			case MENU_ITEM_NEW_GAME:
+				showDialog(DIALOG_NEW_GAME);
+				return true;
+			case MENU_ITEM_SORT:
+				mSortByDifficulty = !mSortByDifficulty;
+				PreferenceManager.getDefaultSharedPreferences(getApplicationContext()).edit()
+						.putBoolean(SORT_BY_DIFFICULTY, mSortByDifficulty)
+						.commit();
+				updateList();
+				return true;
 			case MENU_ITEM_FOLDERS: {
 				Intent i = new Intent(this, FolderListActivity.class);
 				startActivity(i);
@@ -427,6 +566,49 @@ public class SudokuListActivity extends ListActivity {
 		playSudoku(id);
 	}
 
+	/**
+	 * Moves puzzle of given level from the pool of pre-generated puzzles into this folder
+	 * and starts it.
+	 */
+	private void startNewGame(int level) {
+		long sudokuID = mDatabase.takePooledSudoku(mFolderID, level);
+		// refill what has been taken
+		PuzzlePool.startProducer(this);
+		if (sudokuID < 0) {
+			Toast.makeText(getApplicationContext(), R.string.no_puzzle_ready, Toast.LENGTH_LONG).show();
+			return;
+		}
+		playSudoku(sudokuID);
+	}
+
+	private void generatePuzzles(int level) {
+		if (mGenerateTask != null) {
+			return;
+		}
+
+		mGenerateTask = new GeneratePuzzlesTask(this, mFolderID, level, GENERATE_COUNT);
+		mGenerateTask.setOnGenerationFinishedListener(new GeneratePuzzlesTask.OnGenerationFinishedListener() {
+			@Override
+			public void onProgress(int generatedCount, int count) {
+				mGeneratingDialog.setProgress(generatedCount);
+			}
+
+			@Override
+			public void onGenerationFinished(int generatedCount) {
+				mGenerateTask = null;
+				if (isFinishing()) {
+					return;
+				}
+				dismissDialog(DIALOG_GENERATING);
+				Toast.makeText(getApplicationContext(), getString(R.string.puzzles_generated, generatedCount),
+						Toast.LENGTH_SHORT).show();
+				updateList();
+			}
+		});
+		showDialog(DIALOG_GENERATING);
+		mGenerateTask.execute();
+	}
+
 	/**
 	 * Updates whole list.
 	 */
@@ -437,14 +619,15 @@ public class SudokuListActivity extends ListActivity {
 		if (mCursor != null) {
 			stopManagingCursor(mCursor);
 		}
-		mCursor = mDatabase.getSudokuList(mFolderID, mListFilter);
+		mCursor = mDatabase.getSudokuList(mFolderID, mListFilter, mSortByDifficulty);
 		startManagingCursor(mCursor);
 		mAdapter.changeCursor(mCursor);
 	}
 
 	private void updateFilterStatus() {
 
-		if (mListFilter.showStateCompleted && mListFilter.showStateNotStarted && mListFilter.showStatePlaying) {
+		if (mListFilter.showStateCompleted && mListFilter.showStateNotStarted && mListFilter.showStatePlaying
+				&& mListFilter.difficulty == SudokuListFilter.DIFFICULTY_ANY) {
 			mFilterStatus.setVisibility(View.GONE);
 		} else {
 			mFilterStatus.setText(getString(R.string.filter_active, mListFilter));
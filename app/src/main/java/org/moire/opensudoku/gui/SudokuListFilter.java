@@ -30,11 +30,18 @@ import org.moire.opensudoku.utils.StringUtils;
 
 public class SudokuListFilter {
 
+	public static final int DIFFICULTY_ANY = -1;
+
 	private Context mContext;
 
 	public boolean showStateNotStarted = true;
 	public boolean showStatePlaying = true;
 	public boolean showStateCompleted = true;
+	/**
+	 * Level of difficulty of shown puzzles (see {@link org.moire.opensudoku.game.solver.DifficultyRater}),
+	 * or {@link #DIFFICULTY_ANY}.
+	 */
+	public int difficulty = DIFFICULTY_ANY;
 
 	public SudokuListFilter(Context context) {
 		mContext = context;
@@ -52,7 +59,12 @@ public class SudokuListFilter {
 		if (showStateCompleted) {
 			visibleStates.add(mContext.getString(R.string.solved));
 		}
-		return StringUtils.join(visibleStates, ",");
+		String states = StringUtils.join(visibleStates, ",");
+		if (difficulty != DIFFICULTY_ANY) {
+			String level = mContext.getResources().getStringArray(R.array.difficulty_levels)[difficulty + 1];
+			return states.length() == 0 ? level : states + "; " + level;
+		}
+		return states;
 	}
 
 
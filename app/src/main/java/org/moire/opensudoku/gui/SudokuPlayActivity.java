@@ -38,11 +38,14 @@ import android.view.ViewGroup;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.TextView;
+import android.widget.Toast;
 import org.moire.opensudoku.R;
+import org.moire.opensudoku.db.PuzzlePool;
 import org.moire.opensudoku.db.SudokuDatabase;
 import org.moire.opensudoku.game.Cell;
 import org.moire.opensudoku.game.SudokuGame;
 import org.moire.opensudoku.game.SudokuGame.OnPuzzleSolvedListener;
+import org.moire.opensudoku.game.solver.SolvabilityMonitor;
 import org.moire.opensudoku.gui.inputmethod.IMControlPanel;
 import org.moire.opensudoku.gui.inputmethod.IMControlPanelStatePersister;
 import org.moire.opensudoku.gui.inputmethod.IMNumpad;
@@ -65,6 +68,7 @@ public class SudokuPlayActivity extends Activity {
 
 	public static final int MENU_ITEM_SET_CHECKPOINT = Menu.FIRST + 6;
 	public static final int MENU_ITEM_UNDO_TO_CHECKPOINT = Menu.FIRST + 7;
+	public static final int MENU_ITEM_FILL_IN_SINGLES = Menu.FIRST + 8;
 
 	private static final int DIALOG_RESTART = 1;
 	private static final int DIALOG_WELL_DONE = 2;
@@ -96,6 +100,10 @@ public class SudokuPlayActivity extends Activity {
 	private GameTimeFormat mGameTimeFormatter = new GameTimeFormat();
 	private boolean mFullScreen;
 	private boolean mFillInNotesEnabled = false;
+	private boolean mFillInSinglesEnabled = false;
+
+	private SolvabilityMonitor mSolvabilityMonitor;
+	private int mSolvabilityState = SolvabilityMonitor.STATE_UNKNOWN;
 
 	private HintsQueue mHintsQueue;
 
@@ -176,6 +184,9 @@ public class SudokuPlayActivity extends Activity {
 	protected void onResume() {
 		super.onResume();
 
+		// leave the CPU to the game
+		PuzzlePool.stopProducer();
+
 		// read game settings
 		SharedPreferences gameSettings = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
 
@@ -183,8 +194,19 @@ public class SudokuPlayActivity extends Activity {
 		mRootLayout.setPadding(screenPadding, screenPadding, screenPadding, screenPadding);
 
 		mFillInNotesEnabled = gameSettings.getBoolean("fill_in_notes_enabled", false);
+		mFillInSinglesEnabled = gameSettings.getBoolean("fill_in_singles_enabled", false);
+		mSudokuGame.setRemovePeerNotes(gameSettings.getBoolean("remove_peer_notes", false));
+		if (gameSettings.getBoolean("check_solvability", false)
+				&& mSudokuGame.getState() == SudokuGame.GAME_STATE_PLAYING) {
+			if (mSolvabilityMonitor == null) {
+				mSolvabilityMonitor = new SolvabilityMonitor(mSudokuGame.getCells());
+				mSolvabilityMonitor.setOnResultListener(onSolvabilityResultListener);
+			}
+			mSolvabilityMonitor.start();
+		}
 
 		mSudokuBoard.setHighlightWrongVals(gameSettings.getBoolean("highlight_wrong_values", true));
+		mSudokuGame.setCheckAgainstSolution(gameSettings.getBoolean("check_against_solution", false));
 		mSudokuBoard.setHighlightTouchedCell(gameSettings.getBoolean("highlight_touched_cell", true));
 		mSudokuBoard.setHighlightSimilarCell(gameSettings.getBoolean("highlight_similar_cells", true));
 
@@ -249,6 +271,10 @@ public class SudokuPlayActivity extends Activity {
 		mGameTimer.stop();
 		mIMControlPanel.pause();
 		mIMControlPanelStatePersister.saveState(mIMControlPanel);
+		if (mSolvabilityMonitor != null) {
+			mSolvabilityMonitor.stop();
+		}
+		PuzzlePool.startProducer(this);
 	}
 
 	@Override
@@ -293,6 +319,11 @@ public class SudokuPlayActivity extends Activity {
 					.setIcon(R.drawable.ic_edit_grey);
 		}
 
+		if (mFillInSinglesEnabled) {
+			menu.add(0, MENU_ITEM_FILL_IN_SINGLES, 1, R.string.fill_in_singles)
+					.setIcon(R.drawable.ic_edit_grey);
+		}
+
         menu.add(0, MENU_ITEM_SET_CHECKPOINT, 3, R.string.set_checkpoint);
         menu.add(0, MENU_ITEM_UNDO_TO_CHECKPOINT, 4, R.string.undo_to_checkpoint);
 
@@ -325,6 +356,9 @@ public class SudokuPlayActivity extends Activity {
 			if (mFillInNotesEnabled) {
 				menu.findItem(MENU_ITEM_FILL_IN_NOTES).setEnabled(true);
 			}
+			if (mFillInSinglesEnabled) {
+				menu.findItem(MENU_ITEM_FILL_IN_SINGLES).setEnabled(true);
+			}
 			menu.findItem(MENU_ITEM_UNDO).setEnabled(mSudokuGame.hasSomethingToUndo());
 			menu.findItem(MENU_ITEM_UNDO_TO_CHECKPOINT).setEnabled(mSudokuGame.hasUndoCheckpoint());
 		} else {
@@ -332,6 +366,9 @@ public class SudokuPlayActivity extends Activity {
 			if (mFillInNotesEnabled) {
 				menu.findItem(MENU_ITEM_FILL_IN_NOTES).setEnabled(false);
 			}
+			if (mFillInSinglesEnabled) {
+				menu.findItem(MENU_ITEM_FILL_IN_SINGLES).setEnabled(false);
+			}
 			menu.findItem(MENU_ITEM_UNDO).setEnabled(false);
 			menu.findItem(MENU_ITEM_UNDO_TO_CHECKPOINT).setEnabled(false);
 		}
@@ -351,6 +388,9 @@ public class SudokuPlayActivity extends Activity {
 			case MENU_ITEM_FILL_IN_NOTES:
 				mSudokuGame.fillInNotes();
 				return true;
+			case MENU_ITEM_FILL_IN_SINGLES:
+				mSudokuGame.fillInSingles();
+				return true;
 			case MENU_ITEM_UNDO:
 				mSudokuGame.undo();
 				selectLastChangedCell();
@@ -427,7 +467,7 @@ public class SudokuPlayActivity extends Activity {
 						.setMessage(R.string.clear_all_notes_confirm)
 						.setPositiveButton(android.R.string.yes, new DialogInterface.OnClickListener() {
 							public void onClick(DialogInterface dialog, int whichButton) {
-								mSudokuGame.clearAllNotes();
+								mSudokuGame.clearAllNoteLayers();
 							}
 						})
 						.setNegativeButton(android.R.string.no, null)
@@ -456,6 +496,30 @@ public class SudokuPlayActivity extends Activity {
 			mSudokuBoard.moveCellSelectionTo(cell.getRowIndex(), cell.getColumnIndex());
 	};
 
+	/**
+	 * Warns the player when the last move has made the board unsolvable.
+	 */
+	private SolvabilityMonitor.OnResultListener onSolvabilityResultListener = new SolvabilityMonitor.OnResultListener() {
+
+		@Override
+		public void onResult(final SolvabilityMonitor.Result result) {
+			// called on background thread
+			mGuiHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					int previousState = mSolvabilityState;
+					mSolvabilityState = result.getState();
+					if (result.getState() == SolvabilityMonitor.STATE_UNSOLVABLE
+							&& previousState != SolvabilityMonitor.STATE_UNSOLVABLE) {
+						Toast.makeText(SudokuPlayActivity.this,
+								getString(R.string.puzzle_not_solvable, result.getMovesSinceSolvable()),
+								Toast.LENGTH_LONG).show();
+					}
+				}
+			});
+		}
+	};
+
 /**
  * Occurs when puzzle is solved.
  */
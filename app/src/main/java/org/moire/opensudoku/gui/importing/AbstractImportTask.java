@@ -43,6 +43,7 @@ public abstract class AbstractImportTask extends
 	private FolderInfo mFolder; // currently processed folder
 	private int mFolderCount; // count of processed folders
 	private int mGameCount; //count of processed puzzles
+	private int mSkippedCount; //count of puzzles skipped because they have no solution
 	private String mImportError;
 	private boolean mImportSuccessful;
 
@@ -87,6 +88,10 @@ public abstract class AbstractImportTask extends
 				Toast.makeText(mContext, mContext.getString(R.string.folders_created, mFolderCount),
 						Toast.LENGTH_LONG).show();
 			}
+			if (mSkippedCount > 0) {
+				Toast.makeText(mContext, mContext.getString(R.string.puzzles_without_solution_skipped, mSkippedCount),
+						Toast.LENGTH_LONG).show();
+			}
 
 		} else {
 			Toast.makeText(mContext, mImportError, Toast.LENGTH_LONG).show();
@@ -216,7 +221,10 @@ public abstract class AbstractImportTask extends
 			throw new IllegalStateException("Database is not opened.");
 		}
 
-		mDatabase.importSudoku(mFolder.id, pars);
+		mGameCount++;
+		if (mDatabase.importSudoku(mFolder.id, pars) < 0) {
+			mSkippedCount++;
+		}
 	}
 
 	protected void setError(String error) {
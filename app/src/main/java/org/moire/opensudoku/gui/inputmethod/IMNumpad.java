@@ -35,6 +35,7 @@ import org.moire.opensudoku.game.Cell;
 import org.moire.opensudoku.game.CellCollection;
 import org.moire.opensudoku.game.CellNote;
 import org.moire.opensudoku.game.SudokuGame;
+import org.moire.opensudoku.game.CellCollection.ChangeSet;
 import org.moire.opensudoku.game.CellCollection.OnChangeListener;
 import org.moire.opensudoku.gui.HintsQueue;
 import org.moire.opensudoku.gui.SudokuBoardView;
@@ -48,6 +49,10 @@ public class IMNumpad extends InputMethod {
 
 	private static final int MODE_EDIT_VALUE = 0;
 	private static final int MODE_EDIT_NOTE = 1;
+	private static final int MODE_EDIT_CENTER_NOTE = 2;
+
+	// switch button is tinted with this color in centre note mode
+	private static final int CENTER_NOTE_MODE_COLOR = 0xFFFFA000;
 
 	private Cell mSelectedCell;
 	private ImageButton mSwitchNumNoteButton;
@@ -126,6 +131,17 @@ public class IMNumpad extends InputMethod {
 				update();
 			}
 
+		});
+		// long press switches to editing of notes in the centre of the cell
+		mSwitchNumNoteButton.setOnLongClickListener(new View.OnLongClickListener() {
+
+			@Override
+			public boolean onLongClick(View v) {
+				mEditMode = MODE_EDIT_CENTER_NOTE;
+				update();
+				return true;
+			}
+
 		});
 
 		return controlPanel;
@@ -169,10 +185,12 @@ public class IMNumpad extends InputMethod {
 			if (selCell != null) {
 				switch (mEditMode) {
 					case MODE_EDIT_NOTE:
+					case MODE_EDIT_CENTER_NOTE:
+						int layer = mEditMode == MODE_EDIT_CENTER_NOTE ? CellNote.LAYER_CENTER : CellNote.LAYER_CORNER;
 						if (selNumber == 0) {
-							mGame.setCellNote(selCell, CellNote.EMPTY);
+							mGame.setCellNote(selCell, layer, CellNote.EMPTY);
 						} else if (selNumber > 0 && selNumber <= 9) {
-							mGame.setCellNote(selCell, selCell.getNote().toggleNumber(selNumber));
+							mGame.setCellNote(selCell, layer, selCell.getNote(layer).toggleNumber(selNumber));
 						}
 						break;
 					case MODE_EDIT_VALUE:
@@ -192,8 +210,9 @@ public class IMNumpad extends InputMethod {
 	private OnChangeListener mOnCellsChangeListener = new OnChangeListener() {
 
 		@Override
-		public void onChange() {
-			if (mActive) {
+		public void onChange(ChangeSet changes) {
+			// only values are displayed on the buttons
+			if (mActive && changes.hasChanges(ChangeSet.CHANGE_VALUE)) {
 				update();
 			}
 		}
@@ -204,20 +223,26 @@ public class IMNumpad extends InputMethod {
 		switch (mEditMode) {
 			case MODE_EDIT_NOTE:
 				mSwitchNumNoteButton.setImageResource(R.drawable.ic_edit_white);
+				mSwitchNumNoteButton.clearColorFilter();
+				break;
+			case MODE_EDIT_CENTER_NOTE:
+				mSwitchNumNoteButton.setImageResource(R.drawable.ic_edit_white);
+				mSwitchNumNoteButton.setColorFilter(CENTER_NOTE_MODE_COLOR);
 				break;
 			case MODE_EDIT_VALUE:
 				mSwitchNumNoteButton.setImageResource(R.drawable.ic_edit_grey);
+				mSwitchNumNoteButton.clearColorFilter();
 				break;
 		}
 
-		Map<Integer, Integer> valuesUseCount = null;
-		if (mHighlightCompletedValues || mShowNumberTotals)
-			valuesUseCount = mGame.getCells().getValuesUseCount();
+		CellCollection cells = mGame.getCells();
+		// there are buttons for values 1-9 only
+		int buttonCount = Math.min(cells.getSize(), CellCollection.SUDOKU_SIZE);
 
 		if (mHighlightCompletedValues) {
-			for (Map.Entry<Integer, Integer> entry : valuesUseCount.entrySet()) {
-				boolean highlightValue = entry.getValue() >= CellCollection.SUDOKU_SIZE;
-				Button b = mNumberButtons.get(entry.getKey());
+			for (int value = 1; value <= buttonCount; value++) {
+				boolean highlightValue = cells.isValueCompleted(value);
+				Button b = mNumberButtons.get(value);
 				if (highlightValue) {
                     b.getBackground().setColorFilter(0xFF1B5E20, PorterDuff.Mode.MULTIPLY);
 				} else {
@@ -227,9 +252,9 @@ public class IMNumpad extends InputMethod {
 		}
 
 		if (mShowNumberTotals) {
-			for (Map.Entry<Integer, Integer> entry : valuesUseCount.entrySet()) {
-				Button b = mNumberButtons.get(entry.getKey());
-				b.setText(entry.getKey() + " (" + entry.getValue() + ")");
+			for (int value = 1; value <= buttonCount; value++) {
+				Button b = mNumberButtons.get(value);
+				b.setText(value + " (" + cells.getValueUseCount(value) + ")");
 			}
 		}
 	}
@@ -20,8 +20,6 @@
 
 package org.moire.opensudoku.gui.inputmethod;
 
-import java.util.Map;
-
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnDismissListener;
@@ -94,21 +92,21 @@ public class IMPopup extends InputMethod {
 			mEditCellDialog.updateNumber(cell.getValue());
 			mEditCellDialog.updateNote(cell.getNote().getNotedNumbers());
 
-			Map<Integer, Integer> valuesUseCount = null;
-			if (mHighlightCompletedValues || mShowNumberTotals)
-				valuesUseCount = mGame.getCells().getValuesUseCount();
+			CellCollection cells = mGame.getCells();
+			// there are buttons for values 1-9 only
+			int buttonCount = Math.min(cells.getSize(), CellCollection.SUDOKU_SIZE);
 
 			if (mHighlightCompletedValues) {
-				for (Map.Entry<Integer, Integer> entry : valuesUseCount.entrySet()) {
-					if (entry.getValue() >= CellCollection.SUDOKU_SIZE) {
-						mEditCellDialog.highlightNumber(entry.getKey());
+				for (int value = 1; value <= buttonCount; value++) {
+					if (cells.isValueCompleted(value)) {
+						mEditCellDialog.highlightNumber(value);
 					}
 				}
 			}
 
 			if (mShowNumberTotals) {
-				for (Map.Entry<Integer, Integer> entry : valuesUseCount.entrySet()) {
-					mEditCellDialog.setValueCount(entry.getKey(), entry.getValue());
+				for (int value = 1; value <= buttonCount; value++) {
+					mEditCellDialog.setValueCount(value, cells.getValueUseCount(value));
 				}
 			}
 			mEditCellDialog.show();
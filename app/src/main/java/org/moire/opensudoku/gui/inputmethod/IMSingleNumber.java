@@ -38,6 +38,7 @@ import org.moire.opensudoku.game.Cell;
 import org.moire.opensudoku.game.CellCollection;
 import org.moire.opensudoku.game.CellNote;
 import org.moire.opensudoku.game.SudokuGame;
+import org.moire.opensudoku.game.CellCollection.ChangeSet;
 import org.moire.opensudoku.game.CellCollection.OnChangeListener;
 import org.moire.opensudoku.gui.HintsQueue;
 import org.moire.opensudoku.gui.SudokuBoardView;
@@ -54,6 +55,10 @@ public class IMSingleNumber extends InputMethod {
 
 	private static final int MODE_EDIT_VALUE = 0;
 	private static final int MODE_EDIT_NOTE = 1;
+	private static final int MODE_EDIT_CENTER_NOTE = 2;
+
+	// switch button is tinted with this color in centre note mode
+	private static final int CENTER_NOTE_MODE_COLOR = 0xFFFFA000;
 
 	private boolean mHighlightCompletedValues = true;
 	private boolean mShowNumberTotals = false;
@@ -173,6 +178,17 @@ public class IMSingleNumber extends InputMethod {
 				update();
 			}
 
+		});
+		// long press switches to editing of notes in the centre of the cell
+		mSwitchNumNoteButton.setOnLongClickListener(new View.OnLongClickListener() {
+
+			@Override
+			public boolean onLongClick(View v) {
+				mEditMode = MODE_EDIT_CENTER_NOTE;
+				update();
+				return true;
+			}
+
 		});
 
 		return controlPanel;
@@ -201,8 +217,9 @@ public class IMSingleNumber extends InputMethod {
 	private OnChangeListener mOnCellsChangeListener = new OnChangeListener() {
 
 		@Override
-		public void onChange() {
-			if (mActive) {
+		public void onChange(ChangeSet changes) {
+			// only values are displayed on the buttons
+			if (mActive && changes.hasChanges(ChangeSet.CHANGE_VALUE)) {
 				update();
 			}
 		}
@@ -212,9 +229,15 @@ public class IMSingleNumber extends InputMethod {
 		switch (mEditMode) {
 			case MODE_EDIT_NOTE:
 				mSwitchNumNoteButton.setImageResource(R.drawable.ic_edit_white);
+				mSwitchNumNoteButton.clearColorFilter();
+				break;
+			case MODE_EDIT_CENTER_NOTE:
+				mSwitchNumNoteButton.setImageResource(R.drawable.ic_edit_white);
+				mSwitchNumNoteButton.setColorFilter(CENTER_NOTE_MODE_COLOR);
 				break;
 			case MODE_EDIT_VALUE:
 				mSwitchNumNoteButton.setImageResource(R.drawable.ic_edit_grey);
+				mSwitchNumNoteButton.clearColorFilter();
 				break;
 		}
 
@@ -238,16 +261,16 @@ public class IMSingleNumber extends InputMethod {
 					}
 				}
 
-				Map<Integer, Integer> valuesUseCount = null;
-				if (mHighlightCompletedValues || mShowNumberTotals)
-					valuesUseCount = mGame.getCells().getValuesUseCount();
+				CellCollection cells = mGame.getCells();
+				// there are buttons for values 1-9 only
+				int buttonCount = Math.min(cells.getSize(), CellCollection.SUDOKU_SIZE);
 
 				if (mHighlightCompletedValues) {
 					//int completedTextColor = mContext.getResources().getColor(R.color.im_number_button_completed_text);
-					for (Map.Entry<Integer, Integer> entry : valuesUseCount.entrySet()) {
-						boolean highlightValue = entry.getValue() >= CellCollection.SUDOKU_SIZE;
+					for (int value = 1; value <= buttonCount; value++) {
+						boolean highlightValue = cells.isValueCompleted(value);
 						if (highlightValue) {
-							Button b = mNumberButtons.get(entry.getKey());
+							Button b = mNumberButtons.get(value);
 							/*if (b.getTag().equals(mSelectedNumber)) {
 								b.setTextColor(completedTextColor);
 							} else {
@@ -261,12 +284,12 @@ public class IMSingleNumber extends InputMethod {
 				}
 
 				if (mShowNumberTotals) {
-					for (Map.Entry<Integer, Integer> entry : valuesUseCount.entrySet()) {
-						Button b = mNumberButtons.get(entry.getKey());
+					for (int value = 1; value <= buttonCount; value++) {
+						Button b = mNumberButtons.get(value);
 						if (!b.getTag().equals(mSelectedNumber))
-							b.setText(entry.getKey() + " (" + entry.getValue() + ")");
+							b.setText(value + " (" + cells.getValueUseCount(value) + ")");
 						else
-							b.setText("" + entry.getKey());
+							b.setText("" + value);
 					}
 				}
 			}
@@ -303,10 +326,12 @@ public class IMSingleNumber extends InputMethod {
 
 		switch (mEditMode) {
 			case MODE_EDIT_NOTE:
+			case MODE_EDIT_CENTER_NOTE:
+				int layer = mEditMode == MODE_EDIT_CENTER_NOTE ? CellNote.LAYER_CENTER : CellNote.LAYER_CORNER;
 				if (selNumber == 0) {
-					mGame.setCellNote(cell, CellNote.EMPTY);
+					mGame.setCellNote(cell, layer, CellNote.EMPTY);
 				} else if (selNumber > 0 && selNumber <= 9) {
-					mGame.setCellNote(cell, cell.getNote().toggleNumber(selNumber));
+					mGame.setCellNote(cell, layer, cell.getNote(layer).toggleNumber(selNumber));
 				}
 				break;
 			case MODE_EDIT_VALUE:
@@ -0,0 +1,199 @@
+package org.moire.opensudoku.game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.moire.opensudoku.game.CellCollection.ChangeSet;
+import org.moire.opensudoku.game.command.CommandStack;
+import org.moire.opensudoku.game.command.EditCellNoteCommand;
+import org.moire.opensudoku.game.command.SetCellValueCommand;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks incremental validation, change notifications and serialization of
+ * {@link CellCollection}.
+ */
+public class CellCollectionTest {
+
+	// written by version 2 of the format: 5 given at [0,0], 3 entered at [0,1], notes 1 and 9
+	// at [1,1] and note 4 at [8,8] (non-empty note was followed by an empty token)
+	private static final String DATA_V2 = "version: 2\n"
+			+ "5|0|0|3|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|257||1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|"
+			+ "0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|0|1|0|8||1|";
+
+	// the same board in version 1 of the format
+	private static final String DATA_V1 = "version: 1\n"
+			+ "5|-|0|3|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|1,9,|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|"
+			+ "0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|-|1|0|4,|1|";
+
+	@Test
+	public void conflictsAfterSetAndUndo() {
+		CellCollection cells = CellCollection.createEmpty();
+		CommandStack stack = new CommandStack(cells);
+
+		stack.execute(new SetCellValueCommand(cells.getCell(0, 0), 5));
+		assertEquals(0, countInvalid(cells));
+		stack.execute(new SetCellValueCommand(cells.getCell(0, 8), 5));
+		assertEquals(2, countInvalid(cells));
+		assertFalse(cells.validate());
+		// conflicts with both cells in the row and in the column
+		stack.execute(new SetCellValueCommand(cells.getCell(8, 8), 5));
+		assertEquals(3, countInvalid(cells));
+		assertEquals(3, cells.getValueUseCount(5));
+
+		// changing the value resolves only its own conflicts
+		stack.execute(new SetCellValueCommand(cells.getCell(0, 8), 6));
+		assertEquals(0, countInvalid(cells));
+
+		stack.undo();
+		assertEquals(3, countInvalid(cells));
+		stack.undo();
+		assertEquals(2, countInvalid(cells));
+		stack.undo();
+		assertEquals(0, countInvalid(cells));
+		assertTrue(cells.validate());
+		assertEquals(1, cells.getValueUseCount(5));
+	}
+
+	@Test
+	public void conflictsAfterUndoToCheckpoint() {
+		CellCollection cells = CellCollection.createEmpty();
+		CommandStack stack = new CommandStack(cells);
+
+		stack.execute(new SetCellValueCommand(cells.getCell(0, 0), 5));
+		stack.execute(new SetCellValueCommand(cells.getCell(1, 1), 5));
+		assertEquals(2, countInvalid(cells));
+
+		stack.setCheckpoint();
+		stack.execute(new SetCellValueCommand(cells.getCell(1, 1), 0));
+		stack.execute(new SetCellValueCommand(cells.getCell(4, 0), 5));
+		stack.execute(new SetCellValueCommand(cells.getCell(4, 4), 5));
+		assertEquals(3, countInvalid(cells));
+
+		stack.undoToCheckpoint();
+		assertEquals(5, cells.getCell(1, 1).getValue());
+		assertEquals(0, cells.getCell(4, 0).getValue());
+		assertEquals(0, cells.getCell(4, 4).getValue());
+		assertEquals(2, countInvalid(cells));
+		assertFalse(cells.getCell(0, 0).isValid());
+		assertFalse(cells.getCell(1, 1).isValid());
+
+		stack.undo();
+		assertEquals(0, countInvalid(cells));
+		assertTrue(cells.validate());
+	}
+
+	@Test
+	public void oneChangeSetPerTransaction() {
+		CellCollection cells = CellCollection.createEmpty();
+		final List<ChangeSet> changes = new ArrayList<ChangeSet>();
+		cells.addOnChangeListener(new CellCollection.OnChangeListener() {
+			@Override
+			public void onChange(ChangeSet changeSet) {
+				changes.add(changeSet);
+			}
+		});
+
+		cells.beginChange();
+		cells.getCell(0, 0).setValue(1);
+		cells.beginChange();
+		cells.getCell(0, 1).setValue(2);
+		cells.getCell(0, 1).setNote(CellNote.EMPTY.toggleNumber(3));
+		cells.endChange();
+		assertEquals(0, changes.size());
+		cells.getCell(0, 2).setEditable(false);
+		cells.endChange();
+
+		assertEquals(1, changes.size());
+		ChangeSet changeSet = changes.get(0);
+		assertEquals(3, changeSet.size());
+		assertTrue(changeSet.hasChanges(ChangeSet.CHANGE_VALUE));
+		assertTrue(changeSet.hasChanges(ChangeSet.CHANGE_NOTE));
+		assertTrue(changeSet.hasChanges(ChangeSet.CHANGE_FLAGS));
+		for (int i = 0; i < changeSet.size(); i++) {
+			if (changeSet.getCell(i).getColumnIndex() == 1) {
+				assertEquals(ChangeSet.CHANGE_VALUE | ChangeSet.CHANGE_NOTE, changeSet.getChangeKinds(i));
+			}
+		}
+
+		// command and validation of its consequences are reported together
+		changes.clear();
+		CommandStack stack = new CommandStack(cells);
+		stack.execute(new SetCellValueCommand(cells.getCell(8, 0), 1));
+		assertEquals(1, changes.size());
+		assertTrue(changes.get(0).hasChanges(ChangeSet.CHANGE_VALUE));
+		assertTrue(changes.get(0).hasChanges(ChangeSet.CHANGE_VALIDITY));
+	}
+
+	@Test
+	public void deserializeVersion1() {
+		checkStoredBoard(CellCollection.deserialize(DATA_V1));
+	}
+
+	@Test
+	public void deserializeVersion2() {
+		CellCollection cells = CellCollection.deserialize(DATA_V2);
+		checkStoredBoard(cells);
+
+		// boards without centre notes are still written in the version 2
+		String data = cells.serialize();
+		assertTrue(data.startsWith("version: 2\n"));
+		checkStoredBoard(CellCollection.deserialize(data));
+	}
+
+	@Test
+	public void centreNotesRoundTrip() {
+		CellCollection cells = CellCollection.deserialize(DATA_V2);
+		CommandStack stack = new CommandStack(cells);
+		stack.execute(EditCellNoteCommand.create(cells.getCell(4, 4), CellNote.LAYER_CENTER,
+				CellNote.EMPTY.toggleNumber(2).toggleNumber(7)));
+
+		String data = cells.serialize();
+		assertTrue(data.startsWith("version: 4\n"));
+		CellCollection restored = CellCollection.deserialize(data);
+		checkStoredBoard(restored);
+		assertEquals(0, restored.getNoteMask(restored.getCell(4, 4).getIndex(), CellNote.LAYER_CORNER));
+		assertEquals((1 << 1) | (1 << 6), restored.getNoteMask(restored.getCell(4, 4).getIndex(), CellNote.LAYER_CENTER));
+		assertEquals(cells.getHash(true), restored.getHash(true));
+	}
+
+	private static void checkStoredBoard(CellCollection cells) {
+		assertEquals(5, cells.getCell(0, 0).getValue());
+		assertFalse(cells.getCell(0, 0).isEditable());
+		assertEquals(3, cells.getCell(0, 1).getValue());
+		assertTrue(cells.getCell(0, 1).isEditable());
+		assertEquals(0, cells.getCell(1, 1).getValue());
+		assertEquals(1 | (1 << 8), cells.getNoteMask(cells.getCell(1, 1).getIndex(), CellNote.LAYER_CORNER));
+		assertEquals(1 << 3, cells.getNoteMask(cells.getCell(8, 8).getIndex(), CellNote.LAYER_CORNER));
+		assertEquals(0, cells.getNoteMask(cells.getCell(2, 2).getIndex(), CellNote.LAYER_CORNER));
+		assertTrue(cells.getCell(8, 8).isEditable());
+	}
+
+	private static int countInvalid(CellCollection cells) {
+		int count = 0;
+		for (int i = 0; i < cells.getCellCount(); i++) {
+			if (!cells.getCell(i).isValid()) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,134 @@
+package org.moire.opensudoku.game.solver;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.moire.opensudoku.game.BoardConstraint;
+import org.moire.opensudoku.game.BoardLayout;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link SudokuSolver} and {@link DlxSolver} find valid solutions on every
+ * kind of constraint and that they agree on puzzles with unique solution.
+ */
+public class SolverEngineTest {
+
+	@Test
+	public void classic() {
+		checkEngines(BoardLayout.CLASSIC);
+	}
+
+	@Test
+	public void diagonal() {
+		checkEngines(BoardLayout.regular(9, 3, 3, BoardConstraint.DIAGONAL));
+	}
+
+	@Test
+	public void windoku() {
+		checkEngines(BoardLayout.regular(9, 3, 3, BoardConstraint.WINDOKU));
+	}
+
+	@Test
+	public void antiKnight() {
+		checkEngines(BoardLayout.regular(9, 3, 3, BoardConstraint.ANTI_KNIGHT));
+	}
+
+	@Test
+	public void antiKing() {
+		checkEngines(BoardLayout.regular(9, 3, 3, BoardConstraint.ANTI_KING));
+	}
+
+	@Test
+	public void smallBoard() {
+		checkEngines(BoardLayout.regular(6, 2, 3));
+	}
+
+	@Test
+	public void killerCages() {
+		// cages of horizontal pairs, with sums taken from a valid grid
+		byte[] grid = solveEmpty(new SudokuSolver(BoardLayout.CLASSIC));
+		int[] sums = new int[36];
+		int[][] cages = new int[36][];
+		for (int i = 0; i < 36; i++) {
+			int cell = (i / 4) * 9 + (i % 4) * 2;
+			cages[i] = new int[]{cell, cell + 1};
+			sums[i] = grid[cell] + grid[cell + 1];
+		}
+		checkEngines(BoardLayout.regular(9, 3, 3, BoardConstraint.killerCages(sums, cages)));
+	}
+
+	private static void checkEngines(BoardLayout layout) {
+		SolverEngine solver = new SudokuSolver(layout);
+		SolverEngine dlx = new DlxSolver(layout);
+
+		byte[] grid = solveEmpty(solver);
+		assertValid(layout, grid);
+
+		// puzzle with many solutions, only the first rows are given (search of empty board
+		// takes too long for dancing links on boards with relations)
+		char[] rows = toString(grid).toCharArray();
+		Arrays.fill(rows, rows.length / 3, rows.length, '0');
+		SolverResult rowsResult = dlx.solve(new String(rows));
+		assertEquals(SolverResult.STATUS_SOLVED, rowsResult.getStatus());
+		assertValid(layout, rowsResult.getSolution());
+
+		// remove clues of the grid while the puzzle keeps unique solution
+		char[] puzzle = toString(grid).toCharArray();
+		for (int i = 0; i < puzzle.length; i++) {
+			char value = puzzle[i];
+			puzzle[i] = '0';
+			if (solver.countSolutions(new String(puzzle), 2) != 1) {
+				puzzle[i] = value;
+			}
+		}
+
+		String data = new String(puzzle);
+		assertEquals(1, dlx.countSolutions(data, 2));
+		SolverResult result = solver.solve(data);
+		SolverResult dlxResult = dlx.solve(data);
+		assertEquals(SolverResult.STATUS_SOLVED, result.getStatus());
+		assertEquals(SolverResult.STATUS_SOLVED, dlxResult.getStatus());
+		assertArrayEquals(grid, result.getSolution());
+		assertArrayEquals(grid, dlxResult.getSolution());
+	}
+
+	private static byte[] solveEmpty(SolverEngine engine) {
+		char[] empty = new char[engine.getLayout().getCellCount()];
+		Arrays.fill(empty, '0');
+		SolverResult result = engine.solve(new String(empty));
+		assertEquals(SolverResult.STATUS_SOLVED, result.getStatus());
+		assertNotNull(result.getSolution());
+		return result.getSolution();
+	}
+
+	private static void assertValid(BoardLayout layout, byte[] values) {
+		int cellCount = layout.getCellCount();
+		for (int i = 0; i < cellCount; i++) {
+			assertTrue(values[i] >= 1 && values[i] <= layout.getSize());
+			for (int j = i + 1; j < cellCount; j++) {
+				if (layout.isPeer(i, j)) {
+					assertTrue("cells " + i + " and " + j + " have the same value", values[i] != values[j]);
+				}
+			}
+		}
+		for (int cage = 0; cage < layout.getCageCount(); cage++) {
+			int sum = 0;
+			for (int k = 0; k < layout.getCageSize(cage); k++) {
+				sum += values[layout.getCageCell(cage, k)];
+			}
+			assertEquals(layout.getCageSum(cage), sum);
+		}
+	}
+
+	private static String toString(byte[] values) {
+		StringBuilder sb = new StringBuilder(values.length);
+		for (byte value : values) {
+			sb.append(Character.forDigit(value, 36));
+		}
+		return sb.toString();
+	}
+}